@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import java.util.Arrays;
+
+/**
+ * An ActiveNotes is a 16x128 bitset of the notes sounding on an output: the notes a MidiBus sent a NoteOn for and no NoteOff yet. It lets {@link MidiBus#allNotesOff()} release exactly the sounding notes instead of sending a NoteOff for every channel and pitch.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#allNotesOff()
+*/
+class ActiveNotes {
+
+	//One bit per channel and pitch, channel << 7 | pitch
+	final long[] bits = new long[32];
+	int count;
+
+	/**
+	 * Records a message sent to the output.
+	 *
+	 * @param message the message.
+	*/
+	void update(MidiMessage message) {
+		if (message instanceof ShortMessage) {
+			ShortMessage short_message = (ShortMessage)message;
+			update(short_message.getStatus(), short_message.getData1(), short_message.getData2());
+		}
+	}
+
+	/**
+	 * Records a short message sent to the output.
+	 *
+	 * @param status the status byte.
+	 * @param data1 the first data byte.
+	 * @param data2 the second data byte.
+	*/
+	void update(int status, int data1, int data2) {
+		int command = status & 0xF0;
+		int channel = status & 0x0F;
+
+		if (command == ShortMessage.NOTE_ON && data2 != 0) {
+			set(channel << 7 | data1, true);
+		} else if (command == ShortMessage.NOTE_OFF || command == ShortMessage.NOTE_ON) {
+			set(channel << 7 | data1, false);
+		} else if (command == ShortMessage.CONTROL_CHANGE && (data1 == 120 || data1 >= 123)) {
+			//All sound off, all notes off and the mode changes silence the channel
+			for (int i = channel * 2;i < channel * 2 + 2;i++) {
+				count -= Long.bitCount(bits[i]);
+				bits[i] = 0;
+			}
+		} else if (status == ShortMessage.SYSTEM_RESET) {
+			clear();
+		}
+	}
+
+	void set(int note, boolean on) {
+		long bit = 1L << (note & 63);
+		long word = bits[note >> 6];
+		if (((word & bit) != 0) == on) return;
+		bits[note >> 6] = word ^ bit;
+		count += on ? 1 : -1;
+	}
+
+	/**
+	 * Forgets all the sounding notes.
+	*/
+	void clear() {
+		Arrays.fill(bits, 0);
+		count = 0;
+	}
+
+	/**
+	 * Returns the sounding notes, as channel << 7 | pitch.
+	 *
+	 * @return the sounding notes, in channel and pitch order.
+	*/
+	int[] sounding() {
+		int[] notes = new int[count];
+		int n = 0;
+		for (int i = 0;i < bits.length;i++) {
+			long word = bits[i];
+			while (word != 0) {
+				notes[n++] = i << 6 | Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+		}
+		return notes;
+	}
+
+}
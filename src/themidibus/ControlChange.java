@@ -73,6 +73,36 @@ public class ControlChange {
 		this.bus_name = bus_name;
 	}
 
+	/**
+	 * Returns a new ControlChange with the same fields as this one. Use this to keep a ControlChange received from a MidiBus with {@link MidiBus#recycleEventObjects(boolean)} enabled beyond the callback it was passed to.
+	 *
+	 * @return a copy of this ControlChange
+	*/
+	public ControlChange copy() {
+		return new ControlChange(channel, number, value, timestamp, bus_name);
+	}
+
+	/**
+	 * Overwrites all the fields of this ControlChange, used to recycle ControlChange objects.
+	 * 
+	 * @param channel the channel of the ControlChange
+	 * @param number the number of the ControlChange
+	 * @param value the value of the ControlChange
+	 * @param timestamp the timestamp of the ControlChange
+	 * @param bus_name the name of MidiBus associated with the ControlChange 
+	 * @return this ControlChange
+	*/
+	ControlChange set(int channel, int number, int value, long timestamp, String bus_name) {
+		this.channel = channel;
+		this.number = number;
+		this.value = value;
+
+		this.timestamp = timestamp;
+		this.bus_name = bus_name;
+
+		return this;
+	}
+
 	/**
 	 * Set channel of the ControlChange
 	 * 
@@ -0,0 +1,275 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * A DeviceCatalog is a snapshot of the installed MIDI devices, each probed once and classified as input, output and/or unavailable. The devices of each kind are indexed by position and by name, so listing them or looking one up doesn't touch the MIDI system again. A catalog never changes, {@link MidiBus#findMidiDevices()} replaces it as a whole.
+ * <p>
+ * A catalog built from the previous one only probes the devices the previous one didn't have available, and records which available devices were added and removed since.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#findMidiDevices()
+*/
+class DeviceCatalog {
+
+	/**
+	 * Looks up the MidiDevice of a MidiDevice.Info, normally MidiSystem.getMidiDevice().
+	*/
+	interface Probe {
+		MidiDevice probe(MidiDevice.Info info) throws MidiUnavailableException;
+	}
+
+	static final Probe MIDI_SYSTEM = MidiSystem::getMidiDevice;
+
+	final MidiDevice.Info[] devices;
+	final int[] max_transmitters;
+	final int[] max_receivers;
+	final boolean[] available;
+
+	final MidiDevice.Info[] inputs;
+	final MidiDevice.Info[] outputs;
+	final MidiDevice.Info[] unavailable;
+
+	final String[] input_names;
+	final String[] output_names;
+	final String[] unavailable_names;
+
+	//First input/output of each name, as addInput(String) and addOutput(String) pick it
+	final HashMap<String, MidiDevice.Info> inputs_by_name;
+	final HashMap<String, MidiDevice.Info> outputs_by_name;
+
+	final IdentityHashMap<MidiDevice.Info, Integer> positions;
+
+	//Available devices which weren't available in the previous catalog, and the other way around
+	final MidiDevice.Info[] added;
+	final Removed[] removed;
+
+	/**
+	 * A device which was available in the previous catalog but isn't anymore, along with what it was.
+	*/
+	static class Removed {
+		final MidiDevice.Info info;
+		final boolean input;
+		final boolean output;
+
+		Removed(MidiDevice.Info info, boolean input, boolean output) {
+			this.info = info;
+			this.input = input;
+			this.output = output;
+		}
+	}
+
+	/**
+	 * Probes each device once and indexes the results.
+	 *
+	 * @param devices the installed devices, in the order they should be listed.
+	 * @param probe how to look up the MidiDevice of each device.
+	*/
+	DeviceCatalog(MidiDevice.Info[] devices, Probe probe) {
+		this(devices, probe, null);
+	}
+
+	/**
+	 * Probes each device which the previous catalog didn't have available and indexes the results. The devices the previous catalog had available keep their classification.
+	 * <p>
+	 * Some backends hand out new MidiDevice.Info objects on every listing, so a device matches a previous one if it is the same object, or failing that if it has the same name, vendor, description and version.
+	 *
+	 * @param devices the installed devices, in the order they should be listed.
+	 * @param probe how to look up the MidiDevice of a new device.
+	 * @param previous the previous catalog, or null to probe every device and record no changes.
+	*/
+	DeviceCatalog(MidiDevice.Info[] devices, Probe probe, DeviceCatalog previous) {
+		this.devices = devices.clone();
+		max_transmitters = new int[devices.length];
+		max_receivers = new int[devices.length];
+		available = new boolean[devices.length];
+		positions = new IdentityHashMap<MidiDevice.Info, Integer>(devices.length * 2);
+
+		ArrayList<MidiDevice.Info> inputs = new ArrayList<MidiDevice.Info>();
+		ArrayList<MidiDevice.Info> outputs = new ArrayList<MidiDevice.Info>();
+		ArrayList<MidiDevice.Info> unavailable = new ArrayList<MidiDevice.Info>();
+		ArrayList<MidiDevice.Info> added = new ArrayList<MidiDevice.Info>();
+
+		//Each previous device can only be matched once
+		boolean[] matched = previous == null ? null : new boolean[previous.devices.length];
+		HashMap<String, ArrayDeque<Integer>> previous_keys = null;
+
+		for (int i = 0;i < devices.length;i++) {
+			positions.putIfAbsent(devices[i], i);
+
+			int match = -1;
+			if (previous != null) {
+				Integer position = previous.positions.get(devices[i]);
+				if (position != null && !matched[position]) {
+					match = position;
+				} else {
+					if (previous_keys == null) previous_keys = previous.keys();
+					ArrayDeque<Integer> candidates = previous_keys.get(key(devices[i]));
+					while (candidates != null && !candidates.isEmpty() && match == -1) {
+						int candidate = candidates.poll();
+						if (!matched[candidate]) match = candidate;
+					}
+				}
+				if (match != -1) matched[match] = true;
+			}
+
+			if (match != -1 && previous.available[match]) {
+				max_transmitters[i] = previous.max_transmitters[match];
+				max_receivers[i] = previous.max_receivers[match];
+				available[i] = true;
+			} else {
+				try {
+					MidiDevice device = probe.probe(devices[i]);
+					max_transmitters[i] = device.getMaxTransmitters();
+					max_receivers[i] = device.getMaxReceivers();
+					available[i] = true;
+					if (previous != null) added.add(devices[i]);
+				} catch(MidiUnavailableException | IllegalArgumentException e) {
+					//The device went away between the listing and the probe, or can't be used at all
+				}
+			}
+
+			if (available[i]) {
+				if (max_transmitters[i] != 0) inputs.add(devices[i]);
+				if (max_receivers[i] != 0) outputs.add(devices[i]);
+			} else {
+				unavailable.add(devices[i]);
+			}
+		}
+
+		//A matched device which was available still is, since it kept its classification
+		ArrayList<Removed> removed = new ArrayList<Removed>();
+		for (int i = 0;previous != null && i < previous.devices.length;i++) {
+			if (!previous.available[i] || matched[i]) continue;
+			removed.add(new Removed(previous.devices[i], previous.max_transmitters[i] != 0, previous.max_receivers[i] != 0));
+		}
+
+		this.inputs = inputs.toArray(new MidiDevice.Info[inputs.size()]);
+		this.outputs = outputs.toArray(new MidiDevice.Info[outputs.size()]);
+		this.unavailable = unavailable.toArray(new MidiDevice.Info[unavailable.size()]);
+
+		input_names = names(this.inputs);
+		output_names = names(this.outputs);
+		unavailable_names = names(this.unavailable);
+
+		inputs_by_name = index(this.inputs);
+		outputs_by_name = index(this.outputs);
+
+		this.added = added.toArray(new MidiDevice.Info[added.size()]);
+		this.removed = removed.toArray(new Removed[removed.size()]);
+	}
+
+	/**
+	 * Returns whether the given device is an available input in this catalog.
+	 *
+	 * @param info the device.
+	 * @return true if the device is an available input.
+	*/
+	boolean isInput(MidiDevice.Info info) {
+		Integer position = positions.get(info);
+		return position != null && available[position] && max_transmitters[position] != 0;
+	}
+
+	/**
+	 * Returns whether the given device is an available output in this catalog.
+	 *
+	 * @param info the device.
+	 * @return true if the device is an available output.
+	*/
+	boolean isOutput(MidiDevice.Info info) {
+		Integer position = positions.get(info);
+		return position != null && available[position] && max_receivers[position] != 0;
+	}
+
+	/**
+	 * Returns the available input with the given name.
+	 *
+	 * @param name the name of the input.
+	 * @return the first input with this name, or null if there is none.
+	*/
+	MidiDevice.Info input(String name) {
+		return inputs_by_name.get(name);
+	}
+
+	/**
+	 * Returns the available output with the given name.
+	 *
+	 * @param name the name of the output.
+	 * @return the first output with this name, or null if there is none.
+	*/
+	MidiDevice.Info output(String name) {
+		return outputs_by_name.get(name);
+	}
+
+	/**
+	 * Returns the available input at the given index.
+	 *
+	 * @param index the index of the input, as listed by {@link MidiBus#list()}.
+	 * @return the input, or null if there is none at this index.
+	*/
+	MidiDevice.Info input(int index) {
+		return index >= 0 && index < inputs.length ? inputs[index] : null;
+	}
+
+	/**
+	 * Returns the available output at the given index.
+	 *
+	 * @param index the index of the output, as listed by {@link MidiBus#list()}.
+	 * @return the output, or null if there is none at this index.
+	*/
+	MidiDevice.Info output(int index) {
+		return index >= 0 && index < outputs.length ? outputs[index] : null;
+	}
+
+	/**
+	 * Returns the positions of the devices with each key, in order.
+	*/
+	HashMap<String, ArrayDeque<Integer>> keys() {
+		HashMap<String, ArrayDeque<Integer>> keys = new HashMap<String, ArrayDeque<Integer>>(devices.length * 2);
+		for (int i = 0;i < devices.length;i++) keys.computeIfAbsent(key(devices[i]), k -> new ArrayDeque<Integer>()).add(i);
+		return keys;
+	}
+
+	static String key(MidiDevice.Info info) {
+		return info.getName()+"\u0000"+info.getVendor()+"\u0000"+info.getDescription()+"\u0000"+info.getVersion();
+	}
+
+	static String[] names(MidiDevice.Info[] devices) {
+		String[] names = new String[devices.length];
+		for (int i = 0;i < devices.length;i++) names[i] = devices[i].getName();
+		return names;
+	}
+
+	static HashMap<String, MidiDevice.Info> index(MidiDevice.Info[] devices) {
+		HashMap<String, MidiDevice.Info> index = new HashMap<String, MidiDevice.Info>(devices.length * 2);
+		for (MidiDevice.Info device : devices) index.putIfAbsent(device.getName(), device);
+		return index;
+	}
+
+}
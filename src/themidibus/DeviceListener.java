@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+/**
+ * A DeviceListener is notified when a MIDI device is plugged in or unplugged while the program is running, as noticed by {@link MidiBus#findMidiDevices()} or the background watcher started by {@link MidiBus#watchDevices(int)}.
+ * <p>
+ * A device counts as added when it is listed and available, having not been available before, and as removed when an available device is no longer listed. A device which is both an input and an output is reported once.
+ * <p>
+ * The methods are called on the thread which rescanned the devices, the watcher's thread when rescanning in the background, one device at a time and in the order the devices are listed. The new devices are already listed by {@link MidiBus#list()} and can be added to a MidiBus from these methods.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#addDeviceListener(DeviceListener)
+ * @see MidiBus#watchDevices(int)
+*/
+
+public interface DeviceListener {
+
+	/**
+	 * Called when a MIDI device becomes available.
+	 *
+	 * @param device_name the name of the device.
+	 * @param input true if the device can be added as an input.
+	 * @param output true if the device can be added as an output.
+	*/
+	public void deviceAdded(String device_name, boolean input, boolean output);
+
+	/**
+	 * Called when a MIDI device which was available is no longer listed.
+	 *
+	 * @param device_name the name of the device.
+	 * @param input true if the device was an input.
+	 * @param output true if the device was an output.
+	*/
+	public void deviceRemoved(String device_name, boolean input, boolean output);
+
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Transmitter;
+import java.util.HashMap;
+
+/**
+ * The DeviceRegistry keeps track of which MIDI devices are in use by the MidiBus instances of this JVM, so each device is opened once however many inputs and outputs use it, and only closed when the last of them lets go of it. Devices which were already open when first used, e.g. opened by the program itself, are left open.
+ * <p>
+ * An input device also gets a single transmitter, however many inputs listen to it, whose messages an {@link InputDemux} hands to all of them.
+ * <p>
+ * Devices are told apart by their MidiDevice.Info. Whoever uses a device after the first user gets the MidiDevice the first user registered, so every bus shares the same instance even with providers which hand out a new one on every lookup.
+ *
+ * @version 010
+ * @author Severin Smith
+*/
+class DeviceRegistry {
+
+	static class Entry {
+		final MidiDevice device;
+		//Guarded by entries
+		int users;
+		//Whether the registry opened the device, and so should close it
+		boolean opened;
+		//The device's transmitter and its subscribers, while any input listens to the device
+		InputDemux demux;
+
+		Entry(MidiDevice device) {
+			this.device = device;
+		}
+	}
+
+	//An entry is removed once its last user released it and it is closed. Removal happens under the entry's lock, so whoever waited on that lock must check the entry is still mapped
+	static final HashMap<MidiDevice.Info, Entry> entries = new HashMap<MidiDevice.Info, Entry>();
+
+	/**
+	 * Starts using a device, opening it if nobody is using it yet.
+	 *
+	 * @param device the device.
+	 * @return the shared instance of the device, which should be used from now on.
+	 * @throws MidiUnavailableException if the device couldn't be opened.
+	*/
+	static MidiDevice acquire(MidiDevice device) throws MidiUnavailableException {
+		MidiDevice.Info info = device.getDeviceInfo();
+		while (true) {
+			Entry entry;
+			synchronized (entries) {
+				entry = entries.get(info);
+				if (entry == null) {
+					entry = new Entry(device);
+					entries.put(info, entry);
+				}
+			}
+
+			//Opening can be slow, so only devices by the same name wait on each other
+			synchronized (entry) {
+				synchronized (entries) {
+					//The last user released it while we waited, start over with a new entry
+					if (entries.get(info) != entry) continue;
+					entry.users++;
+				}
+				try {
+					if (!entry.device.isOpen()) {
+						entry.device.open();
+						entry.opened = true;
+					}
+				} catch(MidiUnavailableException | RuntimeException e) {
+					release(entry.device);
+					throw e;
+				}
+				return entry.device;
+			}
+		}
+	}
+
+	/**
+	 * Stops using a device, closing it if nobody else uses it and it was opened by the registry, and forgetting it.
+	 *
+	 * @param device the device, as returned by {@link #acquire(MidiDevice)}.
+	*/
+	static void release(MidiDevice device) {
+		MidiDevice.Info info = device.getDeviceInfo();
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(info);
+			if (entry == null || entry.users == 0) return;
+			if (--entry.users > 0) return;
+		}
+
+		synchronized (entry) {
+			synchronized (entries) {
+				//Someone may have started using it meanwhile, or released it again and removed it already
+				if (entry.users > 0 || entries.get(info) != entry) return;
+				entries.remove(info);
+			}
+			if (entry.opened) {
+				entry.opened = false;
+				try {
+					entry.device.close();
+				} catch(RuntimeException e) {
+					//Closing a device which went away can fail, it is closed either way
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts delivering the messages of an acquired input device to a subscriber, getting the device's transmitter if it is the first one.
+	 *
+	 * @param device the device, as returned by {@link #acquire(MidiDevice)}.
+	 * @param subscriber the subscriber.
+	 * @throws MidiUnavailableException if the device has no transmitter left.
+	*/
+	static void subscribe(MidiDevice device, InputDemux.Subscriber subscriber) throws MidiUnavailableException {
+		Entry entry = entry(device);
+		if (entry == null) throw new IllegalStateException("The device \""+device.getDeviceInfo().getName()+"\" wasn't acquired");
+		synchronized (entry) {
+			if (entry.demux == null) entry.demux = new InputDemux(entry.device.getTransmitter());
+			entry.demux.add(subscriber);
+		}
+	}
+
+	/**
+	 * Stops delivering the messages of an input device to a subscriber, closing the device's transmitter if it was the last one.
+	 *
+	 * @param device the device.
+	 * @param subscriber the subscriber.
+	*/
+	static void unsubscribe(MidiDevice device, InputDemux.Subscriber subscriber) {
+		Entry entry = entry(device);
+		if (entry == null) return;
+		synchronized (entry) {
+			if (entry.demux == null || entry.demux.remove(subscriber) > 0) return;
+			Transmitter transmitter = entry.demux.transmitter;
+			entry.demux = null;
+			try {
+				transmitter.close();
+			} catch(RuntimeException e) {
+				//Closing a transmitter whose device went away can fail, it is closed either way
+			}
+		}
+	}
+
+	/**
+	 * Returns the devices in use.
+	 *
+	 * @return the shared instance of each device.
+	*/
+	static MidiDevice[] devices() {
+		synchronized (entries) {
+			MidiDevice[] devices = new MidiDevice[entries.size()];
+			int i = 0;
+			for (Entry entry : entries.values()) devices[i++] = entry.device;
+			return devices;
+		}
+	}
+
+	static Entry entry(MidiDevice device) {
+		synchronized (entries) {
+			return entries.get(device.getDeviceInfo());
+		}
+	}
+
+	/**
+	 * Returns how many inputs and outputs use a device.
+	 *
+	 * @param info the device.
+	 * @return the number of users.
+	*/
+	static int users(MidiDevice.Info info) {
+		synchronized (entries) {
+			Entry entry = entries.get(info);
+			return entry == null ? 0 : entry.users;
+		}
+	}
+
+}
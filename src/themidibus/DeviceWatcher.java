@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import uk.co.xfactorylibrarians.coremidi4j.CoreMidiDeviceProvider;
+import uk.co.xfactorylibrarians.coremidi4j.CoreMidiException;
+import uk.co.xfactorylibrarians.coremidi4j.CoreMidiNotification;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A DeviceWatcher rescans the MIDI devices from its own thread at a regular interval, so {@link DeviceListener DeviceListeners} hear about devices being plugged in or unplugged without the program having to call {@link MidiBus#findMidiDevices()} itself.
+ * <p>
+ * A rescan only lists the devices and probes the ones which weren't there before, so it is cheap enough to run every second or so. When CoreMIDI4J is in use it also tells the watcher as soon as the MIDI setup changes, which triggers a rescan right away.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#watchDevices(int)
+*/
+class DeviceWatcher implements Runnable, CoreMidiNotification {
+
+	final Thread thread;
+	volatile long interval_nanos;
+	volatile boolean running;
+	volatile boolean notified;
+	boolean notifications;
+
+	/**
+	 * Constructs a new DeviceWatcher and starts its thread.
+	 *
+	 * @param interval how long to wait between rescans, in milliseconds.
+	*/
+	DeviceWatcher(int interval) {
+		interval(interval);
+		running = true;
+
+		if (!MidiBus.bypassCoreMidi4J) {
+			try {
+				if (CoreMidiDeviceProvider.isLibraryLoaded()) {
+					CoreMidiDeviceProvider.addNotificationListener(this);
+					notifications = true;
+				}
+			} catch(CoreMidiException | LinkageError e) {
+				//No change notifications, rely on the interval alone
+			}
+		}
+
+		thread = new Thread(this, "MidiBus Device Watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Changes how long the watcher waits between rescans, taking effect after the current wait.
+	 *
+	 * @param interval how long to wait between rescans, in milliseconds.
+	*/
+	void interval(int interval) {
+		interval_nanos = Math.max(1, interval) * 1000000L;
+	}
+
+	public void midiSystemUpdated() {
+		notified = true;
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Stops the watcher and waits for a rescan in progress to finish.
+	*/
+	void shutdown() {
+		running = false;
+		if (notifications) {
+			try {
+				CoreMidiDeviceProvider.removeNotificationListener(this);
+			} catch(CoreMidiException e) {
+				//Nothing left to stop
+			}
+		}
+		LockSupport.unpark(thread);
+		if (Thread.currentThread() == thread) return;
+		try {
+			thread.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void run() {
+		long next = System.nanoTime() + interval_nanos;
+		while (running) {
+			long wait = next - System.nanoTime();
+			if (wait > 0 && !notified) {
+				LockSupport.parkNanos(this, wait);
+				continue;
+			}
+			notified = false;
+			try {
+				MidiBus.findMidiDevices();
+			} catch(RuntimeException e) {
+				System.err.println("\nThe MidiBus Warning: Rescanning the MIDI devices failed: "+e);
+			}
+			next = System.nanoTime() + interval_nanos;
+		}
+	}
+
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * An InboundMessage is a MIDI message received by a MidiBus, decoded once into primitives and shared by every listener and parent callback it is delivered to. The byte[] and MidiMessage forms are only materialised if a consumer asks for them, so NoteOn, NoteOff and ControllerChange traffic can be delivered without allocating.
+ * <p>
+ * Instances are mutable and recycled by the receiving code; they are only valid for the duration of a single delivery.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus
+*/
+class InboundMessage {
+
+	/** The status byte, after any NoteOn with velocity 0 has been rewritten to a NoteOff. */
+	int status;
+	/** The first data byte, or 0 if there is none. */
+	int data1;
+	/** The second data byte, or 0 if there is none. */
+	int data2;
+	/** The timestamp of the message. */
+	long timestamp;
+
+	MidiMessage message;
+	boolean rewritten;
+
+	byte[] data;
+	MidiMessage materialised;
+
+	Note note;
+	ControlChange control_change;
+
+	/**
+	 * Decodes a MidiMessage into this InboundMessage. Short messages are read through their getters, so the message's byte array isn't cloned. A NoteOn with velocity 0 is presented as a NoteOff without modifying the original message.
+	 *
+	 * @param message the received MidiMessage.
+	 * @param timestamp the timestamp of the message.
+	 * @return this InboundMessage.
+	*/
+	InboundMessage set(MidiMessage message, long timestamp) {
+		if (message instanceof ShortMessage) {
+			ShortMessage short_message = (ShortMessage)message;
+			set(short_message.getStatus(), short_message.getData1(), short_message.getData2(), timestamp);
+		} else {
+			set(message.getStatus(), 0, 0, timestamp);
+		}
+
+		this.message = message;
+
+		return this;
+	}
+
+	/**
+	 * Sets this InboundMessage from primitives, the byte[] and MidiMessage forms will be built from these values if needed. A NoteOn with velocity 0 is presented as a NoteOff.
+	 *
+	 * @param status the status byte.
+	 * @param data1 the first data byte.
+	 * @param data2 the second data byte.
+	 * @param timestamp the timestamp of the message.
+	 * @return this InboundMessage.
+	*/
+	InboundMessage set(int status, int data1, int data2, long timestamp) {
+		this.rewritten = (status & 0xF0) == ShortMessage.NOTE_ON && data2 == 0;
+		this.status = rewritten ? ShortMessage.NOTE_OFF | (status & 0x0F) : status;
+		this.data1 = data1;
+		this.data2 = data2;
+		this.timestamp = timestamp;
+
+		this.message = null;
+		this.data = null;
+		this.materialised = null;
+
+		return this;
+	}
+
+	/**
+	 * Returns the command of this message, i.e. the status byte without the channel.
+	 *
+	 * @return the command.
+	*/
+	int command() {
+		return status & 0xF0;
+	}
+
+	/**
+	 * Returns the channel of this message.
+	 *
+	 * @return the channel.
+	*/
+	int channel() {
+		return status & 0x0F;
+	}
+
+	/**
+	 * Returns the bytes of this message, materialising them on first use. The same array is handed to every consumer of this message.
+	 *
+	 * @return the bytes of the message.
+	*/
+	byte[] data() {
+		if (data == null) {
+			if (message != null && !rewritten) {
+				data = message.getMessage();
+			} else {
+				int length = length(status);
+				data = new byte[length];
+				data[0] = (byte)status;
+				if (length > 1) data[1] = (byte)data1;
+				if (length > 2) data[2] = (byte)data2;
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Returns this message as a MidiMessage. This is the received message itself unless it was rewritten or set from primitives, in which case an equivalent ShortMessage is materialised on first use.
+	 *
+	 * @return the MidiMessage.
+	*/
+	MidiMessage message() {
+		if (message != null && !rewritten) return message;
+		if (materialised == null) {
+			try {
+				materialised = new ShortMessage(status, data1, data2);
+			} catch(InvalidMidiDataException e) {
+				System.err.println("\nThe MidiBus Warning: Mystery error while rebuilding an inbound MIDI message");
+			}
+		}
+		return materialised;
+	}
+
+	/**
+	 * Returns the Note recycled by this InboundMessage, with all its fields reset. Each call overwrites the Note handed out by the previous call.
+	 *
+	 * @param timestamp the timestamp of the Note.
+	 * @param bus_name the name of MidiBus associated with the Note.
+	 * @return the recycled Note.
+	*/
+	Note note(long timestamp, String bus_name) {
+		if (note == null) note = new Note(0, 0, 0);
+		return note.set(channel(), data1, data2, timestamp, bus_name);
+	}
+
+	/**
+	 * Returns the ControlChange recycled by this InboundMessage, with all its fields reset. Each call overwrites the ControlChange handed out by the previous call.
+	 *
+	 * @param timestamp the timestamp of the ControlChange.
+	 * @param bus_name the name of MidiBus associated with the ControlChange.
+	 * @return the recycled ControlChange.
+	*/
+	ControlChange controlChange(long timestamp, String bus_name) {
+		if (control_change == null) control_change = new ControlChange(0, 0, 0);
+		return control_change.set(channel(), data1, data2, timestamp, bus_name);
+	}
+
+	/**
+	 * Returns the length in bytes of a short message with the given status byte.
+	 *
+	 * @param status the status byte.
+	 * @return the length of the message.
+	*/
+	static int length(int status) {
+		switch (status & 0xF0) {
+			case ShortMessage.PROGRAM_CHANGE:
+			case ShortMessage.CHANNEL_PRESSURE:
+				return 2;
+			case 0xF0:
+				if (status == ShortMessage.MIDI_TIME_CODE || status == ShortMessage.SONG_SELECT) return 2;
+				if (status == ShortMessage.SONG_POSITION_POINTER) return 3;
+				return 1;
+			default:
+				return 3;
+		}
+	}
+
+}
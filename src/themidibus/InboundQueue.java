@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An InboundQueue is a pre-allocated, bounded ring buffer of received MIDI messages, written by the single thread delivering messages from one input device and drained by the MidiBus which owns it.
+ * <p>
+ * Short messages are stored as primitives so queuing them never allocates, other messages (e.g. SysEx) are stored by reference. When the queue is full the {@link OverflowPolicy} decides whether the producer waits, the oldest message is discarded or the new message is discarded.
+ * <p>
+ * With coalescing enabled, controller changes, pitch bends and channel pressure only take one place in the queue per controller and channel. The latest value is kept in a side table and the queue only holds a marker, at the position of the first message which wasn't delivered yet. Later messages for the same controller just overwrite the value, so the consumer gets the most recent one and everything else keeps its order.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#asyncDispatch(int, OverflowPolicy)
+*/
+class InboundQueue {
+
+	final int capacity;
+	final int mask;
+	final OverflowPolicy policy;
+
+	final int[] statuses;
+	final int[] data1s;
+	final int[] data2s;
+	final long[] timestamps;
+	final MidiMessage[] messages;
+
+	//head is advanced by the consumer, and by the producer when it drops the oldest message, hence the CAS
+	final AtomicLong head;
+	final AtomicLong tail;
+
+	volatile long dropped;
+	volatile boolean closed;
+
+	//Marks a queued message as a marker for a coalescing slot
+	static final int COALESCED = 0x100;
+	static final int PENDING = 0x80000000;
+	static final int PITCH_BEND_SLOTS = 16*128;
+	static final int CHANNEL_PRESSURE_SLOTS = PITCH_BEND_SLOTS + 16;
+
+	volatile boolean coalesce;
+	//Latest value of each coalescing slot, with the PENDING bit set while a marker for it is queued
+	final AtomicIntegerArray latest_values;
+	final AtomicLongArray latest_timestamps;
+
+	/**
+	 * Constructs a new InboundQueue.
+	 *
+	 * @param capacity the minimum number of messages the queue can hold, rounded up to a power of two.
+	 * @param policy what to do when the queue is full.
+	*/
+	InboundQueue(int capacity, OverflowPolicy policy) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+		this.capacity = size;
+		this.mask = size - 1;
+		this.policy = policy;
+
+		statuses = new int[size];
+		data1s = new int[size];
+		data2s = new int[size];
+		timestamps = new long[size];
+		messages = new MidiMessage[size];
+
+		head = new AtomicLong();
+		tail = new AtomicLong();
+
+		latest_values = new AtomicIntegerArray(CHANNEL_PRESSURE_SLOTS + 16);
+		latest_timestamps = new AtomicLongArray(CHANNEL_PRESSURE_SLOTS + 16);
+	}
+
+	/**
+	 * Returns the coalescing slot for a short message: one per channel and controller number, one per channel for pitch bend and one per channel for channel pressure.
+	 *
+	 * @param status the status byte.
+	 * @param data1 the first data byte.
+	 * @return the slot, or -1 if the message is never coalesced.
+	*/
+	static int slot(int status, int data1) {
+		switch (status & 0xF0) {
+			case ShortMessage.CONTROL_CHANGE: return ((status & 0x0F) << 7) | data1;
+			case ShortMessage.PITCH_BEND: return PITCH_BEND_SLOTS + (status & 0x0F);
+			case ShortMessage.CHANNEL_PRESSURE: return CHANNEL_PRESSURE_SLOTS + (status & 0x0F);
+			default: return -1;
+		}
+	}
+
+	/**
+	 * Queues a received MidiMessage. Must only be called from the thread delivering messages for the queue's input.
+	 *
+	 * @param message the received message.
+	 * @param timestamp the timestamp of the message.
+	 * @return true if the message was queued, false if it was dropped.
+	*/
+	boolean offer(MidiMessage message, long timestamp) {
+		if (message instanceof ShortMessage) {
+			ShortMessage short_message = (ShortMessage)message;
+			return offer(short_message.getStatus(), short_message.getData1(), short_message.getData2(), null, timestamp);
+		} else {
+			return offer(message.getStatus(), 0, 0, message, timestamp);
+		}
+	}
+
+	/**
+	 * Queues a message. Must only be called from the thread delivering messages for the queue's input.
+	 *
+	 * @param status the status byte.
+	 * @param data1 the first data byte.
+	 * @param data2 the second data byte.
+	 * @param message the message if it isn't a short message, otherwise null.
+	 * @param timestamp the timestamp of the message.
+	 * @return true if the message was queued, false if it was dropped.
+	*/
+	boolean offer(int status, int data1, int data2, MidiMessage message, long timestamp) {
+		if (coalesce && message == null) {
+			int slot = slot(status, data1);
+			if (slot != -1) {
+				latest_timestamps.set(slot, timestamp);
+				int previous = latest_values.getAndSet(slot, PENDING | (data2 << 8) | data1);
+				//A marker is already queued, it will pick up this value
+				if ((previous & PENDING) != 0) return true;
+				if (enqueue(status | COALESCED, slot, 0, null, 0)) return true;
+				latest_values.set(slot, 0);
+				return false;
+			}
+		}
+
+		return enqueue(status, data1, data2, message, timestamp);
+	}
+
+	/**
+	 * Writes a message or a coalescing marker in the ring, applying the overflow policy.
+	*/
+	private boolean enqueue(int status, int data1, int data2, MidiMessage message, long timestamp) {
+		long t = tail.get();
+		int spins = 0;
+
+		while (t - head.get() >= capacity) {
+			if (closed) return false;
+
+			if (policy == OverflowPolicy.DROP_NEWEST) {
+				dropped++;
+				return false;
+			} else if (policy == OverflowPolicy.DROP_OLDEST) {
+				long h = head.get();
+				int index = (int)(h & mask);
+				int dropped_status = statuses[index];
+				int dropped_slot = data1s[index];
+				if (t - h >= capacity && head.compareAndSet(h, h + 1)) {
+					//A dropped marker takes its pending value along, so the next message for the slot queues a new marker
+					if ((dropped_status & COALESCED) != 0) latest_values.set(dropped_slot, 0);
+					dropped++;
+				}
+			} else if (++spins < 100) {
+				Thread.onSpinWait();
+			} else {
+				LockSupport.parkNanos(100000L);
+			}
+		}
+
+		int index = (int)(t & mask);
+		statuses[index] = status;
+		data1s[index] = data1;
+		data2s[index] = data2;
+		timestamps[index] = timestamp;
+		messages[index] = message;
+
+		tail.lazySet(t + 1);
+
+		return true;
+	}
+
+	/**
+	 * Removes the oldest message from the queue and decodes it into the given InboundMessage. Must only be called by one consumer at a time.
+	 *
+	 * @param inbound the InboundMessage to decode the message into.
+	 * @return true if a message was removed, false if the queue was empty.
+	*/
+	boolean poll(InboundMessage inbound) {
+		while (true) {
+			long h = head.get();
+			if (h >= tail.get()) return false;
+
+			int index = (int)(h & mask);
+			int status = statuses[index];
+			int data1 = data1s[index];
+			int data2 = data2s[index];
+			long timestamp = timestamps[index];
+			MidiMessage message = messages[index];
+
+			//If the producer dropped this slot while we were reading it the CAS fails and we read the next one
+			if (head.compareAndSet(h, h + 1)) {
+				if (message != null) {
+					inbound.set(message, timestamp);
+				} else if ((status & COALESCED) != 0) {
+					timestamp = latest_timestamps.get(data1);
+					int value = latest_values.getAndSet(data1, 0);
+					inbound.set(status & 0xFF, value & 0x7F, (value >> 8) & 0x7F, timestamp);
+				} else {
+					inbound.set(status, data1, data2, timestamp);
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the queue is empty.
+	 *
+	 * @return true if the queue holds no messages.
+	*/
+	boolean isEmpty() {
+		return head.get() >= tail.get();
+	}
+
+	/**
+	 * Closes this queue, a producer blocked on a full queue gives up and drops its message.
+	*/
+	void close() {
+		closed = true;
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Transmitter;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An InputDemux is the single receiver attached to an input device's single transmitter, however many MidiBus instances listen to the device. It hands each incoming message to every subscribed input: the ones with asynchronous dispatch get the message queued, the others get it delivered from one decode, shared by all of them.
+ * <p>
+ * The InboundMessage is recycled the same way an input's own would be, unless the demultiplexer is reentered (e.g. a callback sending to a loopback device), then a fresh one is used.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see DeviceRegistry
+*/
+class InputDemux implements Receiver {
+
+	/**
+	 * An input of a MidiBus listening to the device.
+	*/
+	interface Subscriber {
+		/**
+		 * Queues a message for asynchronous dispatch.
+		 *
+		 * @return true if the message was queued, false if it should be delivered right away.
+		*/
+		boolean offer(MidiMessage message, long timestamp);
+
+		/**
+		 * Delivers a decoded message to the listeners and the parent, on the calling thread.
+		*/
+		void deliver(InboundMessage inbound);
+	}
+
+	final Transmitter transmitter;
+	//Copy-on-write, replaced under the registry entry's lock
+	volatile Subscriber[] subscribers;
+
+	InboundMessage inbound;
+	AtomicBoolean inbound_busy;
+
+	InputDemux(Transmitter transmitter) {
+		this.transmitter = transmitter;
+		subscribers = new Subscriber[0];
+		inbound = new InboundMessage();
+		inbound_busy = new AtomicBoolean();
+		transmitter.setReceiver(this);
+	}
+
+	void add(Subscriber subscriber) {
+		subscribers = MidiBus.add(subscribers, subscriber);
+	}
+
+	/**
+	 * @return the number of subscribers left.
+	*/
+	int remove(Subscriber subscriber) {
+		Subscriber[] subscribers = this.subscribers;
+		for (int i = 0;i < subscribers.length;i++) {
+			if (subscribers[i] == subscriber) {
+				this.subscribers = MidiBus.remove(subscribers, i);
+				return subscribers.length - 1;
+			}
+		}
+		return subscribers.length;
+	}
+
+	public void send(MidiMessage message, long timeStamp) {
+		Subscriber[] subscribers = this.subscribers;
+
+		boolean recycled = inbound_busy.compareAndSet(false, true);
+		InboundMessage decoded = null;
+		//A failing listener doesn't keep the other buses from getting the message
+		RuntimeException failure = null;
+
+		try {
+			for (Subscriber subscriber : subscribers) {
+				try {
+					if (subscriber.offer(message, timeStamp)) continue;
+					if (decoded == null) decoded = (recycled ? inbound : new InboundMessage()).set(message, timeStamp);
+					subscriber.deliver(decoded);
+				} catch(RuntimeException e) {
+					if (failure == null) failure = e;
+				}
+			}
+		} finally {
+			if (recycled) inbound_busy.set(false);
+		}
+
+		if (failure != null) throw failure;
+	}
+
+	public void close() {
+
+	}
+
+}
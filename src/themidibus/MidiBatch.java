@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import javax.sound.midi.MidiMessage;
+
+/**
+ * A MidiBatch is a reusable list of MIDI messages which {@link MidiBus#sendBatch(MidiBatch)} sends to every output in one go, in the order they were added. Short messages are packed into ints, so filling a batch doesn't allocate once it has grown to its working size. Call {@link #clear()} to reuse it.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#sendBatch(MidiBatch)
+*/
+
+public class MidiBatch {
+
+	/** Short messages packed as status | data1 << 8 | data2 << 16, or -1 where the entry is in messages. */
+	int[] events;
+	/** The MidiMessages added with {@link #add(MidiMessage)}, null for packed short messages. */
+	MidiMessage[] messages;
+	int size;
+
+	/**
+	 * Constructs an empty MidiBatch.
+	*/
+	public MidiBatch() {
+		this(16);
+	}
+
+	/**
+	 * Constructs an empty MidiBatch with room for the specified number of messages before it has to grow.
+	 *
+	 * @param capacity the initial number of messages the batch can hold.
+	*/
+	public MidiBatch(int capacity) {
+		events = new int[Math.max(capacity, 1)];
+		messages = new MidiMessage[events.length];
+	}
+
+	/**
+	 * Adds a NoteOn message. Out of range values are constrained like {@link MidiBus#sendNoteOn(int, int, int)} does.
+	 *
+	 * @param channel the channel associated with the message.
+	 * @param pitch the pitch associated with the message.
+	 * @param velocity the velocity associated with the message.
+	 * @return this batch.
+	*/
+	public MidiBatch noteOn(int channel, int pitch, int velocity) {
+		return add(0x90 | constrain(channel, 0, 15), constrain(pitch, 0, 127), constrain(velocity, 0, 127));
+	}
+
+	/**
+	 * Adds a NoteOff message. Out of range values are constrained like {@link MidiBus#sendNoteOff(int, int, int)} does.
+	 *
+	 * @param channel the channel associated with the message.
+	 * @param pitch the pitch associated with the message.
+	 * @param velocity the velocity associated with the message.
+	 * @return this batch.
+	*/
+	public MidiBatch noteOff(int channel, int pitch, int velocity) {
+		return add(0x80 | constrain(channel, 0, 15), constrain(pitch, 0, 127), constrain(velocity, 0, 127));
+	}
+
+	/**
+	 * Adds a ControllerChange message. Out of range values are constrained like {@link MidiBus#sendControllerChange(int, int, int)} does.
+	 *
+	 * @param channel the channel associated with the message.
+	 * @param number the number associated with the message.
+	 * @param value the value associated with the message.
+	 * @return this batch.
+	*/
+	public MidiBatch controllerChange(int channel, int number, int value) {
+		return add(0xB0 | constrain(channel, 0, 15), constrain(number, 0, 127), constrain(value, 0, 127));
+	}
+
+	/**
+	 * Adds a short message. The data is checked when the batch is sent.
+	 *
+	 * @param status the status byte.
+	 * @param data1 the first data byte.
+	 * @param data2 the second data byte.
+	 * @return this batch.
+	 * @see MidiBus#sendMessage(int, int, int)
+	*/
+	public MidiBatch add(int status, int data1, int data2) {
+		grow();
+		//Out of range values are packed as bytes MidiBus.sendBatch() rejects for the same reason
+		if ((status & ~0xFF) != 0) status = 0;
+		if ((data1 & ~0xFF) != 0) data1 = 0xFF;
+		if ((data2 & ~0xFF) != 0) data2 = 0xFF;
+		events[size] = status | data1 << 8 | data2 << 16;
+		messages[size] = null;
+		size++;
+		return this;
+	}
+
+	/**
+	 * Adds a MidiMessage, e.g. a SysexMessage. The message is sent as is and isn't copied, so it mustn't be modified until the batch has been sent.
+	 *
+	 * @param message the message.
+	 * @return this batch.
+	 * @see MidiBus#sendMessage(MidiMessage)
+	*/
+	public MidiBatch add(MidiMessage message) {
+		grow();
+		events[size] = -1;
+		messages[size] = message;
+		size++;
+		return this;
+	}
+
+	/**
+	 * Returns the number of messages in this batch.
+	 *
+	 * @return the number of messages.
+	*/
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes every message from this batch, keeping its capacity.
+	*/
+	public void clear() {
+		java.util.Arrays.fill(messages, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Makes room for one more message.
+	*/
+	void grow() {
+		if (size < events.length) return;
+		events = java.util.Arrays.copyOf(events, events.length * 2);
+		messages = java.util.Arrays.copyOf(messages, events.length);
+	}
+
+	/**
+	 * It's just convient ... move along...
+	*/
+	static int constrain(int value, int min, int max) {
+		if (value > max) value = max;
+		if (value < min) value = min;
+		return value;
+	}
+
+}
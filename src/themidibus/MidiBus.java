@@ -20,10 +20,17 @@
 package themidibus;
 
 import javax.sound.midi.*;
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.HashSet;
 import java.util.Formatter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import processing.core.PApplet;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import uk.co.xfactorylibrarians.coremidi4j.CoreMidiDeviceProvider;
 
@@ -46,8 +53,39 @@ import uk.co.xfactorylibrarians.coremidi4j.CoreMidiDeviceProvider;
  * @see SimpleMidiListener
 */
 public class MidiBus {
-		
-	static MidiDevice.Info[] available_devices;
+
+	/** Message type mask bit for NoteOff messages, see {@link #addMidiListener(MidiListener, int, int)}. */
+	public static final int TYPE_NOTE_OFF = 1 << 0;
+	/** Message type mask bit for NoteOn messages, see {@link #addMidiListener(MidiListener, int, int)}. */
+	public static final int TYPE_NOTE_ON = 1 << 1;
+	/** Message type mask bit for polyphonic key pressure messages, see {@link #addMidiListener(MidiListener, int, int)}. */
+	public static final int TYPE_POLY_PRESSURE = 1 << 2;
+	/** Message type mask bit for ControllerChange messages, see {@link #addMidiListener(MidiListener, int, int)}. */
+	public static final int TYPE_CONTROL_CHANGE = 1 << 3;
+	/** Message type mask bit for ProgramChange messages, see {@link #addMidiListener(MidiListener, int, int)}. */
+	public static final int TYPE_PROGRAM_CHANGE = 1 << 4;
+	/** Message type mask bit for channel pressure messages, see {@link #addMidiListener(MidiListener, int, int)}. */
+	public static final int TYPE_CHANNEL_PRESSURE = 1 << 5;
+	/** Message type mask bit for PitchBend messages, see {@link #addMidiListener(MidiListener, int, int)}. */
+	public static final int TYPE_PITCH_BEND = 1 << 6;
+	/** Message type mask bit for system messages (SysEx, clock, ...), see {@link #addMidiListener(MidiListener, int, int)}. */
+	public static final int TYPE_SYSTEM = 1 << 7;
+	/** Message type mask matching all messages, see {@link #addMidiListener(MidiListener, int, int)}. */
+	public static final int ALL_TYPES = 0xFF;
+	/** Channel mask matching all 16 channels, see {@link #addMidiListener(MidiListener, int, int)}. */
+	public static final int ALL_CHANNELS = 0xFFFF;
+	/** Bandwidth of a DIN MIDI port in bytes per second (31250 baud, 10 bits per byte), see {@link #rateLimit(String, int)}. */
+	public static final int DIN_BYTES_PER_SECOND = 3125;
+		
+	//The installed devices as last found by findMidiDevices()
+	static volatile DeviceCatalog catalog;
+	static final Object catalog_lock = new Object();
+
+	static volatile DeviceListener[] device_listeners = new DeviceListener[0];
+	static DeviceWatcher device_watcher;
+
+	//Opens devices in the background for addInputAsync() and the like, shared by all the MidiBus instances
+	static java.util.concurrent.ExecutorService device_opener;
 
 	/**
 	 * When true, MidiBus uses the built-in Java MIDI device list
@@ -59,19 +97,58 @@ public class MidiBus {
 
 	String bus_name;
 		
-	Vector<InputDeviceContainer> input_devices;
-	Vector<OutputDeviceContainer> output_devices;
+	//Immutable snapshots, replaced as a whole under the lock whenever a device or a listener is added or removed, so the send and receive paths can iterate them without locking
+	volatile InputDeviceContainer[] input_devices;
+	volatile OutputDeviceContainer[] output_devices;
 
-	Vector<MidiListener> listeners;
+	volatile MidiListener[] listeners;
+	java.util.IdentityHashMap<MidiListener, ListenerFilter> listener_filters;
+	Object listeners_lock;
+	volatile ListenerEntry[][] listener_table;
 	
 	Object parent;
 		
-	Method method_note_on, method_note_off, method_controller_change, method_raw_midi, method_midi_message;
-	Method method_note_on_with_bus_name, method_note_off_with_bus_name, method_controller_change_with_bus_name, method_raw_midi_with_bus_name, method_midi_message_with_bus_name;
-	Method method_note_on_wcla, method_note_off_wcla, method_controller_change_wcla;
+	MethodHandle method_note_on, method_note_off, method_controller_change, method_raw_midi, method_midi_message;
+	MethodHandle method_note_on_with_bus_name, method_note_off_with_bus_name, method_controller_change_with_bus_name, method_raw_midi_with_bus_name, method_midi_message_with_bus_name;
+	MethodHandle method_note_on_wcla, method_note_off_wcla, method_controller_change_wcla;
 
-	boolean sendTimestamps;
+	volatile boolean sendTimestamps;
 	boolean throwErrors;
+	boolean recycleEventObjects;
+	boolean recycleOutboundMessages;
+
+	static final String[] NO_DEVICES = new String[0];
+
+	OutboundScheduler scheduler;
+	boolean deviceScheduling;
+
+	boolean suppressRedundant;
+
+	//Rebinds the inputs and outputs whose device was lost, null unless automatic reconnection is enabled
+	volatile Reconnector reconnector;
+	//Finds the device to attach by name, when reconnecting or opening devices in the background
+	DeviceLocator device_locator = MidiBus::locateDevice;
+
+	/** Delay before the first attempt to reconnect a lost device, in milliseconds, doubled after each failed attempt. */
+	static final long RECONNECT_MIN_DELAY = 100;
+	/** Longest delay between two attempts to reconnect a lost device, in milliseconds. A device lost again within this long of being reconnected is considered flapping, and its delays keep growing. */
+	static final long RECONNECT_MAX_DELAY = 10000;
+	/** How often the devices are rescanned to notice lost ones, if nothing else started the device watcher. */
+	static final int RECONNECT_WATCH_INTERVAL = 1000;
+
+	//Threads sending to the outputs concurrently, null unless parallel output is enabled
+	volatile java.util.concurrent.ExecutorService fan_out;
+
+	//Runs the SysEx transfers one at a time, so their packets never interleave
+	java.util.concurrent.ExecutorService sysex_streamer;
+
+	//Settings of the per output writer queues, the policy is null unless asynchronous output is enabled
+	int output_queue_capacity;
+	OverflowPolicy output_queue_policy;
+
+	volatile InboundDispatcher dispatcher;
+	long retired_drops;
+	volatile boolean coalesceControllers;
 	
 	/* -- Constructors -- */
 
@@ -291,13 +368,21 @@ public class MidiBus {
 
 		/* -- */
 		
-		input_devices = new Vector<InputDeviceContainer>();
-		output_devices = new Vector<OutputDeviceContainer>();
+		input_devices = new InputDeviceContainer[0];
+		output_devices = new OutputDeviceContainer[0];
 		
-		listeners = new Vector<MidiListener>();
+		listeners = new MidiListener[0];
+		listeners_lock = new Object();
+		listener_filters = new java.util.IdentityHashMap<MidiListener, ListenerFilter>();
+		rebuildListenerTable();
 
 		sendTimestamps = false;
 		throwErrors = false;
+		recycleEventObjects = false;
+		recycleOutboundMessages = false;
+		deviceScheduling = false;
+		suppressRedundant = false;
+		coalesceControllers = false;
 
 		registerParent(parent);
 	}
@@ -344,10 +429,11 @@ public class MidiBus {
 	 * @return the MidiDevice.Info of the attached inputs.
 	*/
 	MidiDevice.Info[] attachedInputsMidiDeviceInfo() {
-		MidiDevice.Info[] devices = new MidiDevice.Info[input_devices.size()];
+		InputDeviceContainer[] input_devices = this.input_devices;
+		MidiDevice.Info[] devices = new MidiDevice.Info[input_devices.length];
 	
-		for (int i = 0;i < input_devices.size();i++) {
-			devices[i] = input_devices.get(i).info;
+		for (int i = 0;i < input_devices.length;i++) {
+			devices[i] = input_devices[i].info;
 		}
 		
 		return devices;
@@ -359,10 +445,11 @@ public class MidiBus {
 	 * @return the MidiDevice.Info of the attached outputs.
 	*/
 	MidiDevice.Info[] attachedOutputsMidiDeviceInfo() {
-		MidiDevice.Info[] devices = new MidiDevice.Info[output_devices.size()];
+		OutputDeviceContainer[] output_devices = this.output_devices;
+		MidiDevice.Info[] devices = new MidiDevice.Info[output_devices.length];
 	
-		for (int i = 0;i < output_devices.size();i++) {
-			devices[i] = output_devices.get(i).info;
+		for (int i = 0;i < output_devices.length;i++) {
+			devices[i] = output_devices[i].info;
 		}
 		
 		return devices;
@@ -380,16 +467,16 @@ public class MidiBus {
 	public boolean addInput(int device_num) {
 		if (device_num == -1) return false;
 
-		MidiDevice.Info[] devices = availableInputsMidiDeviceInfo();
+		MidiDevice.Info device_info = catalog().input(device_num);
 		
-		if (device_num >= devices.length || device_num < 0) {
+		if (device_info == null) {
 			String msg = "The chosen input device numbered ["+device_num+"] was not added because it doesn't exist";
 			System.err.println("\nThe MidiBus Warning: " + msg);
 			if (throwErrors) throw new RuntimeException(msg);
 			return false;
 		}
 		
-		return addInput(devices[device_num]);
+		return addInput(device_info);
 	}
 	
 	
@@ -403,12 +490,11 @@ public class MidiBus {
 	*/
 	public synchronized boolean removeInput(int device_num) {
 		try {
-			InputDeviceContainer container = input_devices.get(device_num);
+			InputDeviceContainer container = input_devices[device_num];
 	
-			input_devices.remove(container);
+			input_devices = remove(input_devices, device_num);
 		
-			container.transmitter.close();
-			container.receiver.close();
+			container.close();
 		
 			return true;
 		} catch(ArrayIndexOutOfBoundsException e) {
@@ -430,11 +516,9 @@ public class MidiBus {
 	public boolean addInput(String device_name) {
 		if (device_name.equals("")) return false;
 		
-		MidiDevice.Info[] devices = availableInputsMidiDeviceInfo();
+		MidiDevice.Info device_info = catalog().input(device_name);
 
-		for (int i = 0;i < devices.length;i++) {
-			if (devices[i].getName().equals(device_name)) return addInput(devices[i]);
-		}
+		if (device_info != null) return addInput(device_info);
 		
 		String msg = "No available input MIDI devices named: \""+device_name+"\" were found";
 		System.err.println("\nThe MidiBus Warning: " + msg);
@@ -442,6 +526,32 @@ public class MidiBus {
 		return false;
 	}
 
+	/**
+	 * Adds a new MIDI input device specified by the name device_name, like {@link #addInput(String device_name)}, but opens the device on a background thread and returns right away. Some drivers take hundreds of milliseconds to open a device, this keeps them from stalling the calling thread. The input is attached to this MidiBus as soon as the device is open.
+	 *
+	 * @param device_name the name of the MIDI input device to be added.
+	 * @return a future which completes with true if and only if the input device was successfully added, or exceptionally with a RuntimeException if it couldn't be added and {@link #throwErrors(boolean)} is enabled.
+	 * @see #addInput(String device_name)
+	 * @see #addInputs(String... device_names)
+	*/
+	public java.util.concurrent.CompletableFuture<Boolean> addInputAsync(String device_name) {
+		java.util.concurrent.CompletableFuture<MidiDevice> opening = java.util.concurrent.CompletableFuture.supplyAsync(() -> openDevice(device_name, true), deviceOpener());
+		return opening.handle((device, e) -> attachDevice(device_name, opening, true));
+	}
+
+	/**
+	 * Adds several MIDI input devices specified by their names, like calling {@link #addInput(String device_name)} for each of them, but opens the devices concurrently on background threads, so adding them takes about as long as opening the slowest one. Once they are all open, the inputs are attached in the given order.
+	 *
+	 * @param device_names the names of the MIDI input devices to be added.
+	 * @return the names of the devices which were not added, an empty array if all were.
+	 * @throws RuntimeException if a device cannot be added and {@link #throwErrors(boolean)} is enabled.
+	 * @see #addInput(String device_name)
+	 * @see #addInputAsync(String device_name)
+	*/
+	public String[] addInputs(String... device_names) {
+		return attachDevices(device_names, true);
+	}
+
 	/**
 	 * Removes the MIDI input device specified by the name device_name.
 	 * <p>
@@ -453,14 +563,12 @@ public class MidiBus {
 	 * @see #attachedInputs()
 	*/
 	public synchronized boolean removeInput(String device_name) {
-		java.util.Iterator<InputDeviceContainer> it = input_devices.iterator();
-		while (it.hasNext()) {
-			InputDeviceContainer container = it.next();
+		for (int i = 0;i < input_devices.length;i++) {
+			InputDeviceContainer container = input_devices[i];
 			if (container.info.getName().equals(device_name)) {
-				it.remove();
+				input_devices = remove(input_devices, i);
 
-				container.transmitter.close();
-				container.receiver.close();
+				container.close();
 
 				return true;
 			}
@@ -476,8 +584,24 @@ public class MidiBus {
 	*/
 	synchronized boolean addInput(MidiDevice.Info device_info) {
 		try {
-			MidiDevice new_device = MidiSystem.getMidiDevice(device_info);
-		
+			return addInput(MidiSystem.getMidiDevice(device_info));
+		} catch(MidiUnavailableException e) {
+			System.err.println("\nThe MidiBus Warning: The chosen input device \""+device_info.getName()+"\" was not added because it is unavailable");
+			if (throwErrors) throw new RuntimeException(e);
+			return false;
+		}
+	}
+
+	/**
+	 * Adds a MIDI input device which was already looked up. If the MIDI input device has already been added, it will not be added again.
+	 *
+	 * @param new_device the MidiDevice of the MIDI input device to be added.
+	 * @return true if and only if the input device was successfully added.
+	*/
+	synchronized boolean addInput(MidiDevice new_device) {
+		MidiDevice.Info device_info = new_device.getDeviceInfo();
+
+		try {
 			if (new_device.getMaxTransmitters() == 0) {
 				String msg = "The chosen input device \""+device_info.getName()+"\" was not added because it is output only";
 				System.err.println("\nThe MidiBus Warning: " + msg);
@@ -489,17 +613,22 @@ public class MidiBus {
 				if (device_info.getName().equals(container.info.getName())) return false;
 			}
 
-			if (!new_device.isOpen()) new_device.open();
+			new_device = DeviceRegistry.acquire(new_device);
 
+			//Buses listening to the same device share its transmitter
 			MReceiver receiver = new MReceiver();
-			Transmitter transmitter = new_device.getTransmitter();
-			transmitter.setReceiver(receiver);
+			try {
+				DeviceRegistry.subscribe(new_device, receiver);
+			} catch(MidiUnavailableException | RuntimeException e) {
+				DeviceRegistry.release(new_device);
+				throw e;
+			}
+			if (dispatcher != null) receiver.queue = dispatcher.attach();
 			
 			InputDeviceContainer new_container = new InputDeviceContainer(new_device);
-			new_container.transmitter = transmitter;
 			new_container.receiver = receiver;
 			
-			input_devices.add(new_container);
+			input_devices = add(input_devices, new_container);
 			
 			return true;
 		} catch(MidiUnavailableException e) {
@@ -521,16 +650,16 @@ public class MidiBus {
 	public boolean addOutput(int device_num) {
 		if (device_num == -1) return false;
 
-		MidiDevice.Info[] devices = availableOutputsMidiDeviceInfo();
+		MidiDevice.Info device_info = catalog().output(device_num);
 		
-		if (device_num >= devices.length || device_num < 0) {
+		if (device_info == null) {
 			String msg = "The chosen output device numbered ["+device_num+"] was not added because it doesn't exist";
 			System.err.println("\nThe MidiBus Warning: " + msg);
 			if (throwErrors) throw new RuntimeException(msg);
 			return false;
 		}
 		
-		return addOutput(devices[device_num]);		
+		return addOutput(device_info);		
 	}
 	
 	/**
@@ -543,11 +672,11 @@ public class MidiBus {
 	*/
 	public synchronized boolean removeOutput(int device_num) {
 		try {
-			OutputDeviceContainer container = output_devices.get(device_num);
+			OutputDeviceContainer container = output_devices[device_num];
 	
-			output_devices.remove(container);
+			output_devices = remove(output_devices, device_num);
 		
-			container.receiver.close();
+			container.close();
 		
 			return true;
 		} catch(ArrayIndexOutOfBoundsException e) {
@@ -569,11 +698,9 @@ public class MidiBus {
 	public boolean addOutput(String device_name) {
 		if (device_name.equals("")) return false;
 		
-		MidiDevice.Info[] devices = availableOutputsMidiDeviceInfo();
+		MidiDevice.Info device_info = catalog().output(device_name);
 		
-		for (int i = 0;i < devices.length;i++) {
-			if (devices[i].getName().equals(device_name)) return addOutput(devices[i]);
-		}
+		if (device_info != null) return addOutput(device_info);
 		
 		String msg = "No available output MIDI devices named: \""+device_name+"\" were found";
 		System.err.println("\nThe MidiBus Warning: " + msg);
@@ -581,6 +708,125 @@ public class MidiBus {
 		return false;
 	}
 	
+	/**
+	 * Adds a new MIDI output device specified by the name device_name, like {@link #addOutput(String device_name)}, but opens the device on a background thread and returns right away. Some drivers take hundreds of milliseconds to open a device, this keeps them from stalling the calling thread. The output is attached to this MidiBus as soon as the device is open.
+	 *
+	 * @param device_name the name of the MIDI output device to be added.
+	 * @return a future which completes with true if and only if the output device was successfully added, or exceptionally with a RuntimeException if it couldn't be added and {@link #throwErrors(boolean)} is enabled.
+	 * @see #addOutput(String device_name)
+	 * @see #addOutputs(String... device_names)
+	*/
+	public java.util.concurrent.CompletableFuture<Boolean> addOutputAsync(String device_name) {
+		java.util.concurrent.CompletableFuture<MidiDevice> opening = java.util.concurrent.CompletableFuture.supplyAsync(() -> openDevice(device_name, false), deviceOpener());
+		return opening.handle((device, e) -> attachDevice(device_name, opening, false));
+	}
+
+	/**
+	 * Adds several MIDI output devices specified by their names, like calling {@link #addOutput(String device_name)} for each of them, but opens the devices concurrently on background threads, so adding them takes about as long as opening the slowest one. Once they are all open, the outputs are attached in the given order.
+	 *
+	 * @param device_names the names of the MIDI output devices to be added.
+	 * @return the names of the devices which were not added, an empty array if all were.
+	 * @throws RuntimeException if a device cannot be added and {@link #throwErrors(boolean)} is enabled.
+	 * @see #addOutput(String device_name)
+	 * @see #addOutputAsync(String device_name)
+	*/
+	public String[] addOutputs(String... device_names) {
+		return attachDevices(device_names, false);
+	}
+
+	/**
+	 * Looks up and opens an input or output device by name, without holding this MidiBus' lock.
+	 *
+	 * @param device_name the name of the device.
+	 * @param input true for an input, false for an output.
+	 * @return the device, open and acquired from the {@link DeviceRegistry}, or null if it isn't there or is already attached, for {@link #attachDevice(String, java.util.concurrent.CompletableFuture, boolean)} to sort out.
+	 * @throws java.util.concurrent.CompletionException if the device couldn't be opened. The cause will be the original exception.
+	*/
+	MidiDevice openDevice(String device_name, boolean input) {
+		for (String attached : input ? attachedInputs() : attachedOutputs()) {
+			if (attached.equals(device_name)) return null;
+		}
+		try {
+			MidiDevice device = device_locator.locate(device_name, input);
+			return device == null ? null : DeviceRegistry.acquire(device);
+		} catch(MidiUnavailableException | RuntimeException e) {
+			throw new java.util.concurrent.CompletionException(e);
+		}
+	}
+
+	/**
+	 * Attaches an input or output device once {@link #openDevice(String, boolean)} is done with it, reporting why it couldn't be opened if it failed.
+	 *
+	 * @param device_name the name of the device.
+	 * @param opening the device being opened.
+	 * @param input true for an input, false for an output.
+	 * @return true if and only if the device was successfully added.
+	*/
+	boolean attachDevice(String device_name, java.util.concurrent.CompletableFuture<MidiDevice> opening, boolean input) {
+		MidiDevice device;
+		try {
+			device = opening.join();
+		} catch(java.util.concurrent.CompletionException e) {
+			//The failure to open it is what gets reported, rather than opening it again
+			System.err.println("\nThe MidiBus Warning: The chosen "+(input ? "input" : "output")+" device \""+device_name+"\" was not added because it is unavailable");
+			if (throwErrors) throw new RuntimeException(e.getCause());
+			return false;
+		}
+
+		if (device == null) {
+			for (String attached : input ? attachedInputs() : attachedOutputs()) {
+				if (attached.equals(device_name)) return false;
+			}
+			String msg = "No available "+(input ? "input" : "output")+" MIDI devices named: \""+device_name+"\" were found";
+			System.err.println("\nThe MidiBus Warning: " + msg);
+			if (throwErrors) throw new RuntimeException(msg);
+			return false;
+		}
+
+		try {
+			return input ? addInput(device) : addOutput(device);
+		} finally {
+			//The input or output holds the device now, if it was added
+			DeviceRegistry.release(device);
+		}
+	}
+
+	/**
+	 * Opens input or output devices concurrently, then attaches them in order.
+	 *
+	 * @return the names of the devices which were not added.
+	*/
+	String[] attachDevices(String[] device_names, boolean input) {
+		java.util.concurrent.ExecutorService opener = deviceOpener();
+		java.util.List<java.util.concurrent.CompletableFuture<MidiDevice>> opened = new java.util.ArrayList<java.util.concurrent.CompletableFuture<MidiDevice>>(device_names.length);
+		for (String device_name : device_names) {
+			opened.add(java.util.concurrent.CompletableFuture.supplyAsync(() -> openDevice(device_name, input), opener));
+		}
+
+		String[] failed = NO_DEVICES;
+		for (int i = 0;i < device_names.length;i++) {
+			if (!attachDevice(device_names[i], opened.get(i), input)) {
+				failed = Arrays.copyOf(failed, failed.length + 1);
+				failed[failed.length - 1] = device_names[i];
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * Returns the threads which open devices in the background, which come and go as needed.
+	*/
+	static synchronized java.util.concurrent.ExecutorService deviceOpener() {
+		if (device_opener == null) {
+			device_opener = java.util.concurrent.Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "MidiBus Device Opener");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return device_opener;
+	}
+
 	/**
 	 * Removes the MIDI output device specified by the name device_name.
 	 * <p>
@@ -592,13 +838,12 @@ public class MidiBus {
 	 * @see #attachedOutputs()
 	*/
 	public synchronized boolean removeOutput(String device_name) {
-		java.util.Iterator<OutputDeviceContainer> it = output_devices.iterator();
-		while (it.hasNext()) {
-			OutputDeviceContainer container = it.next();
+		for (int i = 0;i < output_devices.length;i++) {
+			OutputDeviceContainer container = output_devices[i];
 			if (container.info.getName().equals(device_name)) {
-				it.remove();
+				output_devices = remove(output_devices, i);
 
-				container.receiver.close();
+				container.close();
 
 				return true;
 			}
@@ -614,8 +859,24 @@ public class MidiBus {
 	*/
 	synchronized boolean addOutput(MidiDevice.Info device_info) {
 		try {
-			MidiDevice new_device = MidiSystem.getMidiDevice(device_info);
-		
+			return addOutput(MidiSystem.getMidiDevice(device_info));
+		} catch(MidiUnavailableException e) {
+			System.err.println("\nThe MidiBus Warning: The chosen output device \""+device_info.getName()+"\" was not added because it is unavailable");
+			if (throwErrors) throw new RuntimeException(e);
+			return false;
+		}
+	}
+
+	/**
+	 * Adds a MIDI output device which was already looked up. If the MIDI output device has already been added, it will not be added again.
+	 *
+	 * @param new_device the MidiDevice of the MIDI output device to be added.
+	 * @return true if and only if the output device was successfully added.
+	*/
+	synchronized boolean addOutput(MidiDevice new_device) {
+		MidiDevice.Info device_info = new_device.getDeviceInfo();
+
+		try {
 			if (new_device.getMaxReceivers() == 0) {
 				String msg = "The chosen output device \""+device_info.getName()+"\" was not added because it is input only";
 				System.err.println("\nThe MidiBus Warning: " + msg);
@@ -627,12 +888,19 @@ public class MidiBus {
 				if (device_info.getName().equals(container.info.getName())) return false;
 			}
 
-			if (!new_device.isOpen()) new_device.open();
+			new_device = DeviceRegistry.acquire(new_device);
 			
 			OutputDeviceContainer new_container = new OutputDeviceContainer(new_device);
-			new_container.receiver = new_device.getReceiver();
+			try {
+				new_container.receiver = new_device.getReceiver();
+			} catch(MidiUnavailableException | RuntimeException e) {
+				DeviceRegistry.release(new_device);
+				throw e;
+			}
+			if (output_queue_policy != null) new_container.startQueue(output_queue_capacity, output_queue_policy);
+			new_container.suppressRedundant(suppressRedundant);
 						
-			output_devices.add(new_container);
+			output_devices = add(output_devices, new_container);
 			
 			return true;
 		} catch(MidiUnavailableException e) {
@@ -644,43 +912,42 @@ public class MidiBus {
 
 	/**
 	 * Closes, clears and disposes of all input related Transmitters and Receivers.
+	 * The devices are closed too, unless another input or output, of this or any other MidiBus, still uses them.
 	 *
 	 * @see #clearOutputs()
 	 * @see #clearAll()
 	*/
 	public synchronized void clearInputs() {
-		//We are purposefully not closing devices here, because in some cases that will be slow, and we might want later
-		//Also it's broken on MAC
+		//The devices themselves are only closed once no other input or output, of any MidiBus, uses them
 		try{
 			for (InputDeviceContainer container : input_devices) {
-				container.transmitter.close();
-				container.receiver.close();
+				container.close();
 			}
 		} catch(Exception e) {
 			System.err.println("The MidiBus Warning: Unexpected error during clearInputs()");
 		}
 		
-		input_devices.clear();
+		input_devices = new InputDeviceContainer[0];
 	}
 	
 	/**
 	 * Closes, clears and disposes of all output related Receivers.
+	 * The devices are closed too, unless another input or output, of this or any other MidiBus, still uses them.
 	 *
 	 * @see #clearInputs()
 	 * @see #clearAll()
 	*/
 	public synchronized void clearOutputs() {
-		//We are purposefully not closing devices here, because in some cases that will be slow, and we might want later
-		//Also it's broken on MAC
+		//The devices themselves are only closed once no other input or output, of any MidiBus, uses them
 		try{
 			for (OutputDeviceContainer container : output_devices) {
-				container.receiver.close();
+				container.close();
 			}	
 		} catch(Exception e) {
 			System.err.println("The MidiBus Warning: Unexpected error during clearOutputs()");
 		}
 		
-		output_devices.clear();
+		output_devices = new OutputDeviceContainer[0];
 	}
 	
 	/**
@@ -694,35 +961,6 @@ public class MidiBus {
 		clearOutputs();
 	}
 	
-	/**
-	 * Closes all MidiDevices, should only be called when closing the application, will interrupt all MIDI I/O. Call publicly from stop(), close() or dispose()
-	 *
-	 * @see #clearOutputs()
-	 * @see #clearInputs()
-	 * @see #clearAll()
-	 * @see #stop()
-	 * @see #close()
-	 * @see #dispose()
-	*/
-	void closeAllMidiDevices() {
-		if (MidiBus.available_devices == null) findMidiDevices();
-
-		if (MidiBus.available_devices == null) return;
-
-		MidiDevice device;
-		
-		for (int i = 0;i < MidiBus.available_devices.length;i++) {
-			try {
-				device = MidiSystem.getMidiDevice(MidiBus.available_devices[i]);
-				if (device == null) continue;
-				if (device.isOpen()) device.close();
-			} catch(MidiUnavailableException e) {
-				//Device wasn't available, which is fine since we wanted to close it anyways
-			}
-		}		
-		
-	}
-	
 	/* -- MIDI Out -- */
 	
 	/**
@@ -765,16 +1003,9 @@ public class MidiBus {
 					if (throwErrors) throw new RuntimeException(e);
 				}
 			} else {
-				ShortMessage message = new ShortMessage();
-				try {
-					if (data.length > 2) message.setMessage((int)((byte)data[0] & 0xFF), (int)((byte)data[1] & 0xFF), (int)((byte)data[2] & 0xFF));
-					else if (data.length > 1) message.setMessage((int)((byte)data[0] & 0xFF), (int)((byte)data[1] & 0xFF), 0);
-					else message.setMessage((int)((byte)data[0] & 0xFF));
-					sendMessage(message);
-				} catch(InvalidMidiDataException e) {
-					System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
-					if (throwErrors) throw new RuntimeException(e);
-				}
+				if (data.length > 2) sendShortMessage((int)((byte)data[0] & 0xFF), (int)((byte)data[1] & 0xFF), (int)((byte)data[2] & 0xFF));
+				else if (data.length > 1) sendShortMessage((int)((byte)data[0] & 0xFF), (int)((byte)data[1] & 0xFF), 0);
+				else sendMessage((int)((byte)data[0] & 0xFF));
 			}
 	}
 	
@@ -796,14 +1027,12 @@ public class MidiBus {
 	 * @see #sendControllerChange(ControlChange change)
 	*/
 	public void sendMessage(int status) {
-		ShortMessage message = new ShortMessage();
-		try {
-			message.setMessage(status);
-			sendMessage(message);
-		} catch(InvalidMidiDataException e) {
+		if (OutboundMessage.validate(status, 0, 0) == null && InboundMessage.length(status) != 1) {
+			InvalidMidiDataException e = new InvalidMidiDataException("Status byte; "+status+" requires "+(InboundMessage.length(status) - 1)+" data bytes");
 			System.out.println(e);
-			System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
-			if (throwErrors) throw new RuntimeException(e);
+			invalidMidiData(e);
+		} else {
+			sendShortMessage(status, 0, 0);
 		}
 	}
 
@@ -849,14 +1078,7 @@ public class MidiBus {
 	 * @see #sendControllerChange(ControlChange change)
 	*/
 	public void sendMessage(int status, int data1, int data2) {
-		ShortMessage message = new ShortMessage();
-		try {
-			message.setMessage(status, data1, data2);
-			sendMessage(message);
-		} catch(InvalidMidiDataException e) {
-			System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
-			if (throwErrors) throw new RuntimeException(e);
-		}
+		sendShortMessage(status, data1, data2);
 	}
 	
 	/**
@@ -880,18 +1102,15 @@ public class MidiBus {
 	 * @see #sendControllerChange(ControlChange change)
 	*/
 	public void sendMessage(int command, int channel, int data1, int data2) {
-		ShortMessage message = new ShortMessage();
-		try {
-			message.setMessage(command, channel, data1, data2);
-			sendMessage(message);
-		} catch(InvalidMidiDataException e) {
-			System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
-			if (throwErrors) throw new RuntimeException(e);
-		}
+		if (command >= 0xF0 || command < 0x80) invalidMidiData(new InvalidMidiDataException("command out of range: 0x"+Integer.toHexString(command)));
+		else if (channel > 0x0F || channel < 0) invalidMidiData(new InvalidMidiDataException("channel out of range: "+channel));
+		else sendShortMessage((command & 0xF0) | channel, data1, data2);
 	}
 	
 	/**
 	 * Sends a MidiMessage object.
+	 * <p>
+	 * This method can be called from several threads at once. It doesn't lock the MidiBus, only each output for the duration of the message being passed to it, so concurrent senders only wait on each other while they hand a message to the same output, and adding or removing devices never waits on a slow output.
 	 *
 	 * @param message the MidiMessage.
 	 * @see #sendMessage(byte[] data)
@@ -906,18 +1125,24 @@ public class MidiBus {
 	 * @see #sendControllerChange(int channel, int number, int value)
 	 * @see #sendControllerChange(ControlChange change)
 	*/
-	public synchronized void sendMessage(MidiMessage message) {
+	public void sendMessage(MidiMessage message) {
 		if (bypassCoreMidi4J && message instanceof SysexMessage) {
 			printBypassCoreMidi4JWarning("sendMessage(SysexMessage)");
 		}
-		// Receiver.send()'s timestamp is in microseconds relative to when the
-		// device was opened (starting at 0), NOT wall-clock. Per the javadoc,
-		// -1 means "send immediately / no timestamp". When sendTimestamps is
-		// true we pass the device's current microsecond position so the
-		// message carries a valid timestamp. When false we pass -1.
+		OutputDeviceContainer[] output_devices = this.output_devices;
+		java.util.concurrent.ExecutorService fan_out = this.fan_out;
+		if (fan_out != null && output_devices.length > 1) {
+			Throwable[] errors = fanOut(fan_out, output_devices, container -> container.send(message));
+			if (errors != null) {
+				for (Throwable e : errors) {
+					if (e instanceof RuntimeException) throw (RuntimeException)e;
+					if (e instanceof Error) throw (Error)e;
+				}
+			}
+			return;
+		}
 		for (OutputDeviceContainer container : output_devices) {
-			long ts = sendTimestamps ? container.device.getMicrosecondPosition() : -1;
-			container.receiver.send(message, ts);
+			container.send(message);
 		}
 	}
 	
@@ -942,14 +1167,7 @@ public class MidiBus {
 	 *
 	*/
 	public void sendNoteOn(int channel, int pitch, int velocity) {
-		ShortMessage message = new ShortMessage();
-		try {
-			message.setMessage(ShortMessage.NOTE_ON, constrain(channel,0,15), constrain(pitch,0,127), constrain(velocity,0,127));
-			sendMessage(message);
-		} catch(InvalidMidiDataException e) {
-			System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
-			if (throwErrors) throw new RuntimeException(e);
-		}
+		sendShortMessage(ShortMessage.NOTE_ON | constrain(channel,0,15), constrain(pitch,0,127), constrain(velocity,0,127));
 	}
 	
 	/**
@@ -993,14 +1211,7 @@ public class MidiBus {
 	 * @see #sendControllerChange(ControlChange change)
 	*/
 	public void sendNoteOff(int channel, int pitch, int velocity) {
-		ShortMessage message = new ShortMessage();
-		try {
-			message.setMessage(ShortMessage.NOTE_OFF, constrain(channel,0,15), constrain(pitch,0,127), constrain(velocity,0,127));
-			sendMessage(message);
-		} catch(InvalidMidiDataException e) {
-			System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
-			if (throwErrors) throw new RuntimeException(e);
-		}
+		sendShortMessage(ShortMessage.NOTE_OFF | constrain(channel,0,15), constrain(pitch,0,127), constrain(velocity,0,127));
 	}
 	
 	/**
@@ -1044,14 +1255,7 @@ public class MidiBus {
 	 * @see #sendControllerChange(ControlChange change)
 	*/
 	public void sendControllerChange(int channel, int number, int value) {
-		ShortMessage message = new ShortMessage();
-		try {
-			message.setMessage(ShortMessage.CONTROL_CHANGE, constrain(channel,0,15), constrain(number,0,127), constrain(value,0,127));
-			sendMessage(message);
-		} catch(InvalidMidiDataException e) {
-			System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
-			if (throwErrors) throw new RuntimeException(e);
-		}
+		sendShortMessage(ShortMessage.CONTROL_CHANGE | constrain(channel,0,15), constrain(number,0,127), constrain(value,0,127));
 	}
 
 	/**
@@ -1074,69 +1278,425 @@ public class MidiBus {
 	public void sendControllerChange(ControlChange change) {
 		sendControllerChange(change.channel(), change.number(), change.value());
 	}
-	
-	/* -- MIDI In -- */
-	
+
 	/**
-	 * Notifies all types of listeners of a new MIDI message from one of the MIDI input devices.
+	 * Sends every message in a {@link MidiBatch} to each attached output, in the order they were added. Each output is locked once for the whole batch, so the messages of concurrent sends aren't interleaved and a bulk update, e.g. refreshing a grid of LEDs, costs one dispatch instead of one per message. The batch isn't modified and can be sent again or cleared and refilled.
+	 * <p>
+	 * The short messages are checked before anything is sent. If one is invalid, none of the batch is sent. An output which fails while the batch is being sent doesn't stop the others from receiving it; its name is returned.
 	 *
-	 * @param message the new inbound MidiMessage.
+	 * @param batch the messages to send.
+	 * @return the names of the outputs which failed to receive the whole batch, empty if there were none.
+	 * @throws RuntimeException if the data is invalid or an output failed and {@link #throwErrors(boolean)} is enabled. The cause will be the original exception.
+	 * @see MidiBatch
+	 * @see #sendMessage(MidiMessage message)
 	*/
-	void notifyListeners(MidiMessage message, long timeStamp) {
-		byte[] data = message.getMessage();
+	public String[] sendBatch(MidiBatch batch) {
+		String[] failed = NO_DEVICES;
 		
-		for (MidiListener listener : listeners) {
-		
-			/* -- RawMidiListener -- */
-		
-			if (listener instanceof RawMidiListener) ((RawMidiListener)listener).rawMidiMessage(data);
+		for (int i = 0;i < batch.size;i++) {
+			int event = batch.events[i];
+			if (event == -1) {
+				if (bypassCoreMidi4J && batch.messages[i] instanceof SysexMessage) printBypassCoreMidi4JWarning("sendBatch(MidiBatch) with SysexMessage");
+				continue;
+			}
+			String error = OutboundMessage.validate(event & 0xFF, (event >> 8) & 0xFF, event >>> 16);
+			if (error != null) {
+				invalidMidiData(new InvalidMidiDataException(error+" in message "+i+" of the batch"));
+				return failed;
+			}
+		}
 		
-			/* -- SimpleMidiListener -- */
-			
-			if (listener instanceof SimpleMidiListener) {
-				if ((int)((byte)data[0] & 0xF0) == ShortMessage.NOTE_ON) {
-					((SimpleMidiListener)listener).noteOn((int)(data[0] & 0x0F),(int)(data[1] & 0xFF),(int)(data[2] & 0xFF));
-				} else if ((int)((byte)data[0] & 0xF0) == ShortMessage.NOTE_OFF) {
-					((SimpleMidiListener)listener).noteOff((int)(data[0] & 0x0F),(int)(data[1] & 0xFF),(int)(data[2] & 0xFF));
-				} else if ((int)((byte)data[0] & 0xF0) == ShortMessage.CONTROL_CHANGE) {
-					((SimpleMidiListener)listener).controllerChange((int)(data[0] & 0x0F),(int)(data[1] & 0xFF),(int)(data[2] & 0xFF));
+		RuntimeException cause = null;
+		OutputDeviceContainer[] output_devices = this.output_devices;
+		java.util.concurrent.ExecutorService fan_out = this.fan_out;
+		if (fan_out != null && output_devices.length > 1) {
+			boolean recycle = recycleOutboundMessages;
+			Throwable[] errors = fanOut(fan_out, output_devices, container -> container.send(batch, recycle));
+			for (int i = 0;errors != null && i < errors.length;i++) {
+				if (errors[i] == null) continue;
+				if (errors[i] instanceof Error) throw (Error)errors[i];
+				System.err.println("\nThe MidiBus Warning: Batch not sent to "+output_devices[i].info.getName());
+				failed = Arrays.copyOf(failed, failed.length + 1);
+				failed[failed.length - 1] = output_devices[i].info.getName();
+				cause = (RuntimeException)errors[i];
+			}
+		} else {
+			for (OutputDeviceContainer container : output_devices) {
+				try {
+					container.send(batch, recycleOutboundMessages);
+				} catch(RuntimeException e) {
+					System.err.println("\nThe MidiBus Warning: Batch not sent to "+container.info.getName());
+					failed = Arrays.copyOf(failed, failed.length + 1);
+					failed[failed.length - 1] = container.info.getName();
+					cause = e;
 				}
 			}
+		}
+		if (cause != null && throwErrors) throw new RuntimeException(cause);
 		
-			/* -- StandardMidiListener -- */
-		
-			if (listener instanceof StandardMidiListener) ((StandardMidiListener)listener).midiMessage(message, timeStamp);
-			
-			/* -- ObjectMidiListener -- */
+		return failed;
+	}
+	
+	/**
+	 * Streams a SysEx message in packets of 256 bytes, at the bandwidth of a DIN MIDI port. See {@link #streamSysex(byte[], int, float, int)}.
+	 *
+	 * @param data the whole SysEx message, starting with 0xF0 and ending with 0xF7.
+	 * @return the transfer, a future which completes once the whole message was sent.
+	 * @see #streamSysex(byte[] data, int chunk_size, float bytes_per_ms, int gap_ms)
+	*/
+	public SysexTransfer streamSysex(byte[] data) {
+		return streamSysex(data, 256, DIN_BYTES_PER_SECOND / 1000f, 0);
+	}
 
-			if (listener instanceof ObjectMidiListener) {
-				if ((int)((byte)data[0] & 0xF0) == ShortMessage.NOTE_ON) {
-					((ObjectMidiListener)listener).noteOn(new Note((int)(data[0] & 0x0F),(int)(data[1] & 0xFF),(int)(data[2] & 0xFF)));
-				} else if ((int)((byte)data[0] & 0xF0) == ShortMessage.NOTE_OFF) {
-					((ObjectMidiListener)listener).noteOff(new Note((int)(data[0] & 0x0F),(int)(data[1] & 0xFF),(int)(data[2] & 0xFF)));
-				} else if ((int)((byte)data[0] & 0xF0) == ShortMessage.CONTROL_CHANGE) {
-					((ObjectMidiListener)listener).controllerChange(new ControlChange((int)(data[0] & 0x0F),(int)(data[1] & 0xFF),(int)(data[2] & 0xFF)));
-				}
+	/**
+	 * Streams a large SysEx message, e.g. a patch or sample dump, to all the attached outputs without blocking the caller. The message is split into packets of chunk_size bytes, sent as a SysexMessage starting with 0xF0 followed by continuation SysexMessages starting with 0xF7, and the packets are paced so the devices' buffers aren't overrun.
+	 * <p>
+	 * The packets are sent from a thread owned by this MidiBus. Transfers started while another one is running wait for it to finish, so their packets never interleave.
+	 * <p>
+	 * A device takes any message other than a realtime message as the end of the SysEx message it is receiving, so while a transfer is running, messages sent to the outputs with the other methods are held back and sent in order once the last packet is out. Realtime messages (0xF8 to 0xFF), like the MIDI clock, are allowed inside a SysEx message and still go out right away. A transfer which is cancelled or fails, or an output removed during a transfer, ends the partial message with a lone 0xF7 packet and sends what was held back.
+	 *
+	 * @param data the whole SysEx message, starting with 0xF0 and ending with 0xF7.
+	 * @param chunk_size the number of bytes of the message per packet.
+	 * @param bytes_per_ms the rate to send the message at, in bytes per millisecond, or 0 for no limit.
+	 * @param gap_ms the minimum time between two packets, in milliseconds.
+	 * @return the transfer, a future which completes once the whole message was sent and reports the progress meanwhile.
+	 * @throws RuntimeException if the data isn't a SysEx message and {@link #throwErrors(boolean)} is enabled. The cause will be the original InvalidMidiDataException.
+	 * @see #streamSysex(byte[] data)
+	 * @see SysexTransfer
+	*/
+	public SysexTransfer streamSysex(byte[] data, int chunk_size, float bytes_per_ms, int gap_ms) {
+		SysexTransfer transfer = new SysexTransfer(this, data, chunk_size, bytes_per_ms, gap_ms);
+
+		if (data.length < 2 || (data[0] & 0xFF) != SysexMessage.SYSTEM_EXCLUSIVE || (data[data.length - 1] & 0xFF) != ShortMessage.END_OF_EXCLUSIVE) {
+			InvalidMidiDataException e = new InvalidMidiDataException("SysEx message must start with 0xF0 and end with 0xF7");
+			transfer.completeExceptionally(e);
+			invalidMidiData(e);
+			return transfer;
+		}
+
+		synchronized (this) {
+			if (sysex_streamer == null) {
+				sysex_streamer = java.util.concurrent.Executors.newSingleThreadExecutor(runnable -> {
+					Thread thread = new Thread(runnable, "MidiBus SysEx ["+bus_name+"]");
+					thread.setDaemon(true);
+					return thread;
+				});
 			}
+			sysex_streamer.execute(transfer);
+		}
+
+		return transfer;
+	}
 
+	/**
+	 * Stops the SysEx thread, if any. Transfers which haven't finished are cancelled.
+	*/
+	void stopSysexStreamer() {
+		java.util.concurrent.ExecutorService stopped;
+
+		synchronized (this) {
+			stopped = sysex_streamer;
+			sysex_streamer = null;
+		}
+
+		if (stopped == null) return;
+		for (Runnable pending : stopped.shutdownNow()) ((SysexTransfer)pending).cancel(false);
+		try {
+			stopped.awaitTermination(1, java.util.concurrent.TimeUnit.SECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
-	
+
 	/**
-	 * Notifies any of the supported methods implemented inside the parent of a new MIDI message from one of the MIDI input devices.
+	 * Schedules a MidiMessage to be sent to all the attached outputs at a point in the future. The time is in the same time base as System.nanoTime(). A scheduler thread owned by this MidiBus sends the message when it is due, parking until shortly before and spinning the rest of the way for accuracy. Messages due at the same time are sent in the order they were scheduled. A time in the past sends the message as soon as possible.
+	 * <p>
+	 * If {@link #deviceScheduling(boolean)} is enabled, outputs which support timestamps get the message right away, with a timestamp telling them when to play it, and the scheduler thread only sends it to the other outputs.
+	 * <p>
+	 * The message is sent as is and isn't copied, so it mustn't be modified until it has been sent.
 	 *
-	 * @param message the new inbound MidiMessage.
+	 * @param message the message to send.
+	 * @param time when to send the message, in System.nanoTime() time.
+	 * @see #sendAfter(MidiMessage message, long delay)
+	 * @see #cancelScheduled()
+	 * @see #schedulerStats()
 	*/
-	void notifyParent(MidiMessage message, long timeStamp) {
-		if (parent == null) return;
+	public void sendAt(MidiMessage message, long time) {
+		if (bypassCoreMidi4J && message instanceof SysexMessage) {
+			printBypassCoreMidi4JWarning("sendAt(SysexMessage)");
+		}
+		
+		//Outputs added before the message is due get it from the scheduler thread, so only those handed it now are skipped then
+		Receiver[] handed = null;
+		if (deviceScheduling) {
+			long delay = (time - System.nanoTime()) / 1000;
+			for (OutputDeviceContainer container : output_devices) {
+				if (!container.timestamps) continue;
+				container.sendLater(message, delay);
+				handed = handed == null ? new Receiver[] { container } : add(handed, container);
+			}
+		}
+		
+		OutboundScheduler scheduler;
+		synchronized (this) {
+			if (this.scheduler == null) this.scheduler = new OutboundScheduler(this);
+			scheduler = this.scheduler;
+		}
+		scheduler.schedule(message, time, handed);
+	}
+
+	/**
+	 * Schedules a MidiMessage to be sent to all the attached outputs after a delay. See {@link #sendAt(MidiMessage, long)}.
+	 *
+	 * @param message the message to send.
+	 * @param delay how long to wait before sending the message, in nanoseconds.
+	 * @see #sendAt(MidiMessage message, long time)
+	 * @see #cancelScheduled()
+	*/
+	public void sendAfter(MidiMessage message, long delay) {
+		sendAt(message, System.nanoTime() + delay);
+	}
+
+	/**
+	 * Discards every message scheduled with sendAt() or sendAfter() which hasn't been sent yet. Messages already handed to outputs which schedule them themselves (see {@link #deviceScheduling(boolean)}) can't be recalled.
+	 *
+	 * @return the number of discarded messages.
+	 * @see #sendAt(MidiMessage message, long time)
+	*/
+	public int cancelScheduled() {
+		OutboundScheduler scheduler = this.scheduler;
+		return scheduler == null ? 0 : scheduler.clear();
+	}
 
-		byte[] data = message.getMessage();
+	/**
+	 * Returns how accurately the messages scheduled with sendAt() and sendAfter() were sent, since the scheduler started or {@link #resetSchedulerStats()} was last called.
+	 *
+	 * @return a snapshot of the scheduler's statistics.
+	 * @see SchedulerStats
+	*/
+	public SchedulerStats schedulerStats() {
+		OutboundScheduler scheduler = this.scheduler;
+		return scheduler == null ? new SchedulerStats(0, 0, 0, 0, 0) : scheduler.stats();
+	}
 
-		if ((int)((byte)data[0] & 0xF0) == ShortMessage.NOTE_ON) {
-			if (method_note_on != null) {
+	/**
+	 * Resets the statistics returned by {@link #schedulerStats()}.
+	*/
+	public void resetSchedulerStats() {
+		OutboundScheduler scheduler = this.scheduler;
+		if (scheduler != null) scheduler.resetStats();
+	}
+
+	/**
+	 * Sends a message the scheduler found due, skipping the outputs which already have it.
+	 *
+	 * @param message the message.
+	 * @param handed the outputs which were given the message with a timestamp when it was scheduled, or null.
+	*/
+	void sendScheduled(MidiMessage message, Receiver[] handed) {
+		for (OutputDeviceContainer container : output_devices) {
+			if (handed != null && contains(handed, container)) continue;
+			container.send(message);
+		}
+	}
+
+	static boolean contains(Receiver[] receivers, Receiver receiver) {
+		for (Receiver candidate : receivers) if (candidate == receiver) return true;
+		return false;
+	}
+
+	/**
+	 * Passes something to every output at once: the fan-out threads take all the outputs but the first one, which the calling thread takes itself, then the calling thread waits for the others to be done.
+	 *
+	 * @param fan_out the fan-out threads.
+	 * @param outputs the outputs.
+	 * @param action what to do with each output.
+	 * @return the exception thrown for each output, null where there was none, or null if there were none at all.
+	*/
+	Throwable[] fanOut(java.util.concurrent.ExecutorService fan_out, OutputDeviceContainer[] outputs, java.util.function.Consumer<OutputDeviceContainer> action) {
+		Throwable[] errors = new Throwable[outputs.length];
+		java.util.concurrent.CountDownLatch done = new java.util.concurrent.CountDownLatch(outputs.length - 1);
+
+		for (int i = 1;i < outputs.length;i++) {
+			int index = i;
+			Runnable task = () -> {
 				try {
-					method_note_on.invoke(parent, new Object[] { (int)(data[0] & 0x0F), (int)(data[1] & 0xFF), (int)(data[2] & 0xFF) });
-				} catch(Exception e) {
+					action.accept(outputs[index]);
+				} catch(Throwable e) {
+					errors[index] = e;
+				} finally {
+					done.countDown();
+				}
+			};
+			try {
+				fan_out.execute(task);
+			} catch(java.util.concurrent.RejectedExecutionException e) {
+				//Parallel output was just disabled
+				task.run();
+			}
+		}
+
+		try {
+			action.accept(outputs[0]);
+		} catch(Throwable e) {
+			errors[0] = e;
+		}
+
+		boolean interrupted = false;
+		while (true) {
+			try {
+				done.await();
+				break;
+			} catch(InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+
+		for (Throwable e : errors) if (e != null) return errors;
+		return null;
+	}
+
+	/**
+	 * Sends a NoteOff for every note still sounding on each attached output, i.e. every note which was sent a NoteOn but no NoteOff yet. MidiBus keeps track of the notes sent to each output, whichever method sent them, so only the notes which are actually sounding are released. This also happens automatically when an output is removed or this MidiBus is closed, so notes don't hang on the connected synths.
+	 * <p>
+	 * The notes are tracked as they are written to the outputs. With {@link #asyncOutput(int, OverflowPolicy) asynchronous output}, NoteOns still waiting in an output's queue aren't sounding yet and aren't released.
+	 *
+	 * @see #sendNoteOff(int channel, int pitch, int velocity)
+	 * @see #close()
+	*/
+	public void allNotesOff() {
+		for (OutputDeviceContainer container : output_devices) container.allNotesOff();
+	}
+
+	/**
+	 * Sends a short message, checked without going through ShortMessage.setMessage() and its exceptions. The message object is recycled per thread if {@link #recycleOutboundMessages(boolean)} is enabled.
+	 *
+	 * @param status the status byte.
+	 * @param data1 the first data byte.
+	 * @param data2 the second data byte.
+	*/
+	void sendShortMessage(int status, int data1, int data2) {
+		String error = OutboundMessage.validate(status, data1, data2);
+		if (error != null) {
+			invalidMidiData(new InvalidMidiDataException(error));
+			return;
+		}
+
+		OutboundMessage message = recycleOutboundMessages ? OutboundMessage.acquire() : new OutboundMessage();
+		try {
+			sendMessage(message.set(status, data1, data2));
+		} finally {
+			message.release();
+		}
+	}
+
+	/**
+	 * Reports a message which wasn't sent because its data is invalid.
+	 *
+	 * @param e the reason the message is invalid.
+	*/
+	void invalidMidiData(InvalidMidiDataException e) {
+		System.err.println("\nThe MidiBus Warning: Message not sent, invalid MIDI data");
+		if (throwErrors) throw new RuntimeException(e);
+	}
+	
+	/* -- MIDI In -- */
+
+	/**
+	 * Delivers a decoded MIDI message from one of the MIDI input devices to the listeners and then to the parent.
+	 *
+	 * @param inbound the new inbound message.
+	*/
+	void deliver(InboundMessage inbound) {
+		notifyListeners(inbound);
+		notifyParent(inbound);
+	}
+	
+	/**
+	 * Notifies all types of listeners of a new MIDI message from one of the MIDI input devices.
+	 *
+	 * @param message the new inbound MidiMessage.
+	 * @see #notifyListeners(InboundMessage inbound)
+	*/
+	void notifyListeners(MidiMessage message, long timeStamp) {
+		notifyListeners(new InboundMessage().set(message, timeStamp));
+	}
+
+	/**
+	 * Notifies all types of listeners of a new decoded MIDI message from one of the MIDI input devices. Only the listeners which handle the message's type, as precomputed by {@link #rebuildListenerTable()}, are visited. The byte[] and MidiMessage forms of the message are only materialised if a RawMidiListener or StandardMidiListener needs them.
+	 *
+	 * @param inbound the new inbound message.
+	*/
+	void notifyListeners(InboundMessage inbound) {
+		ListenerEntry[] entries = listener_table[(inbound.status >> 4) & 0x07];
+		if (entries.length == 0) return;
+
+		int command = inbound.command();
+		int channel = inbound.channel();
+		int data1 = inbound.data1;
+		int data2 = inbound.data2;
+
+		for (ListenerEntry entry : entries) {
+
+			if (((entry.channel_mask >>> channel) & 1) == 0 || data1 < entry.low || data1 > entry.high) continue;
+
+			/* -- RawMidiListener -- */
+
+			if (entry.raw != null) entry.raw.rawMidiMessage(inbound.data());
+
+			/* -- SimpleMidiListener -- */
+
+			if (entry.simple != null) {
+				if (command == ShortMessage.NOTE_ON) entry.simple.noteOn(channel, data1, data2);
+				else if (command == ShortMessage.NOTE_OFF) entry.simple.noteOff(channel, data1, data2);
+				else entry.simple.controllerChange(channel, data1, data2);
+			}
+
+			/* -- StandardMidiListener -- */
+
+			if (entry.standard != null) entry.standard.midiMessage(inbound.message(), inbound.timestamp);
+
+			/* -- ObjectMidiListener -- */
+
+			if (entry.object != null) {
+				if (command == ShortMessage.NOTE_ON) entry.object.noteOn(recycleEventObjects ? inbound.note(-1, null) : new Note(channel, data1, data2));
+				else if (command == ShortMessage.NOTE_OFF) entry.object.noteOff(recycleEventObjects ? inbound.note(-1, null) : new Note(channel, data1, data2));
+				else entry.object.controllerChange(recycleEventObjects ? inbound.controlChange(-1, null) : new ControlChange(channel, data1, data2));
+			}
+
+		}
+	}
+	
+	/**
+	 * Notifies any of the supported methods implemented inside the parent of a new MIDI message from one of the MIDI input devices.
+	 *
+	 * @param message the new inbound MidiMessage.
+	 * @see #notifyParent(InboundMessage inbound)
+	*/
+	void notifyParent(MidiMessage message, long timeStamp) {
+		notifyParent(new InboundMessage().set(message, timeStamp));
+	}
+
+	/**
+	 * Notifies any of the supported methods implemented inside the parent of a new decoded MIDI message from one of the MIDI input devices. The byte[] and MidiMessage forms of the message are only materialised if the parent implements rawMidi() or midiMessage().
+	 *
+	 * @param inbound the new inbound message.
+	*/
+	void notifyParent(InboundMessage inbound) {
+		if (parent == null) return;
+
+		int command = inbound.command();
+		int channel = inbound.channel();
+		int data1 = inbound.data1;
+		int data2 = inbound.data2;
+		long timeStamp = inbound.timestamp;
+
+		if (command == ShortMessage.NOTE_ON) {
+			if (method_note_on != null) {
+				try {
+					method_note_on.invokeExact(channel, data1, data2);
+				} catch(Throwable e) {
 					System.err.println("\nThe MidiBus Warning: Disabling noteOn(int channel, int pitch, int velocity) because an unknown exception was thrown and caught");
 					e.printStackTrace();
 					method_note_on = null;
@@ -1145,8 +1705,8 @@ public class MidiBus {
 			}
 			if (method_note_on_with_bus_name != null) {
 				try {
-					method_note_on_with_bus_name.invoke(parent, new Object[] { (int)(data[0] & 0x0F), (int)(data[1] & 0xFF), (int)(data[2] & 0xFF), timeStamp, bus_name });
-				} catch(Exception e) {
+					method_note_on_with_bus_name.invokeExact(channel, data1, data2, timeStamp, bus_name);
+				} catch(Throwable e) {
 					System.err.println("\nThe MidiBus Warning: Disabling noteOn(int channel, int pitch, int velocity, String bus_name) with bus_name because an unknown exception was thrown and caught");
 					e.printStackTrace();
 					method_note_on_with_bus_name = null;
@@ -1154,18 +1714,19 @@ public class MidiBus {
 			}
 			if (method_note_on_wcla != null) {
 				try {
-					method_note_on_wcla.invoke(parent, new Note((int)(data[0] & 0x0F), (int)(data[1] & 0xFF), (int)(data[2] & 0xFF), timeStamp, bus_name));
-				} catch(Exception e) {
+					Note note = recycleEventObjects ? inbound.note(timeStamp, bus_name) : new Note(channel, data1, data2, timeStamp, bus_name);
+					method_note_on_wcla.invokeExact(note);
+				} catch(Throwable e) {
 					System.err.println("\nThe MidiBus Warning: Disabling noteOn(Note note) because an unknown exception was thrown and caught");
 					e.printStackTrace();
 					method_note_on_wcla = null;
 				}
 			}
-		} else if ((int)((byte)data[0] & 0xF0) == ShortMessage.NOTE_OFF) {
+		} else if (command == ShortMessage.NOTE_OFF) {
 			if (method_note_off != null) {
 				try {
-					method_note_off.invoke(parent, new Object[] { (int)(data[0] & 0x0F), (int)(data[1] & 0xFF), (int)(data[2] & 0xFF) });
-				} catch(Exception e) {
+					method_note_off.invokeExact(channel, data1, data2);
+				} catch(Throwable e) {
 					System.err.println("\nThe MidiBus Warning: Disabling noteOff(int channel, int pitch, int velocity) because an unknown exception was thrown and caught");
 					e.printStackTrace();
 					method_note_off = null;
@@ -1173,8 +1734,8 @@ public class MidiBus {
 			}
 			if (method_note_off_with_bus_name != null) {
 				try {
-					method_note_off_with_bus_name.invoke(parent, new Object[] { (int)(data[0] & 0x0F), (int)(data[1] & 0xFF), (int)(data[2] & 0xFF), timeStamp, bus_name });
-				} catch(Exception e) {
+					method_note_off_with_bus_name.invokeExact(channel, data1, data2, timeStamp, bus_name);
+				} catch(Throwable e) {
 					System.err.println("\nThe MidiBus Warning: Disabling noteOff(int channel, int pitch, int velocity, String bus_name) with bus_name because an unknown exception was thrown and caught");
 					e.printStackTrace();
 					method_note_off_with_bus_name = null;
@@ -1182,18 +1743,19 @@ public class MidiBus {
 			}
 			if (method_note_off_wcla != null) {
 				try {
-					method_note_off_wcla.invoke(parent, new Note((int)(data[0] & 0x0F), (int)(data[1] & 0xFF), (int)(data[2] & 0xFF), timeStamp, bus_name));
-				} catch(Exception e) {
+					Note note = recycleEventObjects ? inbound.note(timeStamp, bus_name) : new Note(channel, data1, data2, timeStamp, bus_name);
+					method_note_off_wcla.invokeExact(note);
+				} catch(Throwable e) {
 					System.err.println("\nThe MidiBus Warning: Disabling noteOff(Note note) because an unknown exception was thrown and caught");
 					e.printStackTrace();
 					method_note_off_wcla = null;
 				}
 			}
-		} else if ((int)((byte)data[0] & 0xF0) == ShortMessage.CONTROL_CHANGE) {
+		} else if (command == ShortMessage.CONTROL_CHANGE) {
 			if (method_controller_change != null) {
 				try {
-					method_controller_change.invoke(parent, new Object[] { (int)(data[0] & 0x0F), (int)(data[1] & 0xFF), (int)(data[2] & 0xFF) });
-				} catch(Exception e) {
+					method_controller_change.invokeExact(channel, data1, data2);
+				} catch(Throwable e) {
 					System.err.println("\nThe MidiBus Warning: Disabling controllerChange(int channel, int number, int value) because an unknown exception was thrown and caught");
 					e.printStackTrace();
 					method_controller_change = null;
@@ -1201,8 +1763,8 @@ public class MidiBus {
 			}
 			if (method_controller_change_with_bus_name != null) {
 				try {
-					method_controller_change_with_bus_name.invoke(parent, new Object[] { (int)(data[0] & 0x0F), (int)(data[1] & 0xFF), (int)(data[2] & 0xFF), timeStamp, bus_name });
-				} catch(Exception e) {
+					method_controller_change_with_bus_name.invokeExact(channel, data1, data2, timeStamp, bus_name);
+				} catch(Throwable e) {
 					System.err.println("\nThe MidiBus Warning: Disabling controllerChange(int channel, int number, int value, String bus_name) with bus_name because an unknown exception was thrown and caught");
 					e.printStackTrace();
 					method_controller_change_with_bus_name = null;
@@ -1210,8 +1772,9 @@ public class MidiBus {
 			}
 			if (method_controller_change_wcla != null) {
 				try {
-					method_controller_change_wcla.invoke(parent, new ControlChange((int)(data[0] & 0x0F), (int)(data[1] & 0xFF), (int)(data[2] & 0xFF), timeStamp, bus_name));
-				} catch(Exception e) {
+					ControlChange change = recycleEventObjects ? inbound.controlChange(timeStamp, bus_name) : new ControlChange(channel, data1, data2, timeStamp, bus_name);
+					method_controller_change_wcla.invokeExact(change);
+				} catch(Throwable e) {
 					System.err.println("\nThe MidiBus Warning: Disabling controllerChange(ControlChange change) because an unknown exception was thrown and caught");
 					e.printStackTrace();
 					method_controller_change_wcla = null;
@@ -1221,8 +1784,8 @@ public class MidiBus {
 		
 		if (method_raw_midi != null) {
 			try {
-				method_raw_midi.invoke(parent, new Object[] { data });
-			} catch(Exception e) {
+				method_raw_midi.invokeExact(inbound.data());
+			} catch(Throwable e) {
 				System.err.println("\nThe MidiBus Warning: Disabling rawMidi(byte[] data) because an unknown exception was thrown and caught");
 				e.printStackTrace();
 				method_raw_midi = null;
@@ -1230,8 +1793,8 @@ public class MidiBus {
 		}
 		if (method_raw_midi_with_bus_name != null) {
 			try {
-				method_raw_midi_with_bus_name.invoke(parent, new Object[] { data, timeStamp, bus_name });
-			} catch(Exception e) {
+				method_raw_midi_with_bus_name.invokeExact(inbound.data(), timeStamp, bus_name);
+			} catch(Throwable e) {
 				System.err.println("\nThe MidiBus Warning: Disabling rawMidi(byte[] data, String bus_name) with bus_name because an unknown exception was thrown and caught");
 				e.printStackTrace();
 				method_raw_midi_with_bus_name = null;
@@ -1240,8 +1803,8 @@ public class MidiBus {
 		
 		if (method_midi_message != null) {
 			try {
-				method_midi_message.invoke(parent, new Object[] { message });
-			} catch(Exception e) {
+				method_midi_message.invokeExact(inbound.message());
+			} catch(Throwable e) {
 				System.err.println("\nThe MidiBus Warning: Disabling midiMessage(MidiMessage message) because an unknown exception was thrown and caught");
 				e.printStackTrace();
 				method_midi_message = null;
@@ -1249,8 +1812,8 @@ public class MidiBus {
 		}
 		if (method_midi_message_with_bus_name != null) {
 			try {
-				method_midi_message_with_bus_name.invoke(parent, new Object[] { message, timeStamp, bus_name });
-			} catch(Exception e) {
+				method_midi_message_with_bus_name.invokeExact(inbound.message(), timeStamp, bus_name);
+			} catch(Throwable e) {
 				System.err.println("\nThe MidiBus Warning: Disabling midiMessage(MidiMessage message, String bus_name) with bus_name because an unknown exception was thrown and caught");
 				e.printStackTrace();
 				method_midi_message_with_bus_name = null;
@@ -1283,6 +1846,15 @@ public class MidiBus {
 			method_controller_change_with_bus_name = null;
 			method_raw_midi_with_bus_name = null;
 			method_midi_message_with_bus_name = null;
+
+			method_note_on_wcla = null;
+			method_note_off_wcla = null;
+			method_controller_change_wcla = null;
+		}
+
+		if (frameDispatch()) {
+			callParentHook(old_parent, "unregisterMethod");
+			callParentHook(parent, "registerMethod");
 		}
 
 		this.parent = parent;
@@ -1293,88 +1865,58 @@ public class MidiBus {
 			// 	((processing.core.PApplet) parent).registerMethod("dispose", this);
 			// }
 
-			try {
-				method_note_on = parent.getClass().getMethod("noteOn", new Class[] { Integer.TYPE, Integer.TYPE, Integer.TYPE });
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
-			
-			try {
-				method_note_off = parent.getClass().getMethod("noteOff", new Class[] { Integer.TYPE, Integer.TYPE, Integer.TYPE });
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
-			
-			try {
-				method_controller_change = parent.getClass().getMethod("controllerChange", new Class[] { Integer.TYPE, Integer.TYPE, Integer.TYPE });
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
-			
-			try {
-				method_raw_midi = parent.getClass().getMethod("rawMidi", new Class[] { byte[].class });
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
-			
-			try {
-				method_midi_message = parent.getClass().getMethod("midiMessage", new Class[] { MidiMessage.class });
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
-			
-			try {
-				method_note_on_with_bus_name = parent.getClass().getMethod("noteOn", new Class[] { Integer.TYPE, Integer.TYPE, Integer.TYPE, Long.TYPE, String.class });
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
-			
-			try {
-				method_note_off_with_bus_name = parent.getClass().getMethod("noteOff", new Class[] { Integer.TYPE, Integer.TYPE, Integer.TYPE, Long.TYPE, String.class });
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
-
-			try {
-				method_controller_change_with_bus_name = parent.getClass().getMethod("controllerChange", new Class[] { Integer.TYPE, Integer.TYPE, Integer.TYPE, Long.TYPE, String.class });
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
-			
-			try {
-				method_raw_midi_with_bus_name = parent.getClass().getMethod("rawMidi", new Class[] { byte[].class, Long.TYPE, String.class });
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
-			
-			try {
-				method_midi_message_with_bus_name = parent.getClass().getMethod("midiMessage", new Class[] { MidiMessage.class, Long.TYPE, String.class });
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
+			method_note_on = bindParentMethod(parent, "noteOn", Integer.TYPE, Integer.TYPE, Integer.TYPE);
+			method_note_off = bindParentMethod(parent, "noteOff", Integer.TYPE, Integer.TYPE, Integer.TYPE);
+			method_controller_change = bindParentMethod(parent, "controllerChange", Integer.TYPE, Integer.TYPE, Integer.TYPE);
+			method_raw_midi = bindParentMethod(parent, "rawMidi", byte[].class);
+			method_midi_message = bindParentMethod(parent, "midiMessage", MidiMessage.class);
 
-			try {
-				method_note_on_wcla = parent.getClass().getMethod("noteOn", new Class[] { Note.class});
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
-			
-			try {
-				method_note_off_wcla = parent.getClass().getMethod("noteOff", new Class[] { Note.class });
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
+			method_note_on_with_bus_name = bindParentMethod(parent, "noteOn", Integer.TYPE, Integer.TYPE, Integer.TYPE, Long.TYPE, String.class);
+			method_note_off_with_bus_name = bindParentMethod(parent, "noteOff", Integer.TYPE, Integer.TYPE, Integer.TYPE, Long.TYPE, String.class);
+			method_controller_change_with_bus_name = bindParentMethod(parent, "controllerChange", Integer.TYPE, Integer.TYPE, Integer.TYPE, Long.TYPE, String.class);
+			method_raw_midi_with_bus_name = bindParentMethod(parent, "rawMidi", byte[].class, Long.TYPE, String.class);
+			method_midi_message_with_bus_name = bindParentMethod(parent, "midiMessage", MidiMessage.class, Long.TYPE, String.class);
 
-			try {
-				method_controller_change_wcla = parent.getClass().getMethod("controllerChange", new Class[] { ControlChange.class });
-			} catch(Exception e) {
-				// no such method, or an error.. which is fine, just ignore
-			}
+			method_note_on_wcla = bindParentMethod(parent, "noteOn", Note.class);
+			method_note_off_wcla = bindParentMethod(parent, "noteOff", Note.class);
+			method_controller_change_wcla = bindParentMethod(parent, "controllerChange", ControlChange.class);
 
 		}
 
 		return old_parent;
 	}
+
+	/**
+	 * Looks up a public method of the parent and binds it into a MethodHandle with an exact void signature, so notifyParent can call it with invokeExact without boxing its arguments or allocating an Object[] per message.
+	 *
+	 * @param parent the object whose method should be bound.
+	 * @param name the name of the callback method.
+	 * @param parameter_types the parameter types of the callback method.
+	 * @return the bound MethodHandle, or null if the parent doesn't implement the method.
+	*/
+	private MethodHandle bindParentMethod(Object parent, String name, Class<?>... parameter_types) {
+		Method method;
+		try {
+			method = parent.getClass().getMethod(name, parameter_types);
+		} catch(NoSuchMethodException e) {
+			// no such method, which is fine, just ignore
+			return null;
+		}
+
+		//The public methods of a class which isn't public, e.g. declared package-private in another package, aren't accessible until made so
+		try {
+			method.setAccessible(true);
+		} catch(RuntimeException e) {
+			//Not allowed, unreflect reports whether it matters
+		}
+
+		try {
+			return MethodHandles.lookup().unreflect(method).bindTo(parent).asType(MethodType.methodType(Void.TYPE, parameter_types));
+		} catch(IllegalAccessException e) {
+			System.err.println("\nThe MidiBus Warning: The parent's "+name+"() method can't be called, make its class public");
+			return null;
+		}
+	}
 	
 	/**
 	 * 	Adds a listener who will be notified each time a new MIDI message is received from a MIDI input device. If the listener has already been added, it will not be added again.
@@ -1385,10 +1927,53 @@ public class MidiBus {
 	 * @see #registerParent(Object parent)
 	*/
 	public boolean addMidiListener(MidiListener listener) {
-		for (MidiListener current : listeners) if (current == listener) return false;
-		
-		listeners.add(listener);
-				
+		return addMidiListener(listener, null);
+	}
+
+	/**
+	 * Adds a listener who will be notified each time a new MIDI message of the given types is received on one of the given channels from a MIDI input device. If the listener has already been added, it will not be added again.
+	 * <p>
+	 * The masks are tested by the dispatcher itself, so the listener is never invoked for messages it isn't subscribed to. The channel mask has one bit per channel, e.g. <code>(1 &lt;&lt; 0) | (1 &lt;&lt; 9)</code> for channels 0 and 9, and the type mask combines the TYPE_ constants, e.g. <code>MidiBus.TYPE_NOTE_ON | MidiBus.TYPE_NOTE_OFF</code>. System messages have no channel, they are only filtered by type.
+	 *
+	 * @param listener the listener to add.
+	 * @param channel_mask the channels the listener is subscribed to, or {@link #ALL_CHANNELS}.
+	 * @param type_mask the message types the listener is subscribed to, or {@link #ALL_TYPES}.
+	 * @return true if and only the listener was sucessfully added.
+	 * @see #addMidiListener(MidiListener, int, int, int, int)
+	 * @see #removeMidiListener(MidiListener listener)
+	*/
+	public boolean addMidiListener(MidiListener listener, int channel_mask, int type_mask) {
+		return addMidiListener(listener, channel_mask, type_mask, 0, 127);
+	}
+
+	/**
+	 * Adds a listener who will be notified each time a new MIDI message of the given types is received on one of the given channels from a MIDI input device, and for notes, polyphonic key pressure and controller changes, only if the pitch or controller number is in the range from low to high. If the listener has already been added, it will not be added again.
+	 *
+	 * @param listener the listener to add.
+	 * @param channel_mask the channels the listener is subscribed to, or {@link #ALL_CHANNELS}.
+	 * @param type_mask the message types the listener is subscribed to, or {@link #ALL_TYPES}.
+	 * @param low the lowest pitch or controller number the listener is subscribed to.
+	 * @param high the highest pitch or controller number the listener is subscribed to.
+	 * @return true if and only the listener was sucessfully added.
+	 * @see #addMidiListener(MidiListener, int, int)
+	 * @see #removeMidiListener(MidiListener listener)
+	*/
+	public boolean addMidiListener(MidiListener listener, int channel_mask, int type_mask, int low, int high) {
+		return addMidiListener(listener, new ListenerFilter(channel_mask, type_mask, low, high));
+	}
+
+	/**
+	 * Adds a listener with an optional filter, null meaning all messages.
+	*/
+	boolean addMidiListener(MidiListener listener, ListenerFilter filter) {
+		synchronized (listeners_lock) {
+			for (MidiListener current : listeners) if (current == listener) return false;
+
+			listeners = add(listeners, listener);
+			if (filter != null) listener_filters.put(listener, filter);
+			rebuildListenerTable();
+		}
+
 		return true;
 	}
 	
@@ -1400,17 +1985,71 @@ public class MidiBus {
 	 * @see #addMidiListener(MidiListener listener)
 	*/
 	public boolean removeMidiListener(MidiListener listener) {
-		for (MidiListener current : listeners) {
-			if (current == listener) {
-				listeners.remove(listener);
-				return true;
+		synchronized (listeners_lock) {
+			for (int i = 0;i < listeners.length;i++) {
+				if (listeners[i] == listener) {
+					listeners = remove(listeners, i);
+					listener_filters.remove(listener);
+					rebuildListenerTable();
+					return true;
+				}
 			}
 		}
 		return false;
 	}
+
+	/**
+	 * Rebuilds the per message type dispatch table used by {@link #notifyListeners(MidiMessage, long)}. The table has one row per status nibble (0x8 to 0xF) and each row only holds the listeners which handle, and are subscribed to, that type of message, so inbound messages never visit listeners that would ignore them. The channel and range filters are copied into the entries. Must be called whenever the listeners change, while holding the listeners lock.
+	*/
+	void rebuildListenerTable() {
+		ListenerEntry[][] table = new ListenerEntry[8][];
+		Vector<ListenerEntry> row = new Vector<ListenerEntry>();
+
+		for (int type = 0;type < table.length;type++) {
+			int command = 0x80 | (type << 4);
+			boolean note_or_cc = command == ShortMessage.NOTE_ON || command == ShortMessage.NOTE_OFF || command == ShortMessage.CONTROL_CHANGE;
+			boolean ranged = note_or_cc || command == ShortMessage.POLY_PRESSURE;
+
+			row.clear();
+			for (MidiListener listener : listeners) {
+				ListenerFilter filter = listener_filters.get(listener);
+				if (filter != null && (filter.type_mask & (1 << type)) == 0) continue;
+
+				ListenerEntry entry = new ListenerEntry(listener, note_or_cc);
+				if (filter != null && command != 0xF0) entry.channel_mask = filter.channel_mask;
+				if (filter != null && ranged) {
+					entry.low = filter.low;
+					entry.high = filter.high;
+				}
+				if (entry.raw != null || entry.simple != null || entry.standard != null || entry.object != null) row.add(entry);
+			}
+
+			table[type] = row.toArray(new ListenerEntry[row.size()]);
+		}
+
+		listener_table = table;
+	}
 	
 	
 	/* -- Utilites -- */
+
+	/**
+	 * Returns a copy of a snapshot array with an element appended.
+	*/
+	static <T> T[] add(T[] array, T element) {
+		T[] copy = Arrays.copyOf(array, array.length + 1);
+		copy[array.length] = element;
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of a snapshot array without the element at index.
+	*/
+	static <T> T[] remove(T[] array, int index) {
+		T[] copy = Arrays.copyOf(array, array.length - 1);
+		System.arraycopy(array, index + 1, copy, index, array.length - index - 1);
+		return copy;
+	}
 	
 	/**
 	 * It's just convient ... move along...
@@ -1460,431 +2099,1474 @@ public class MidiBus {
 	}
 
 	/**
-	 * Returns whether MidiBus is configured to bypass CoreMIDI4J and use the
-	 * built-in Java MIDI implementation directly. Default is false.
+	 * Returns whether this MidiBus recycles the Note and ControlChange objects it passes to ObjectMidiListeners and to the parent's noteOn(Note), noteOff(Note) and controllerChange(ControlChange) methods.
 	 *
-	 * @return true if bypassing CoreMIDI4J.
-	 * @see #bypassCoreMidi4J(boolean)
+	 * @return true if this MidiBus recycles Note and ControlChange objects.
+	 * @see #recycleEventObjects(boolean)
 	*/
-	public static boolean bypassCoreMidi4J() {
-		return bypassCoreMidi4J;
+	public boolean recycleEventObjects() {
+		return recycleEventObjects;
 	}
 
 	/**
-	 * Enables or disables bypassing CoreMIDI4J in favour of the built-in Java
-	 * MIDI implementation (javax.sound.midi via MidiSystem).
-	 * <p>
-	 * This is an escape hatch with a <b>known limitation</b>: Apple's native
-	 * Java MIDI implementation on macOS does NOT correctly deliver SysEx
-	 * messages - they will be silently dropped. Short messages (noteOn,
-	 * noteOff, controllerChange, etc.) work normally. Only enable this if you
-	 * have a specific reason to avoid CoreMIDI4J and you do not need SysEx.
-	 * <p>
-	 * This method MUST be called <i>before</i> constructing any MidiBus
-	 * instance for the change to take effect, because the device list is
-	 * built during the constructor.
+	 * Configure this MidiBus instance to recycle the Note and ControlChange objects it passes to ObjectMidiListeners and to the parent's noteOn(Note), noteOff(Note) and controllerChange(ControlChange) methods, instead of creating new ones for every message. This removes all the garbage generated by heavy input, and the GC pauses that come with it.
 	 * <p>
-	 * A warning is printed to stderr when this method is called with
-	 * {@code true}, when a MidiBus constructor fires while bypass is active,
-	 * and when any SysEx send method is invoked while bypass is active.
+	 * When enabled, a Note or ControlChange is only valid until the callback it was passed to returns, after which it will be overwritten by a later message. If you need to keep it, store {@link Note#copy()} or {@link ControlChange#copy()} instead. Default is false.
 	 *
-	 * @param bypass true to bypass CoreMIDI4J, false (the default) to use it.
-	 * @see #bypassCoreMidi4J()
+	 * @param recycleEventObjects set to true to recycle Note and ControlChange objects, false (default) to create new ones for every message.
+	 * @see #recycleEventObjects()
 	*/
-	public static void bypassCoreMidi4J(boolean bypass) {
-		MidiBus.bypassCoreMidi4J = bypass;
-		if (bypass) printBypassCoreMidi4JWarning("bypassCoreMidi4J(true) called");
+	public void recycleEventObjects(boolean recycleEventObjects) {
+		this.recycleEventObjects = recycleEventObjects;
 	}
 
 	/**
-	 * Prints the bypassCoreMidi4J warning to stderr. Called from the setter,
-	 * from MidiBus constructors (via init), and from SysEx send paths.
+	 * Returns whether this MidiBus recycles the ShortMessage objects it sends for sendNoteOn(), sendNoteOff(), sendControllerChange() and the sendMessage() methods taking status and data bytes.
+	 *
+	 * @return true if this MidiBus recycles outbound ShortMessage objects.
+	 * @see #recycleOutboundMessages(boolean)
 	*/
-	static void printBypassCoreMidi4JWarning(String context) {
-		System.err.println("\nThe MidiBus Warning [bypassCoreMidi4J, " + context + "]: Using the built-in Java MIDI implementation. On macOS, this path cannot SEND SysEx messages - outbound SysEx is silently dropped. RECEIVING SysEx does work, so sketches that only read inbound SysEx (controller dumps, MMC, etc.) are fine. Short messages work in both directions. Call MidiBus.bypassCoreMidi4J(false) to return to the CoreMIDI4J-backed path, which handles both directions for all message types.");
+	public boolean recycleOutboundMessages() {
+		return recycleOutboundMessages;
 	}
-	
+
 	/**
-	 * Returns the name of this MidiBus.
+	 * Configure this MidiBus instance to recycle the ShortMessage objects it sends for sendNoteOn(), sendNoteOff(), sendControllerChange() and the sendMessage() methods taking status and data bytes, instead of creating a new one for every message. Each sending thread reuses its own ShortMessage, so sending short messages no longer generates any garbage.
+	 * <p>
+	 * This is only safe if every output consumes the messages before Receiver.send() returns, which the CoreMIDI4J and built-in Java MIDI output devices do. Don't enable it if a Receiver keeps the messages it is passed, e.g. a Sequencer recording them or a software synthesizer queuing them when {@link #sendTimestamps(boolean)} is enabled. Default is false.
 	 *
-	 * @return the name of this MidiBus.
-	 * @see #setBusName(String bus_name)
-	 * @see #generateBusName()
+	 * @param recycleOutboundMessages set to true to recycle outbound ShortMessage objects, false (default) to create new ones for every message.
+	 * @see #recycleOutboundMessages()
 	*/
-	public String getBusName() {
-		return bus_name;
+	public void recycleOutboundMessages(boolean recycleOutboundMessages) {
+		this.recycleOutboundMessages = recycleOutboundMessages;
 	}
-	
+
 	/**
-	 * Changes the name of this MidiBus.
+	 * Returns whether this MidiBus lets outputs which support timestamps schedule the messages passed to sendAt() and sendAfter() themselves.
 	 *
-	 * @param bus_name the new name of this MidiBus.
-	 * @see #getBusName()
-	 * @see #generateBusName()
+	 * @return true if device scheduling is enabled.
+	 * @see #deviceScheduling(boolean)
 	*/
-	public void setBusName(String bus_name) {
-		this.bus_name = bus_name;
+	public boolean deviceScheduling() {
+		return deviceScheduling;
 	}
-	
+
 	/**
-	 * Generate a name for this MidiBus instance.
+	 * Configure this MidiBus instance to pass the messages given to {@link #sendAt(MidiMessage, long)} and {@link #sendAfter(MidiMessage, long)} to outputs which support timestamps straight away, with a timestamp in the future, instead of waiting until they are due. Outputs support timestamps if their MidiDevice reports a microsecond position, e.g. the Java Sound Synthesizer, which then schedules the messages with sample accuracy. The other outputs still get the messages from the scheduler thread.
+	 * <p>
+	 * Only enable this if the outputs reporting a position also honour future timestamps, since some MIDI ports report one but play every message immediately. Default is false.
 	 *
-	 * @see #setBusName(String bus_name)
-	 * @see #getBusName()
+	 * @param deviceScheduling set to true to let outputs supporting timestamps schedule messages, false (default) to send every scheduled message when it is due.
+	 * @see #deviceScheduling()
 	*/
-	public void generateBusName() {
-		String id = new Formatter().format("%08d", System.currentTimeMillis()%100000000).toString();
-		bus_name = "MidiBus_"+id;
+	public void deviceScheduling(boolean deviceScheduling) {
+		this.deviceScheduling = deviceScheduling;
 	}
 
-	/* -- Object -- */
-	
 	/**
-	 * Returns a string representation of the object.
+	 * Returns whether this MidiBus skips messages which wouldn't change the state of its outputs.
 	 *
-	 * @return a string representation of the object.
-	 */
-	public String toString() {
-		String output = "MidiBus: "+bus_name+" [";
-		output += input_devices.size()+" input(s), ";
-		output += output_devices.size()+" output(s), ";
-		output += listeners.size()+" listener(s)]";
-		return output;
+	 * @return true if redundant messages are suppressed.
+	 * @see #suppressRedundant(boolean)
+	*/
+	public boolean suppressRedundant() {
+		return suppressRedundant;
 	}
-	
+
 	/**
-	 * Indicates whether some other object is "equal to" this one.
+	 * Configure this MidiBus instance to remember, for each output, the last controller values, programs, pitch bends and channel pressures it sent on each channel and which notes it turned off, and to skip messages which wouldn't change any of it. Sketches which send their whole state every frame then only send what actually changed, which saves a lot of bandwidth on control surfaces and DIN MIDI ports.
+	 * <p>
+	 * NoteOns are always sent, as are controllers whose meaning depends on earlier messages, like data entry. A SysEx or a System Reset makes the MidiBus forget what it sent, since it can't tell what they changed. If the device's state changes behind the MidiBus's back, e.g. the device was power cycled or reconnected, call {@link #resync()}. Default is false.
 	 *
-	 * @param obj the reference object with which to compare.
-	 * @return if this object is the same as the obj argument; false otherwise.
-	 */
-	public boolean equals(Object obj) {
-		if (obj instanceof MidiBus) {
-			MidiBus midibus = (MidiBus)obj;
-			if (!this.getBusName().equals(midibus.getBusName())) return false;
-			if (!this.input_devices.equals(midibus.input_devices)) return false;
-			if (!this.output_devices.equals(midibus.output_devices)) return false;
-			if (!this.listeners.equals(midibus.listeners)) return false;
-			return true;
-		}
-		return false;
+	 * @param suppressRedundant set to true to suppress redundant messages, false (default) to send every message.
+	 * @see #suppressRedundant()
+	 * @see #resync()
+	 * @see #suppressedMessages()
+	*/
+	public synchronized void suppressRedundant(boolean suppressRedundant) {
+		this.suppressRedundant = suppressRedundant;
+		for (OutputDeviceContainer container : output_devices) container.suppressRedundant(suppressRedundant);
 	}
-	
+
 	/**
-	 * Creates and returns a copy of this object.
+	 * Forgets what was sent to the outputs, so the next message of every kind is sent even if it repeats the last one. Call this after a device was reconnected, before sending the full state again.
 	 *
-	 * @return a clone of this instance.
-	 */
-	public MidiBus clone() {
-		MidiBus clone = new MidiBus(parent, bus_name);
-		
-		for (InputDeviceContainer container : input_devices) {
-			clone.addInput(container.info);
+	 * @see #suppressRedundant(boolean)
+	*/
+	public void resync() {
+		for (OutputDeviceContainer container : output_devices) container.resync();
+	}
+
+	/**
+	 * Returns the number of messages which weren't sent to the attached outputs because they were redundant.
+	 *
+	 * @return the number of suppressed messages.
+	 * @see #suppressRedundant(boolean)
+	*/
+	public long suppressedMessages() {
+		long total = 0;
+		for (OutputDeviceContainer container : output_devices) total += container.suppressed();
+		return total;
+	}
+
+	/**
+	 * Returns whether this MidiBus reconnects lost inputs and outputs by itself.
+	 *
+	 * @return true if automatic reconnection is enabled.
+	 * @see #autoReconnect(boolean)
+	*/
+	public boolean autoReconnect() {
+		return reconnector != null;
+	}
+
+	/**
+	 * Configure this MidiBus instance to reconnect its inputs and outputs by itself when their device is lost, e.g. when a USB interface glitches or is unplugged and plugged back in. By default a lost output keeps failing, or silently dropping the messages, and a lost input stays silent until the device is removed and added again.
+	 * <p>
+	 * A device is considered lost when sending to it fails because its receiver was closed, or when it disappears from the device list. Messages sent to a lost output are dropped. Once a device by the same name is back, it is rebound in place: the input or output keeps its position, and everything configured on this MidiBus carries over, i.e. listeners and their filters, asynchronous input and output and rate limits. The redundant message cache and the sounding notes of an output are forgotten since the device starts afresh. Attempts to reconnect back off exponentially, from {@value #RECONNECT_MIN_DELAY}ms up to {@value #RECONNECT_MAX_DELAY}ms, so a device which is gone for good or keeps dropping out costs next to nothing.
+	 * <p>
+	 * Noticing devices disappearing and reappearing relies on the background device watcher, which is started if it isn't running yet, see {@link #watchDevices(int)}. Default is false.
+	 *
+	 * @param autoReconnect set to true to reconnect lost devices automatically, false (default) to leave them.
+	 * @see #autoReconnect()
+	 * @see #reconnects()
+	 * @see #lostDevices()
+	*/
+	public void autoReconnect(boolean autoReconnect) {
+		Reconnector started = null, stopped = null;
+		//Not holding this MidiBus' lock while touching the device listeners, which may call into it
+		synchronized (this) {
+			if (autoReconnect && reconnector == null) {
+				started = reconnector = new Reconnector();
+			} else if (!autoReconnect && reconnector != null) {
+				stopped = reconnector;
+				reconnector = null;
+			}
 		}
-		
-		for (OutputDeviceContainer container : output_devices) {
-			clone.addOutput(container.info);
+		if (started != null) {
+			addDeviceListener(started);
+			if (!watchingDevices()) watchDevices(RECONNECT_WATCH_INTERVAL);
 		}
-		
-		for (MidiListener listener : listeners) {
-			clone.addMidiListener(listener);
+		if (stopped != null) {
+			removeDeviceListener(stopped);
+			stopped.shutdown();
 		}
-		
-		return clone;
 	}
-	
+
 	/**
-	 * Returns a hash code value for the object.
+	 * Returns how many times the inputs and outputs currently attached to this MidiBus were reconnected after being lost.
 	 *
-	 * @return a hash code value for this object.
-	 */
-	public int hashCode() {
-		return bus_name.hashCode()+input_devices.hashCode()+output_devices.hashCode()+listeners.hashCode();
+	 * @return the number of reconnections.
+	 * @see #autoReconnect(boolean)
+	*/
+	public long reconnects() {
+		long total = 0;
+		for (InputDeviceContainer container : input_devices) total += container.reconnects;
+		for (OutputDeviceContainer container : output_devices) total += container.reconnects;
+		return total;
 	}
-	
+
 	/**
-	 * Override the finalize() method from java.lang.Object.
+	 * Returns how many times the attached input and/or output with the given name was reconnected after being lost.
 	 *
+	 * @param device_name the name of the device.
+	 * @return the number of reconnections, 0 if no such device is attached.
+	 * @see #autoReconnect(boolean)
 	*/
-	protected void finalize() {
-		close();
+	public long reconnects(String device_name) {
+		long total = 0;
+		for (InputDeviceContainer container : input_devices) if (container.info.getName().equals(device_name)) total += container.reconnects;
+		for (OutputDeviceContainer container : output_devices) if (container.info.getName().equals(device_name)) total += container.reconnects;
+		return total;
 	}
-	
-	/* -- Shutting Down -- */
-	
+
 	/**
-	 * Closes this MidiBus and all connections it has with other MIDI devices. This method exists as per standard javax.sound.midi syntax. It is functionaly equivalent to stop() and dispose().
+	 * Returns the names of the attached inputs and outputs which are lost and waiting to be reconnected. An input and an output of the same device are listed separately.
 	 *
-	 * @see #stop()
-	 * @see #dispose()
+	 * @return the names of the lost devices.
+	 * @see #autoReconnect(boolean)
 	*/
-	public void close() {		
-		closeAllMidiDevices();
+	public String[] lostDevices() {
+		Vector<String> lost = new Vector<String>();
+		for (InputDeviceContainer container : input_devices) if (container.lost) lost.add(container.info.getName());
+		for (OutputDeviceContainer container : output_devices) if (container.lost) lost.add(container.info.getName());
+		return lost.toArray(new String[lost.size()]);
 	}
-		
+
 	/**
-	 * Closes this MidiBus and all connections it has with other MIDI devices. This method exit as per standard Processing syntax for users who are doing their sketch cleanup themselves using the stop() function. It is functionaly equivalent to close() and dispose().
+	 * Returns whether this MidiBus sends messages to its outputs concurrently.
 	 *
-	 * @see #close()
-	 * @see #dispose()
+	 * @return true if parallel output is enabled.
+	 * @see #parallelOutput(boolean)
 	*/
-	public void stop() {
-		close();
+	public boolean parallelOutput() {
+		return fan_out != null;
 	}
-	
+
 	/**
-	 * Closes this MidiBus and all connections it has with other MIDI devices. This method exit as per standard Processing library syntax and is called automatically whenever the parent applet shuts down. It is functionaly equivalent to close() and stop().
+	 * Configure this MidiBus instance to send each message to all its outputs concurrently. By default the outputs are handed the message one after the other, so with many outputs, e.g. several multi-port interfaces and virtual ports, sending takes as long as all the outputs together. With parallel output, threads owned by this MidiBus take all the outputs but one, which the calling thread takes, and the send returns once every output has the message, so it only takes as long as the slowest output. Each output still receives the messages in the order they were sent.
+	 * <p>
+	 * Applies to sendMessage(), the methods built on it and sendBatch(). Parallel output only pays off with several outputs which take a while to accept a message, since handing the message over to the other threads has a cost of its own and allocates. If the caller doesn't need to wait for the outputs at all, {@link #asyncOutput(int, OverflowPolicy) asynchronous output} is cheaper. Default is false.
+	 *
+	 * @param parallelOutput set to true to send to the outputs concurrently, false (default) to send to them one after the other.
+	 * @see #parallelOutput()
+	*/
+	public synchronized void parallelOutput(boolean parallelOutput) {
+		if (parallelOutput && fan_out == null) {
+			fan_out = java.util.concurrent.Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "MidiBus Fan-out ["+bus_name+"]");
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else if (!parallelOutput && fan_out != null) {
+			fan_out.shutdown();
+			fan_out = null;
+		}
+	}
+
+	/**
+	 * Returns whether this MidiBus writes to each output from a queue and thread of the output's own.
 	 *
-	 * @see #close()
-	 * @see #stop()
+	 * @return true if asynchronous output is enabled.
+	 * @see #asyncOutput(boolean)
+	 * @see #asyncOutput(int, OverflowPolicy)
 	*/
-	public void dispose() {
-		close();
+	public boolean asyncOutput() {
+		return output_queue_policy != null;
 	}
-	
-	/* -- Static methods -- */
-	
+
 	/**
-	 * List all installed MIDI devices. The index, name and type (input/output/unavailable) of each devices will be indicated. 
+	 * Enables or disables asynchronous output, using a queue of 1024 messages per output and the {@link OverflowPolicy#BLOCK} policy. See {@link #asyncOutput(int, OverflowPolicy)}.
 	 *
-	 * @see #availableInputs()
-	 * @see #availableOutputs()
-	 * @see #unavailableDevices()
+	 * @param asyncOutput set to true to enable asynchronous output, false (default) to write to the outputs on the sending threads.
+	 * @see #asyncOutput()
+	 * @see #asyncOutput(int, OverflowPolicy)
 	*/
-	static public void list() {
-		String[] available_inputs = availableInputs();
-		String[] available_outputs = availableOutputs();
-		String[] unavailable = unavailableDevices();
-		
-		if (available_inputs.length == 0 && available_outputs.length == 0 && unavailable.length == 0) return;
-		
-		System.out.println("\nAvailable MIDI Devices:");
-		if (available_inputs.length != 0) {
-			System.out.println("----------Input----------");
-			for (int i = 0;i < available_inputs.length;i++) System.out.println("["+i+"] \""+available_inputs[i]+"\"");
-		}
-		if (available_outputs.length != 0) {
-			System.out.println("----------Output----------");
-			for (int i = 0;i < available_outputs.length;i++) System.out.println("["+i+"] \""+available_outputs[i]+"\"");
-		}
-		if (unavailable.length != 0) {
-			System.out.println("----------Unavailable----------");
-			for (int i = 0;i < unavailable.length;i++) System.out.println("["+i+"] \""+unavailable[i]+"\"");
+	public void asyncOutput(boolean asyncOutput) {
+		if (asyncOutput) {
+			if (!asyncOutput()) asyncOutput(1024, OverflowPolicy.BLOCK);
+		} else if (asyncOutput()) {
+			stopOutputQueues(true);
 		}
 	}
 
 	/**
-	 * Rescan for Midi Devices. This is autocalled once when the MidiBus starts up. It should be called again if you need to refresh the list of available MidiDevices while your program is running.
+	 * Enables asynchronous output. By default the send methods pass each message to every output in turn on the calling thread, so an output whose driver stalls blocks the caller and delays all the other outputs. With asynchronous output, each output gets a bounded queue and a writer thread of its own, the send methods only queue the messages and a stalled output only backs up its own queue. Each output still receives the messages in the order they were sent, unless it is {@link #rateLimit(String, int, int) rate limited}.
+	 * <p>
+	 * Calling this while asynchronous output is already enabled first writes everything already queued, then applies the new settings. {@link #sendBatch(MidiBatch)} can't report the outputs which fail while asynchronous output is enabled, since the messages are written after it returns. Use {@link #outputStats()} to monitor the queues.
 	 *
+	 * @param capacity the number of messages each output's queue can hold.
+	 * @param policy what to do when a queue is full, see {@link OverflowPolicy}.
+	 * @see #asyncOutput()
+	 * @see #asyncOutput(boolean)
+	 * @see #outputStats()
 	*/
-	static public void findMidiDevices() {
-		if (bypassCoreMidi4J) {
-			MidiBus.available_devices = MidiSystem.getMidiDeviceInfo();
-		} else {
-			MidiBus.available_devices = CoreMidiDeviceProvider.getMidiDeviceInfo();
-		}
+	public synchronized void asyncOutput(int capacity, OverflowPolicy policy) {
+		output_queue_capacity = capacity;
+		output_queue_policy = policy;
+		//Each output goes straight from its old queue, once written out, to the new one
+		for (OutputDeviceContainer container : output_devices) container.startQueue(capacity, policy);
 	}
-	
+
 	/**
-	 * Returns the names of all the available input devices.
+	 * Limits the bandwidth used on an output, allowing bursts of 10 ms worth of bytes. See {@link #rateLimit(String, int, int)}.
 	 *
-	 * @return the names of the available inputs.
-	 * @see #list()
-	 * @see #availableOutputs()
-	 * @see #unavailableDevices()
+	 * @param device_name the name of the output.
+	 * @param bytes_per_second the bandwidth of the output, e.g. {@link #DIN_BYTES_PER_SECOND}, or 0 to remove the limit.
+	 * @return true if the output is attached to this MidiBus.
+	 * @see #rateLimit(String, int, int)
 	*/
-	static public String[] availableInputs() {
-		MidiDevice.Info[] devices_info = availableInputsMidiDeviceInfo();
-		String[] devices = new String[devices_info.length];
-		
-		for (int i = 0;i < devices_info.length;i++) {
-			devices[i] = devices_info[i].getName();
-		}
-		
-		return devices;
+	public boolean rateLimit(String device_name, int bytes_per_second) {
+		return rateLimit(device_name, bytes_per_second, bytes_per_second / 100);
 	}
-	
+
 	/**
-	 * Returns the names of all the available output devices.
+	 * Limits the bandwidth used on an output. A DIN MIDI port only carries about 3000 bytes per second, and a burst of messages larger than what the interface can buffer gets dropped or delays everything sent after it. With a rate limit, the output's writer paces the messages to the bandwidth of the wire, writing realtime messages (clock, start, stop, ...) first, then note offs, then the other messages. Note ons keep their order with the other channel messages, so a program change sent before a note still comes first, and a note off never overtakes the note on it ends. While they wait, a newer value for a controller, pitch bend or channel pressure replaces the one queued for the same controller and channel, so a backed up output catches up with the latest values instead of playing every intermediate one. Notes and other messages keep their order.
+	 * <p>
+	 * Rate limiting requires {@link #asyncOutput(int, OverflowPolicy) asynchronous output}, which is enabled with its defaults if it isn't already. The limit stays with the output until it is removed, even if asynchronous output is turned off and on again.
 	 *
-	 * @return the names of the available outputs.
-	 * @see #list()
-	 * @see #availableInputs()
-	 * @see #unavailableDevices()
+	 * @param device_name the name of the output.
+	 * @param bytes_per_second the bandwidth of the output, e.g. {@link #DIN_BYTES_PER_SECOND}, or 0 to remove the limit.
+	 * @param burst the number of bytes which can be written at once, before pacing starts.
+	 * @return true if the output is attached to this MidiBus.
+	 * @see #rateLimit(String, int)
+	 * @see #outputStats()
 	*/
-	static public String[] availableOutputs() {
-		MidiDevice.Info[] devices_info = availableOutputsMidiDeviceInfo();
-		String[] devices = new String[devices_info.length];
-		
-		for (int i = 0;i < devices_info.length;i++) {
-			devices[i] = devices_info[i].getName();
+	public synchronized boolean rateLimit(String device_name, int bytes_per_second, int burst) {
+		for (OutputDeviceContainer container : output_devices) {
+			if (container.info.getName().equals(device_name)) {
+				container.rateLimit(bytes_per_second, burst);
+				if (bytes_per_second > 0 && !asyncOutput()) asyncOutput(true);
+				return true;
+			}
 		}
-		
-		return devices;
+		return false;
 	}
-	
+
 	/**
-	 * Returns the names of all the unavailable devices.
+	 * Returns the queue depth, drop and latency counters of each attached output. Outputs which are written to synchronously, because asynchronous output is disabled, have a capacity of 0 and no counters.
 	 *
-	 * @return the names of the unavailable devices.
-	 * @see #list()
-	 * @see #availableInputs()
-	 * @see #availableOutputs()
+	 * @return a snapshot of every attached output's counters.
+	 * @see #asyncOutput(int, OverflowPolicy)
+	 * @see OutputStats
 	*/
-	static public String[] unavailableDevices() {
-		MidiDevice.Info[] devices_info = unavailableMidiDeviceInfo();
-		String[] devices = new String[devices_info.length];
-		
-		for (int i = 0;i < devices_info.length;i++) {
-			devices[i] = devices_info[i].getName();
-		}
-		
-		return devices;
+	public OutputStats[] outputStats() {
+		OutputDeviceContainer[] output_devices = this.output_devices;
+		OutputStats[] stats = new OutputStats[output_devices.length];
+		for (int i = 0;i < output_devices.length;i++) stats[i] = output_devices[i].stats();
+		return stats;
 	}
-	
+
 	/**
-	 * Returns the MidiDevice.Info of all the available input devices.
+	 * Stops the writer queues of all the outputs, if any. The outputs go back to being written to on the sending threads.
 	 *
-	 * @return the MidiDevice.Info of the available inputs.
+	 * @param drain true to write everything already queued first, false to discard it.
 	*/
-	static MidiDevice.Info[] availableInputsMidiDeviceInfo() {
-		if (MidiBus.available_devices == null) findMidiDevices();
-		MidiDevice device;
-		
-		Vector<MidiDevice.Info> devices_list = new Vector<MidiDevice.Info>();
+	synchronized void stopOutputQueues(boolean drain) {
+		output_queue_policy = null;
+		for (OutputDeviceContainer container : output_devices) container.stopQueue(drain);
+	}
 
-		for (int i = 0;i < MidiBus.available_devices.length;i++) {
-			try {
-				device = MidiSystem.getMidiDevice(MidiBus.available_devices[i]);
-				//This open close checks to make sure the announced device is truely available
-				//There are many reports on Windows that some devices lie about their availability
-				//(For instance the Microsoft GS Wavetable Synth)
-				//But in theory I guess this could happen on any OS, so I'll just do it all the time.
-				// if (!device.isOpen()) {
-				// 	device.open();
-				// 	device.close();
-				// }
-				if (device.getMaxTransmitters() != 0) devices_list.add(MidiBus.available_devices[i]);
-			} catch(MidiUnavailableException e) {
-				//Device was unavailable which is fine, we only care about available inputs
-			}
-		}
-
-		MidiDevice.Info[] devices = new MidiDevice.Info[devices_list.size()];
-		
-		devices_list.toArray(devices);
-		
-		return devices;
+	/**
+	 * Returns whether this MidiBus delivers inbound messages to its listeners and parent from its own dispatcher thread.
+	 *
+	 * @return true if asynchronous dispatch is enabled.
+	 * @see #asyncDispatch(boolean)
+	 * @see #asyncDispatch(int, OverflowPolicy)
+	*/
+	public boolean asyncDispatch() {
+		InboundDispatcher dispatcher = this.dispatcher;
+		return dispatcher != null && dispatcher.thread != null;
 	}
-	
+
 	/**
-	 * Returns the MidiDevice.Info of all the available output devices.
+	 * Enables or disables asynchronous dispatch of inbound messages, using a queue of 1024 messages per input and the {@link OverflowPolicy#BLOCK} policy. See {@link #asyncDispatch(int, OverflowPolicy)}.
 	 *
-	 * @return the MidiDevice.Info of the available output.
+	 * @param asyncDispatch set to true to enable asynchronous dispatch, false (default) to deliver messages on the MIDI subsystem's threads.
+	 * @see #asyncDispatch()
+	 * @see #asyncDispatch(int, OverflowPolicy)
 	*/
-	static MidiDevice.Info[] availableOutputsMidiDeviceInfo() {
-		if (MidiBus.available_devices == null) findMidiDevices();
-		MidiDevice device;
-		
-		Vector<MidiDevice.Info> devices_list = new Vector<MidiDevice.Info>();
-		
-		for (int i = 0;i < MidiBus.available_devices.length;i++) {
-			try {
-				device = MidiSystem.getMidiDevice(MidiBus.available_devices[i]);
-				//This open close checks to make sure the announced device is truely available
-				//There are many reports on Windows that some devices lie about their availability
-				//(For instance the Microsoft GS Wavetable Synth)
-				//But in theory I guess this could happen on any OS, so I'll just do it all the time.
-				// if (!device.isOpen()) {
-				// 	device.open();
-				// 	device.close();
-				// }
-				if (device.getMaxReceivers() != 0) devices_list.add(MidiBus.available_devices[i]);
-			} catch(MidiUnavailableException e) {
-				//Device was unavailable which is fine, we only care about available output
-			}
+	public void asyncDispatch(boolean asyncDispatch) {
+		if (asyncDispatch) {
+			if (!asyncDispatch()) asyncDispatch(1024, OverflowPolicy.BLOCK);
+		} else if (asyncDispatch()) {
+			stopInboundDispatcher();
 		}
-		
-		MidiDevice.Info[] devices = new MidiDevice.Info[devices_list.size()];
-		
-		devices_list.toArray(devices);
-		
-		return devices;
 	}
-	
+
 	/**
-	 * Returns the MidiDevice.Info of all the unavailable devices.
+	 * Enables asynchronous dispatch of inbound messages. By default listener and parent callbacks run directly on the threads the MIDI subsystem uses to deliver messages, so a slow callback delays the device and can make it drop or bunch up messages. With asynchronous dispatch, each input only copies its messages into a pre-allocated queue and a dedicated thread owned by this MidiBus delivers them, in order for each input.
+	 * <p>
+	 * Calling this while asynchronous dispatch is already enabled first delivers everything already queued, then applies the new settings. Enabling asynchronous dispatch disables {@link #frameDispatch(int, int) frame dispatch}.
 	 *
-	 * @return the MidiDevice.Info of the unavailable devices.
+	 * @param capacity the number of messages each input's queue can hold, rounded up to a power of two.
+	 * @param policy what to do when a queue is full, see {@link OverflowPolicy}.
+	 * @see #asyncDispatch()
+	 * @see #asyncDispatch(boolean)
+	 * @see #droppedMessages()
 	*/
-	static MidiDevice.Info[] unavailableMidiDeviceInfo() {
-		if (MidiBus.available_devices == null) findMidiDevices();
-		MidiDevice device;
-		
-		Vector<MidiDevice.Info> devices_list = new Vector<MidiDevice.Info>();
-		
-		for (int i = 0;i < MidiBus.available_devices.length;i++) {
-			try {
-				device = MidiSystem.getMidiDevice(MidiBus.available_devices[i]);
-				//This open close checks to make sure the announced device is truely available
-				//There are many reports on Windows that some devices lie about their availability
-				//(For instance the Microsoft GS Wavetable Synth)
-				//But in theory I guess this could happen on any OS, so I'll just do it all the time.
-				// if (!device.isOpen()) {
-				// 	device.open();
-				// 	device.close();
-				// }
-			} catch(MidiUnavailableException e) {
-				devices_list.add(MidiBus.available_devices[i]);
-			}
+	public void asyncDispatch(int capacity, OverflowPolicy policy) {
+		stopInboundDispatcher();
+
+		synchronized (this) {
+			dispatcher = new InboundDispatcher(capacity, policy);
+			for (InputDeviceContainer container : input_devices) container.receiver.queue = dispatcher.attach();
+			dispatcher.start();
 		}
-		
-		MidiDevice.Info[] devices = new MidiDevice.Info[devices_list.size()];
-		
-		devices_list.toArray(devices);
-		
-		return devices;
 	}
-		
-	/* -- Nested Classes -- */
-	
-	private class MReceiver implements Receiver {
-				
-		MReceiver() {
 
+	/**
+	 * Returns whether this MidiBus holds inbound messages back until the next frame of the Processing sketch.
+	 *
+	 * @return true if frame dispatch is enabled.
+	 * @see #frameDispatch(boolean)
+	 * @see #frameDispatch(int, int)
+	*/
+	public boolean frameDispatch() {
+		InboundDispatcher dispatcher = this.dispatcher;
+		return dispatcher != null && dispatcher.thread == null;
+	}
+
+	/**
+	 * Enables or disables frame dispatch of inbound messages, using a queue of 1024 messages per input and delivering at most 1024 messages per frame. See {@link #frameDispatch(int, int)}.
+	 *
+	 * @param frameDispatch set to true to enable frame dispatch, false (default) to deliver messages on the MIDI subsystem's threads.
+	 * @see #frameDispatch()
+	 * @see #frameDispatch(int, int)
+	*/
+	public void frameDispatch(boolean frameDispatch) {
+		if (frameDispatch) {
+			if (!frameDispatch()) frameDispatch(1024, 1024);
+		} else if (frameDispatch()) {
+			stopInboundDispatcher();
 		}
-		
-		public void close() {
+	}
 
+	/**
+	 * Enables frame dispatch of inbound messages. Inbound messages are queued and all the listener and parent callbacks happen in one batch from {@link #pre()}, which Processing calls on the animation thread right before each draw(). The callbacks therefore never run concurrently with draw() and the sketch doesn't need any locking, while the MIDI subsystem's threads only copy the messages into a pre-allocated queue and never wait on the sketch.
+	 * <p>
+	 * Each input has a queue of capacity messages, when a queue is full the oldest messages are dropped (see {@link OverflowPolicy#DROP_OLDEST} and {@link #droppedMessages()}). Messages over the per frame budget stay queued for the next frame. Enabling frame dispatch disables {@link #asyncDispatch(int, OverflowPolicy) asynchronous dispatch}.
+	 * <p>
+	 * The parent must be a PApplet, or any other Object with a registerMethod(String, Object) method, for pre() to be called automatically. Otherwise pre() can be called from the application's own main loop.
+	 *
+	 * @param capacity the number of messages each input's queue can hold, rounded up to a power of two.
+	 * @param budget the maximum number of messages delivered by each call to pre().
+	 * @see #frameDispatch()
+	 * @see #frameDispatch(boolean)
+	 * @see #pre()
+	*/
+	public void frameDispatch(int capacity, int budget) {
+		stopInboundDispatcher();
+
+		synchronized (this) {
+			dispatcher = new InboundDispatcher(capacity, OverflowPolicy.DROP_OLDEST);
+			dispatcher.budget = budget;
+			for (InputDeviceContainer container : input_devices) container.receiver.queue = dispatcher.attach();
+			callParentHook(parent, "registerMethod");
 		}
-		
-	 	public void send(MidiMessage message, long timeStamp) {
-			
-			if (message.getStatus() == ShortMessage.NOTE_ON && message.getMessage()[2] == 0) {
-				try {
-					ShortMessage tmp_message = (ShortMessage)message;
-					tmp_message.setMessage(ShortMessage.NOTE_OFF, tmp_message.getData1(), tmp_message.getData2());
-					message = tmp_message;
-				} catch(Exception e) {
-					System.err.println("\nThe MidiBus Warning: Mystery error during noteOn (0 velocity) to noteOff conversion");
-				}
-			}
-						
-			notifyListeners(message, timeStamp);
-			notifyParent(message, timeStamp);
+	}
+
+	/**
+	 * Delivers the inbound messages queued since the last frame to the listeners and the parent, up to the budget set with {@link #frameDispatch(int, int)}. This method exists as per standard Processing library syntax and is called automatically before each draw() when frame dispatch is enabled, it does nothing otherwise.
+	 *
+	 * @see #frameDispatch(int, int)
+	*/
+	public void pre() {
+		InboundDispatcher dispatcher = this.dispatcher;
+		if (dispatcher != null && dispatcher.thread == null) dispatcher.drain(dispatcher.budget);
+	}
+
+	/**
+	 * Calls registerMethod("pre", this) or unregisterMethod("pre", this) on the parent, if it has such a method. Reflection keeps Processing optional for parents which aren't a PApplet.
+	*/
+	private void callParentHook(Object parent, String hook) {
+		if (parent == null) return;
+		try {
+			parent.getClass().getMethod(hook, String.class, Object.class).invoke(parent, "pre", this);
+		} catch(NoSuchMethodException e) {
+			// not a PApplet, the application calls pre() itself
+		} catch(Exception e) {
+			System.err.println("\nThe MidiBus Warning: Could not "+hook+" pre() with the parent");
+			if (throwErrors) throw new RuntimeException(e);
 		}
-		
+	}
+
+	/**
+	 * Returns whether controller changes, pitch bends and channel pressure messages queued for asynchronous or frame dispatch are coalesced.
+	 *
+	 * @return true if coalescing is enabled.
+	 * @see #coalesceControllers(boolean)
+	*/
+	public boolean coalesceControllers() {
+		return coalesceControllers;
+	}
+
+	/**
+	 * Enables or disables coalescing of controller changes, pitch bends and channel pressure messages waiting to be delivered with {@link #asyncDispatch(int, OverflowPolicy) asynchronous} or {@link #frameDispatch(int, int) frame} dispatch. A knob or fader sweep easily produces hundreds of messages per second when only the latest value matters. With coalescing, a message which arrives while an older one for the same channel and controller number (or for the same channel, for pitch bends and channel pressure) is still queued just replaces its value: it is delivered once, with the most recent value, at the position of the older message. Notes and all other messages are never coalesced and keep their order.
+	 * <p>
+	 * This has no effect when messages are delivered directly, as nothing is queued then.
+	 *
+	 * @param coalesceControllers set to true to enable coalescing, false (default) to deliver every message.
+	 * @see #coalesceControllers()
+	*/
+	public synchronized void coalesceControllers(boolean coalesceControllers) {
+		this.coalesceControllers = coalesceControllers;
+		if (dispatcher != null) dispatcher.coalesce(coalesceControllers);
+	}
+
+	/**
+	 * Returns the number of inbound messages dropped because a queue was full, as configured with {@link #asyncDispatch(int, OverflowPolicy)} or {@link #frameDispatch(int, int)}.
+	 *
+	 * @return the number of dropped inbound messages.
+	*/
+	public synchronized long droppedMessages() {
+		return retired_drops + (dispatcher == null ? 0 : dispatcher.dropped());
+	}
+
+	/**
+	 * Stops the dispatcher, if any. The asynchronous dispatcher first delivers everything already queued, what is left queued for the next frame is discarded. The inputs go back to delivering messages directly.
+	*/
+	void stopInboundDispatcher() {
+		InboundDispatcher stopped;
+
+		synchronized (this) {
+			stopped = dispatcher;
+			if (stopped == null) return;
+			for (InputDeviceContainer container : input_devices) container.receiver.queue = null;
+			dispatcher = null;
+			retired_drops += stopped.dropped();
+			if (stopped.thread == null) callParentHook(parent, "unregisterMethod");
+		}
+
+		//Not holding the lock here, since the callbacks still being delivered may call back into this MidiBus
+		stopped.shutdown();
+	}
+
+	/**
+	 * Stops the scheduler thread, if any, discarding the messages it hasn't sent yet.
+	*/
+	void stopScheduler() {
+		OutboundScheduler stopped;
+
+		synchronized (this) {
+			stopped = scheduler;
+			scheduler = null;
+		}
+
+		if (stopped != null) stopped.shutdown();
+	}
+
+	/**
+	 * Stops draining the queue of an input which is being removed.
+	*/
+	void detachInboundQueue(InputDeviceContainer container) {
+		InboundQueue queue = container.receiver.queue;
+		container.receiver.queue = null;
+		if (queue != null && dispatcher != null) dispatcher.detach(queue);
+	}
+
+	/**
+	 * Returns whether MidiBus is configured to bypass CoreMIDI4J and use the
+	 * built-in Java MIDI implementation directly. Default is false.
+	 *
+	 * @return true if bypassing CoreMIDI4J.
+	 * @see #bypassCoreMidi4J(boolean)
+	*/
+	public static boolean bypassCoreMidi4J() {
+		return bypassCoreMidi4J;
+	}
+
+	/**
+	 * Enables or disables bypassing CoreMIDI4J in favour of the built-in Java
+	 * MIDI implementation (javax.sound.midi via MidiSystem).
+	 * <p>
+	 * This is an escape hatch with a <b>known limitation</b>: Apple's native
+	 * Java MIDI implementation on macOS does NOT correctly deliver SysEx
+	 * messages - they will be silently dropped. Short messages (noteOn,
+	 * noteOff, controllerChange, etc.) work normally. Only enable this if you
+	 * have a specific reason to avoid CoreMIDI4J and you do not need SysEx.
+	 * <p>
+	 * This method MUST be called <i>before</i> constructing any MidiBus
+	 * instance for the change to take effect, because the device list is
+	 * built during the constructor.
+	 * <p>
+	 * A warning is printed to stderr when this method is called with
+	 * {@code true}, when a MidiBus constructor fires while bypass is active,
+	 * and when any SysEx send method is invoked while bypass is active.
+	 *
+	 * @param bypass true to bypass CoreMIDI4J, false (the default) to use it.
+	 * @see #bypassCoreMidi4J()
+	*/
+	public static void bypassCoreMidi4J(boolean bypass) {
+		MidiBus.bypassCoreMidi4J = bypass;
+		if (bypass) printBypassCoreMidi4JWarning("bypassCoreMidi4J(true) called");
+	}
+
+	/**
+	 * Prints the bypassCoreMidi4J warning to stderr. Called from the setter,
+	 * from MidiBus constructors (via init), and from SysEx send paths.
+	*/
+	static void printBypassCoreMidi4JWarning(String context) {
+		System.err.println("\nThe MidiBus Warning [bypassCoreMidi4J, " + context + "]: Using the built-in Java MIDI implementation. On macOS, this path cannot SEND SysEx messages - outbound SysEx is silently dropped. RECEIVING SysEx does work, so sketches that only read inbound SysEx (controller dumps, MMC, etc.) are fine. Short messages work in both directions. Call MidiBus.bypassCoreMidi4J(false) to return to the CoreMIDI4J-backed path, which handles both directions for all message types.");
+	}
+	
+	/**
+	 * Returns the name of this MidiBus.
+	 *
+	 * @return the name of this MidiBus.
+	 * @see #setBusName(String bus_name)
+	 * @see #generateBusName()
+	*/
+	public String getBusName() {
+		return bus_name;
+	}
+	
+	/**
+	 * Changes the name of this MidiBus.
+	 *
+	 * @param bus_name the new name of this MidiBus.
+	 * @see #getBusName()
+	 * @see #generateBusName()
+	*/
+	public void setBusName(String bus_name) {
+		this.bus_name = bus_name;
+	}
+	
+	/**
+	 * Generate a name for this MidiBus instance.
+	 *
+	 * @see #setBusName(String bus_name)
+	 * @see #getBusName()
+	*/
+	public void generateBusName() {
+		String id = new Formatter().format("%08d", System.currentTimeMillis()%100000000).toString();
+		bus_name = "MidiBus_"+id;
+	}
+
+	/* -- Object -- */
+	
+	/**
+	 * Returns a string representation of the object.
+	 *
+	 * @return a string representation of the object.
+	 */
+	public String toString() {
+		String output = "MidiBus: "+bus_name+" [";
+		output += input_devices.length+" input(s), ";
+		output += output_devices.length+" output(s), ";
+		output += listeners.length+" listener(s)]";
+		return output;
+	}
+	
+	/**
+	 * Indicates whether some other object is "equal to" this one.
+	 *
+	 * @param obj the reference object with which to compare.
+	 * @return if this object is the same as the obj argument; false otherwise.
+	 */
+	public boolean equals(Object obj) {
+		if (obj instanceof MidiBus) {
+			MidiBus midibus = (MidiBus)obj;
+			if (!this.getBusName().equals(midibus.getBusName())) return false;
+			if (!Arrays.equals(this.input_devices, midibus.input_devices)) return false;
+			if (!Arrays.equals(this.output_devices, midibus.output_devices)) return false;
+			if (!Arrays.equals(this.listeners, midibus.listeners)) return false;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Creates and returns a copy of this object.
+	 *
+	 * @return a clone of this instance.
+	 */
+	public MidiBus clone() {
+		MidiBus clone = new MidiBus(parent, bus_name);
+		
+		for (InputDeviceContainer container : input_devices) {
+			clone.addInput(container.info);
+		}
+		
+		for (OutputDeviceContainer container : output_devices) {
+			clone.addOutput(container.info);
+		}
+		
+		synchronized (listeners_lock) {
+			for (MidiListener listener : listeners) {
+				clone.addMidiListener(listener, listener_filters.get(listener));
+			}
+		}
+		
+		return clone;
+	}
+	
+	/**
+	 * Returns a hash code value for the object.
+	 *
+	 * @return a hash code value for this object.
+	 */
+	public int hashCode() {
+		return bus_name.hashCode()+Arrays.hashCode(input_devices)+Arrays.hashCode(output_devices)+Arrays.hashCode(listeners);
+	}
+	
+	/**
+	 * Override the finalize() method from java.lang.Object.
+	 *
+	*/
+	protected void finalize() {
+		close();
+	}
+	
+	/* -- Shutting Down -- */
+	
+	/**
+	 * Closes this MidiBus and all connections it has with other MIDI devices. This method exists as per standard javax.sound.midi syntax. It is functionaly equivalent to stop() and dispose().
+	 * <p>
+	 * Devices still used by another MidiBus instance, and devices opened by the program itself, are left open. Before version 010 this closed every MIDI device in the system, call {@link #closeAllMidiDevices()} afterwards to do that.
+	 *
+	 * @see #stop()
+	 * @see #dispose()
+	 * @see #closeAllMidiDevices()
+	*/
+	public void close() {		
+		autoReconnect(false);
+		stopInboundDispatcher();
+		stopScheduler();
+		stopSysexStreamer();
+		stopOutputQueues(false);
+		allNotesOff();
+		parallelOutput(false);
+		clearAll();
+	}
+		
+	/**
+	 * Closes this MidiBus and all connections it has with other MIDI devices. This method exit as per standard Processing syntax for users who are doing their sketch cleanup themselves using the stop() function. It is functionaly equivalent to close() and dispose().
+	 *
+	 * @see #close()
+	 * @see #dispose()
+	*/
+	public void stop() {
+		close();
+	}
+	
+	/**
+	 * Closes this MidiBus and all connections it has with other MIDI devices. This method exit as per standard Processing library syntax and is called automatically whenever the parent applet shuts down. It is functionaly equivalent to close() and stop().
+	 *
+	 * @see #close()
+	 * @see #stop()
+	*/
+	public void dispose() {
+		close();
+	}
+
+	/**
+	 * Closes every open MIDI device in the system, whichever MidiBus instance or program opened it. This is what close(), stop() and dispose() did before version 010. The inputs and outputs of the MidiBus instances which are still open stop working, so call this once they are all closed, e.g. when the sketch exits.
+	 *
+	 * @see #close()
+	*/
+	static public void closeAllMidiDevices() {
+		HashSet<MidiDevice> devices = new HashSet<MidiDevice>(Arrays.asList(DeviceRegistry.devices()));
+		for (MidiDevice.Info info : catalog().devices) {
+			try {
+				devices.add(MidiSystem.getMidiDevice(info));
+			} catch(MidiUnavailableException | IllegalArgumentException e) {
+				//Device wasn't available, which is fine since we wanted to close it anyways
+			}
+		}
+
+		for (MidiDevice device : devices) {
+			try {
+				if (device.isOpen()) device.close();
+			} catch(RuntimeException e) {
+				//Closing a device which went away can fail, it is closed either way
+			}
+		}
+	}
+	
+	/* -- Static methods -- */
+	
+	/**
+	 * List all installed MIDI devices. The index, name and type (input/output/unavailable) of each devices will be indicated. 
+	 *
+	 * @see #availableInputs()
+	 * @see #availableOutputs()
+	 * @see #unavailableDevices()
+	*/
+	static public void list() {
+		String[] available_inputs = availableInputs();
+		String[] available_outputs = availableOutputs();
+		String[] unavailable = unavailableDevices();
+		
+		if (available_inputs.length == 0 && available_outputs.length == 0 && unavailable.length == 0) return;
+		
+		System.out.println("\nAvailable MIDI Devices:");
+		if (available_inputs.length != 0) {
+			System.out.println("----------Input----------");
+			for (int i = 0;i < available_inputs.length;i++) System.out.println("["+i+"] \""+available_inputs[i]+"\"");
+		}
+		if (available_outputs.length != 0) {
+			System.out.println("----------Output----------");
+			for (int i = 0;i < available_outputs.length;i++) System.out.println("["+i+"] \""+available_outputs[i]+"\"");
+		}
+		if (unavailable.length != 0) {
+			System.out.println("----------Unavailable----------");
+			for (int i = 0;i < unavailable.length;i++) System.out.println("["+i+"] \""+unavailable[i]+"\"");
+		}
+	}
+
+	/**
+	 * Rescan for Midi Devices. This is autocalled once when the MidiBus starts up. It should be called again if you need to refresh the list of available MidiDevices while your program is running.
+	 * <p>
+	 * Only the devices which weren't available at the previous rescan are probed, after which listing the devices and looking them up by name or index is done from the results without touching the MIDI system. The {@link DeviceListener DeviceListeners} are told about the devices added and removed since the previous rescan. See {@link #watchDevices(int)} to rescan in the background.
+	 *
+	*/
+	static public void findMidiDevices() {
+		synchronized (catalog_lock) {
+			MidiDevice.Info[] devices;
+			if (bypassCoreMidi4J) {
+				devices = MidiSystem.getMidiDeviceInfo();
+			} else {
+				devices = CoreMidiDeviceProvider.getMidiDeviceInfo();
+			}
+			DeviceCatalog catalog = new DeviceCatalog(devices, DeviceCatalog.MIDI_SYSTEM, MidiBus.catalog);
+			MidiBus.catalog = catalog;
+			notifyDeviceListeners(catalog);
+		}
+	}
+
+	/**
+	 * Looks up an available device by name.
+	 *
+	 * @param device_name the name of the device.
+	 * @param input true to look for an input, false for an output.
+	 * @return the device, or null if there is no such device.
+	*/
+	static MidiDevice locateDevice(String device_name, boolean input) throws MidiUnavailableException {
+		DeviceCatalog catalog = catalog();
+		MidiDevice.Info info = input ? catalog.input(device_name) : catalog.output(device_name);
+		return info == null ? null : MidiSystem.getMidiDevice(info);
+	}
+
+	/**
+	 * Tells the device listeners about the devices added and removed since the previous catalog.
+	 *
+	 * @param catalog the new catalog.
+	*/
+	static void notifyDeviceListeners(DeviceCatalog catalog) {
+		DeviceListener[] listeners = device_listeners;
+		if (listeners.length == 0) return;
+
+		for (DeviceCatalog.Removed device : catalog.removed) {
+			for (DeviceListener listener : listeners) {
+				try {
+					listener.deviceRemoved(device.info.getName(), device.input, device.output);
+				} catch(RuntimeException e) {
+					System.err.println("\nThe MidiBus Warning: A DeviceListener failed handling the removal of \""+device.info.getName()+"\": "+e);
+				}
+			}
+		}
+		for (MidiDevice.Info device : catalog.added) {
+			for (DeviceListener listener : listeners) {
+				try {
+					listener.deviceAdded(device.getName(), catalog.isInput(device), catalog.isOutput(device));
+				} catch(RuntimeException e) {
+					System.err.println("\nThe MidiBus Warning: A DeviceListener failed handling the addition of \""+device.getName()+"\": "+e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a listener which will be notified each time a MIDI device is plugged in or unplugged, as noticed by {@link #findMidiDevices()} or the watcher started by {@link #watchDevices(int)}. If the listener has already been added, it will not be added again.
+	 *
+	 * @param listener the listener to add.
+	 * @return true if and only the listener was sucessfully added.
+	 * @see #removeDeviceListener(DeviceListener)
+	 * @see #watchDevices(int)
+	*/
+	static public boolean addDeviceListener(DeviceListener listener) {
+		synchronized (catalog_lock) {
+			for (DeviceListener current : device_listeners) if (current == listener) return false;
+			DeviceListener[] listeners = Arrays.copyOf(device_listeners, device_listeners.length + 1);
+			listeners[listeners.length - 1] = listener;
+			device_listeners = listeners;
+			return true;
+		}
+	}
+
+	/**
+	 * Removes a given device listener.
+	 *
+	 * @param listener the listener to remove.
+	 * @return true if and only the listener was sucessfully removed.
+	 * @see #addDeviceListener(DeviceListener)
+	*/
+	static public boolean removeDeviceListener(DeviceListener listener) {
+		synchronized (catalog_lock) {
+			for (int i = 0;i < device_listeners.length;i++) {
+				if (device_listeners[i] == listener) {
+					device_listeners = remove(device_listeners, i);
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Starts rescanning the MIDI devices in the background every interval milliseconds, so devices plugged in while the program runs show up in {@link #list()} and can be added without calling {@link #findMidiDevices()}, and {@link DeviceListener DeviceListeners} are told about them. Only the devices which weren't there before are probed, so a rescan is cheap. When CoreMIDI4J is in use, changes to the MIDI setup also trigger a rescan right away.
+	 * <p>
+	 * Calling this again while the watcher runs changes its interval.
+	 *
+	 * @param interval how long to wait between rescans, in milliseconds.
+	 * @see #stopWatchingDevices()
+	 * @see #addDeviceListener(DeviceListener)
+	*/
+	static public void watchDevices(int interval) {
+		synchronized (catalog_lock) {
+			if (device_watcher == null) {
+				catalog();
+				device_watcher = new DeviceWatcher(interval);
+			} else {
+				device_watcher.interval(interval);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the MIDI devices are being rescanned in the background.
+	 *
+	 * @return true if the device watcher is running.
+	 * @see #watchDevices(int)
+	*/
+	static public boolean watchingDevices() {
+		synchronized (catalog_lock) {
+			return device_watcher != null;
+		}
+	}
+
+	/**
+	 * Stops rescanning the MIDI devices in the background.
+	 *
+	 * @see #watchDevices(int)
+	*/
+	static public void stopWatchingDevices() {
+		DeviceWatcher watcher;
+		synchronized (catalog_lock) {
+			watcher = device_watcher;
+			device_watcher = null;
+		}
+		//Outside the lock, a rescan in progress needs it to finish
+		if (watcher != null) watcher.shutdown();
+	}
+
+	/**
+	 * Returns the installed devices as last found by findMidiDevices(), finding them first if that never happened.
+	 *
+	 * @return the device catalog.
+	*/
+	static DeviceCatalog catalog() {
+		DeviceCatalog catalog = MidiBus.catalog;
+		if (catalog == null) {
+			findMidiDevices();
+			catalog = MidiBus.catalog;
+		}
+		return catalog;
+	}
+	
+	/**
+	 * Returns the names of all the available input devices.
+	 *
+	 * @return the names of the available inputs.
+	 * @see #list()
+	 * @see #availableOutputs()
+	 * @see #unavailableDevices()
+	*/
+	static public String[] availableInputs() {
+		return catalog().input_names.clone();
+	}
+	
+	/**
+	 * Returns the names of all the available output devices.
+	 *
+	 * @return the names of the available outputs.
+	 * @see #list()
+	 * @see #availableInputs()
+	 * @see #unavailableDevices()
+	*/
+	static public String[] availableOutputs() {
+		return catalog().output_names.clone();
+	}
+	
+	/**
+	 * Returns the names of all the unavailable devices.
+	 *
+	 * @return the names of the unavailable devices.
+	 * @see #list()
+	 * @see #availableInputs()
+	 * @see #availableOutputs()
+	*/
+	static public String[] unavailableDevices() {
+		return catalog().unavailable_names.clone();
+	}
+	
+	/**
+	 * Returns the MidiDevice.Info of all the available input devices.
+	 *
+	 * @return the MidiDevice.Info of the available inputs.
+	*/
+	static MidiDevice.Info[] availableInputsMidiDeviceInfo() {
+		return catalog().inputs.clone();
+	}
+	
+	/**
+	 * Returns the MidiDevice.Info of all the available output devices.
+	 *
+	 * @return the MidiDevice.Info of the available output.
+	*/
+	static MidiDevice.Info[] availableOutputsMidiDeviceInfo() {
+		return catalog().outputs.clone();
+	}
+	
+	/**
+	 * Returns the MidiDevice.Info of all the unavailable devices.
+	 *
+	 * @return the MidiDevice.Info of the unavailable devices.
+	*/
+	static MidiDevice.Info[] unavailableMidiDeviceInfo() {
+		return catalog().unavailable.clone();
+	}
+		
+	/* -- Nested Classes -- */
+	
+	private class MReceiver implements Receiver, InputDemux.Subscriber {
+
+		InboundMessage inbound;
+		AtomicBoolean inbound_busy;
+
+		volatile InboundQueue queue;
+
+		MReceiver() {
+			inbound = new InboundMessage();
+			inbound_busy = new AtomicBoolean();
+		}
+		
+		public void close() {
+
+		}
+		
+	 	public void send(MidiMessage message, long timeStamp) {
+			if (offer(message, timeStamp)) return;
+
+			//The message is decoded once and shared by all listeners and the parent. The InboundMessage is recycled,
+			//unless this receiver is reentered (e.g. a callback sending to a loopback device), then a fresh one is used.
+			boolean recycled = inbound_busy.compareAndSet(false, true);
+			InboundMessage decoded = recycled ? inbound : new InboundMessage();
+
+			try {
+				deliver(decoded.set(message, timeStamp));
+			} finally {
+				if (recycled) inbound_busy.set(false);
+			}
+		}
+
+		public boolean offer(MidiMessage message, long timeStamp) {
+			InboundQueue queue = this.queue;
+			if (queue == null) return false;
+			//Asynchronous dispatch, hand the message over and let the dispatcher thread deliver it
+			queue.offer(message, timeStamp);
+			InboundDispatcher dispatcher = MidiBus.this.dispatcher;
+			if (dispatcher != null) dispatcher.wake();
+			return true;
+		}
+
+		public void deliver(InboundMessage inbound) {
+			MidiBus.this.deliver(inbound);
+		}
+		
 	}	
+
+	/**
+	 * Owns the InboundQueues of the inputs of a MidiBus with asynchronous dispatch enabled and the thread which drains them, so listener and parent callbacks never run on the MIDI subsystem's delivery threads.
+	*/
+	private class InboundDispatcher implements Runnable {
+
+		int capacity;
+		OverflowPolicy policy;
+		int budget;
+
+		volatile InboundQueue[] queues;
+		InboundMessage inbound;
+		long retired_drops;
+
+		Thread thread;
+		volatile boolean running;
+		volatile boolean sleeping;
+
+		InboundDispatcher(int capacity, OverflowPolicy policy) {
+			this.capacity = capacity;
+			this.policy = policy;
+			budget = Integer.MAX_VALUE;
+
+			queues = new InboundQueue[0];
+			inbound = new InboundMessage();
+		}
+
+		/**
+		 * Creates a new queue for an input and starts draining it.
+		*/
+		synchronized InboundQueue attach() {
+			InboundQueue queue = new InboundQueue(capacity, policy);
+			queue.coalesce = coalesceControllers;
+			queues = add(queues, queue);
+			return queue;
+		}
+
+		/**
+		 * Stops draining the queue of an input which was removed, anything still queued is discarded.
+		*/
+		synchronized void detach(InboundQueue queue) {
+			for (int i = 0;i < queues.length;i++) {
+				if (queues[i] == queue) {
+					queues = remove(queues, i);
+					break;
+				}
+			}
+			queue.close();
+			retired_drops += queue.dropped;
+		}
+
+		/**
+		 * Turns coalescing on or off for all the queues.
+		*/
+		synchronized void coalesce(boolean coalesce) {
+			for (InboundQueue queue : queues) queue.coalesce = coalesce;
+		}
+
+		/**
+		 * Returns the number of messages dropped by all the queues, past and present.
+		*/
+		synchronized long dropped() {
+			long total = retired_drops;
+			for (InboundQueue queue : queues) total += queue.dropped;
+			return total;
+		}
+
+		/**
+		 * Delivers up to budget queued messages, taking them round robin from the inputs' queues in arrival order per input. Only one thread may drain at a time.
+		*/
+		int drain(int budget) {
+			int delivered = 0;
+			boolean progress = true;
+
+			while (progress && delivered < budget) {
+				progress = false;
+				for (InboundQueue queue : queues) {
+					if (delivered < budget && queue.poll(inbound)) {
+						try {
+							deliver(inbound);
+						} catch(Throwable e) {
+							System.err.println("\nThe MidiBus Warning: Unexpected exception thrown by a MidiListener during asynchronous dispatch");
+							e.printStackTrace();
+						}
+						delivered++;
+						progress = true;
+					}
+				}
+			}
+
+			return delivered;
+		}
+
+		boolean isEmpty() {
+			for (InboundQueue queue : queues) if (!queue.isEmpty()) return false;
+			return true;
+		}
+
+		void start() {
+			running = true;
+			thread = new Thread(this, "MidiBus Dispatcher ["+bus_name+"]");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void wake() {
+			if (sleeping) LockSupport.unpark(thread);
+		}
+
+		/**
+		 * Stops the dispatcher thread once everything already queued has been delivered. Without a thread, the queues are closed and their content discarded.
+		*/
+		void shutdown() {
+			running = false;
+			if (thread == null) {
+				for (InboundQueue queue : queues) queue.close();
+				return;
+			}
+			LockSupport.unpark(thread);
+			if (Thread.currentThread() == thread) return;
+			try {
+				thread.join();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public void run() {
+			while (running) {
+				if (drain(Integer.MAX_VALUE) == 0) {
+					sleeping = true;
+					if (running && isEmpty()) LockSupport.parkNanos(this, 10000000L);
+					sleeping = false;
+				}
+			}
+			drain(Integer.MAX_VALUE);
+		}
+
+	}
 	
-	private class InputDeviceContainer {
-				
+	/**
+	 * One row entry of the listener dispatch table. The listener is pre-cast to each of the interfaces it implements, roles which don't apply to the row's message type are left null.
+	*/
+	private static class ListenerEntry {
+
+		RawMidiListener raw;
+		SimpleMidiListener simple;
+		StandardMidiListener standard;
+		ObjectMidiListener object;
+
+		//Subscription filter, which lets everything through by default
+		int channel_mask = ALL_CHANNELS;
+		int low = Integer.MIN_VALUE;
+		int high = Integer.MAX_VALUE;
+
+		ListenerEntry(MidiListener listener, boolean note_or_cc) {
+			if (listener instanceof RawMidiListener) raw = (RawMidiListener)listener;
+			if (listener instanceof StandardMidiListener) standard = (StandardMidiListener)listener;
+			if (note_or_cc && listener instanceof SimpleMidiListener) simple = (SimpleMidiListener)listener;
+			if (note_or_cc && listener instanceof ObjectMidiListener) object = (ObjectMidiListener)listener;
+		}
+
+	}
+
+	/**
+	 * The subscription of a listener added with {@link #addMidiListener(MidiListener, int, int, int, int)}.
+	*/
+	static class ListenerFilter {
+
+		int channel_mask;
+		int type_mask;
+		int low;
+		int high;
+
+		ListenerFilter(int channel_mask, int type_mask, int low, int high) {
+			this.channel_mask = channel_mask & ALL_CHANNELS;
+			this.type_mask = type_mask & ALL_TYPES;
+			this.low = low;
+			this.high = high;
+		}
+
+	}
+
+	/**
+	 * Finds the device a lost input or output can be rebound to.
+	*/
+	interface DeviceLocator {
+		/**
+		 * @param device_name the name of the device.
+		 * @param input true to look for an input, false for an output.
+		 * @return the device, or null if there is no such device right now.
+		*/
+		MidiDevice locate(String device_name, boolean input) throws MidiUnavailableException;
+	}
+
+	/**
+	 * Rebinds the inputs and outputs whose device was lost, i.e. which failed while sending or disappeared from the device list, once a device by the same name is back. Attempts are made from a thread of its own, after a delay which doubles with every failed attempt and every time the device is lost again shortly after being reconnected, so neither a device which is gone for good nor a flapping one keeps it busy. A device showing up again triggers an attempt without waiting for the longer delays.
+	*/
+	class Reconnector implements DeviceListener {
+
+		final java.util.concurrent.ScheduledExecutorService executor;
+
+		Reconnector() {
+			executor = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "MidiBus Reconnect ["+bus_name+"]");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		public void deviceAdded(String device_name, boolean input, boolean output) {
+			for (DeviceContainer container : attached()) {
+				if (!container.info.getName().equals(device_name) || !(container.input() ? input : output)) continue;
+				synchronized (container) {
+					if (container.lost) schedule(container, container.last_attempt + delay(container.flaps));
+				}
+			}
+		}
+
+		public void deviceRemoved(String device_name, boolean input, boolean output) {
+			for (DeviceContainer container : attached()) {
+				if (container.info.getName().equals(device_name) && (container.input() ? input : output)) lost(container);
+			}
+		}
+
+		/**
+		 * Marks an input or output as lost, closes what is left of its connection and schedules the first attempt to reconnect it.
+		*/
+		void lost(DeviceContainer container) {
+			synchronized (container) {
+				if (container.lost) return;
+				container.lost = true;
+				long now = System.nanoTime();
+				if (container.reconnects > 0 && now - container.reconnected_at < RECONNECT_MAX_DELAY * 1000000L) container.flaps++;
+				else container.flaps = 0;
+				container.failures = 0;
+				container.unbind();
+				schedule(container, now + delay(container.flaps));
+			}
+			System.err.println("\nThe MidiBus Warning: Lost the connection to \""+container.info.getName()+"\", it will be reconnected when it is back");
+		}
+
+		/**
+		 * Schedules an attempt to reconnect, unless one is already scheduled earlier. The container's lock must be held.
+		 *
+		 * @param at when to attempt, in System.nanoTime() time.
+		*/
+		void schedule(DeviceContainer container, long at) {
+			if (container.attempt != null && !container.attempt.isDone()) {
+				if (container.attempt_at <= at) return;
+				container.attempt.cancel(false);
+			}
+			container.attempt_at = at;
+			try {
+				container.attempt = executor.schedule(() -> attempt(container), Math.max(0, at - System.nanoTime()), java.util.concurrent.TimeUnit.NANOSECONDS);
+			} catch(java.util.concurrent.RejectedExecutionException e) {
+				//Automatic reconnection was just disabled
+			}
+		}
+
+		void attempt(DeviceContainer container) {
+			if (!container.lost) return;
+
+			MidiDevice device;
+			try {
+				findMidiDevices();
+				device = device_locator.locate(container.info.getName(), container.input());
+			} catch(MidiUnavailableException | RuntimeException e) {
+				device = null;
+			}
+
+			//Under the MidiBus' lock, so the input or output can't be removed meanwhile
+			synchronized (MidiBus.this) {
+				synchronized (container) {
+					//This attempt is running, so it doesn't hold back the next one
+					if (container.attempt != null && container.attempt_at <= System.nanoTime()) container.attempt = null;
+					container.last_attempt = System.nanoTime();
+					if (!container.lost || !isAttached(container)) return;
+					if (device != null) {
+						try {
+							container.rebind(device);
+							container.lost = false;
+							container.failures = 0;
+							container.reconnected_at = container.last_attempt;
+							container.reconnects++;
+							System.err.println("\nThe MidiBus Warning: Reconnected to \""+container.info.getName()+"\"");
+							return;
+						} catch(MidiUnavailableException | RuntimeException e) {
+							//Not ready yet
+						}
+					}
+					container.failures++;
+					schedule(container, container.last_attempt + delay(container.failures + container.flaps));
+				}
+			}
+		}
+
+		/**
+		 * Returns the delay before an attempt, after the given number of failures, in nanoseconds.
+		*/
+		long delay(int failures) {
+			return Math.min(RECONNECT_MIN_DELAY << Math.min(failures, 16), RECONNECT_MAX_DELAY) * 1000000L;
+		}
+
+		DeviceContainer[] attached() {
+			InputDeviceContainer[] inputs = input_devices;
+			OutputDeviceContainer[] outputs = output_devices;
+			DeviceContainer[] attached = new DeviceContainer[inputs.length + outputs.length];
+			System.arraycopy(inputs, 0, attached, 0, inputs.length);
+			System.arraycopy(outputs, 0, attached, inputs.length, outputs.length);
+			return attached;
+		}
+
+		boolean isAttached(DeviceContainer container) {
+			for (DeviceContainer attached : attached()) if (attached == container) return true;
+			return false;
+		}
+
+		void shutdown() {
+			executor.shutdownNow();
+		}
+
+	}
+
+	private abstract class DeviceContainer {
+
 		MidiDevice.Info info;
+		MidiDevice device;
+
+		//Whether the device was given back to the registry
+		boolean released;
+		//Set when the device stopped working, until it is rebound
+		volatile boolean lost;
+		//Failed attempts since the device was lost, and how many times in a row it was lost shortly after being reconnected
+		int failures;
+		int flaps;
+		long last_attempt;
+		long reconnected_at;
+		volatile long reconnects;
+		//The next attempt to reconnect, if one is scheduled
+		java.util.concurrent.ScheduledFuture<?> attempt;
+		long attempt_at;
+
+		DeviceContainer(MidiDevice device) {
+			this.info = device.getDeviceInfo();
+			this.device = device;
+		}
+
+		abstract boolean input();
+
+		/**
+		 * Closes the connection to the lost device, quietly since it is probably broken, and gives it back so the registry closes it and opens the device anew when it is back.
+		*/
+		abstract void unbind();
+
+		/**
+		 * Connects to the device again, keeping everything else about the input or output.
+		*/
+		abstract void rebind(MidiDevice device) throws MidiUnavailableException;
+
+		/**
+		 * Gives the device back to the registry, which closes it if no other input or output uses it.
+		*/
+		synchronized void release() {
+			if (released) return;
+			released = true;
+			DeviceRegistry.release(device);
+		}
+
+		/**
+		 * Swaps in the device a lost input or output was rebound to. The previous one was given back when it was unbound.
+		*/
+		synchronized void replace(MidiDevice device) {
+			release();
+			this.device = device;
+			this.info = device.getDeviceInfo();
+			released = false;
+		}
+
+	}
+
+	private class InputDeviceContainer extends DeviceContainer {
 		
-		Transmitter transmitter;
-		Receiver receiver;
+		MReceiver receiver;
 		
 		InputDeviceContainer(MidiDevice device) {
-			this.info = device.getDeviceInfo();
+			super(device);
+		}
+
+		boolean input() {
+			return true;
+		}
+
+		synchronized void unbind() {
+			DeviceRegistry.unsubscribe(device, receiver);
+			release();
+		}
+
+		synchronized void rebind(MidiDevice device) throws MidiUnavailableException {
+			device = DeviceRegistry.acquire(device);
+			try {
+				//The same receiver, so the listeners, filters and dispatcher queue carry over
+				DeviceRegistry.subscribe(device, receiver);
+			} catch(MidiUnavailableException | RuntimeException e) {
+				DeviceRegistry.release(device);
+				throw e;
+			}
+			replace(device);
+		}
+
+		/**
+		 * Stops listening to the device and gives it back.
+		*/
+		void close() {
+			synchronized (this) {
+				//A lost input was already unsubscribed and given back
+				if (!released) DeviceRegistry.unsubscribe(device, receiver);
+			}
+			receiver.close();
+			detachInboundQueue(this);
+			release();
 		}
 		
 		public boolean equals(Object container) {
@@ -1898,16 +3580,352 @@ public class MidiBus {
 		
 	}
 	
-	private class OutputDeviceContainer {
+	/**
+	 * A message held back by an output until the SysEx message being streamed to it is finished.
+	*/
+	private static class HeldMessage {
 
-		MidiDevice.Info info;
-		MidiDevice device;
+		final MidiMessage message;
+		final long timestamp;
+
+		HeldMessage(MidiMessage message, long timestamp) {
+			this.message = message;
+			this.timestamp = timestamp;
+		}
+
+	}
+
+	private class OutputDeviceContainer extends DeviceContainer implements Receiver {
 
 		Receiver receiver;
+		boolean closed;
+		//Whether the device reports a position, which future timestamps are relative to
+		boolean timestamps;
+		//The writer queue, if asynchronous output is enabled
+		volatile OutboundQueue queue;
+		//Set while the queue is being written out and replaced, senders which find it stopped wait on swap_lock meanwhile
+		final Object swap_lock = new Object();
+		boolean swapping;
+		//What was last sent, if redundant messages are suppressed
+		OutputState state;
+		//The notes sounding on the output
+		final ActiveNotes notes = new ActiveNotes();
+		//Bytes per second and burst size the writer paces this output to, rate is 0 if it isn't limited
+		int rate;
+		int burst;
+		//Whether a streamed SysEx message is partly sent, and the messages held back until it is finished
+		boolean streaming;
+		final java.util.ArrayDeque<HeldMessage> held = new java.util.ArrayDeque<HeldMessage>();
 
 		OutputDeviceContainer(MidiDevice device) {
-			this.info = device.getDeviceInfo();
-			this.device = device;
+			super(device);
+			this.timestamps = device.getMicrosecondPosition() != -1;
+		}
+
+		boolean input() {
+			return false;
+		}
+
+		synchronized void unbind() {
+			try {
+				receiver.close();
+			} catch(RuntimeException e) {
+				//Already broken
+			}
+			release();
+		}
+
+		synchronized void rebind(MidiDevice device) throws MidiUnavailableException {
+			device = DeviceRegistry.acquire(device);
+			try {
+				receiver = device.getReceiver();
+			} catch(MidiUnavailableException | RuntimeException e) {
+				DeviceRegistry.release(device);
+				throw e;
+			}
+			replace(device);
+			timestamps = device.getMicrosecondPosition() != -1;
+			//Whatever the device was in before is gone, including a partly sent SysEx message
+			if (state != null) state.reset();
+			notes.clear();
+			//Like every message sent to a lost output, those held back for its SysEx stream are dropped
+			streaming = false;
+			held.clear();
+		}
+
+		/**
+		 * Passes a message to the receiver, or to the writer queue if there is one.
+		*/
+		void send(MidiMessage message) {
+			while (true) {
+				OutboundQueue queue = this.queue;
+				if (queue != null && queue.offer(message, OutboundQueue.NOW)) return;
+				if (awaitSwap()) continue;
+				send(message, OutboundQueue.NOW);
+				return;
+			}
+		}
+
+		/**
+		 * Passes a message to the receiver with a timestamp in the future, for the device to send it when it is due.
+		*/
+		void sendLater(MidiMessage message, long delay) {
+			long timestamp = device.getMicrosecondPosition() + Math.max(delay, 0);
+			while (true) {
+				OutboundQueue queue = this.queue;
+				if (queue != null && queue.offer(message, timestamp)) return;
+				if (awaitSwap()) continue;
+				send(message, timestamp);
+				return;
+			}
+		}
+
+		/**
+		 * Waits for the queue being swapped out, if any, to be written out, so a message it didn't take doesn't overtake the ones it still holds.
+		 *
+		 * @return true if a swap was waited for and the message should be offered to the new queue, false to write it directly.
+		*/
+		boolean awaitSwap() {
+			synchronized (swap_lock) {
+				if (!swapping) return false;
+				boolean interrupted = false;
+				while (swapping) {
+					try {
+						swap_lock.wait();
+					} catch(InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				if (interrupted) Thread.currentThread().interrupt();
+				return true;
+			}
+		}
+
+		/**
+		 * Passes a message to the receiver. Receivers aren't required to be thread safe, so this is serialised per output.
+		 * <p>
+		 * While a streamed SysEx message is partly sent, anything but its packets and realtime messages is held back until its last packet, since the device would take it as the end of the SysEx message.
+		 *
+		 * @param message the message.
+		 * @param timestamp the timestamp, or {@link OutboundQueue#NOW} for the current one.
+		*/
+		public synchronized void send(MidiMessage message, long timestamp) {
+			//A sender may still be iterating over a snapshot which contained this output when it was removed
+			if (closed || lost) return;
+
+			if (message instanceof SysexTransfer.Packet) {
+				write(message, timestamp);
+				if (lost) return;
+				byte[] packet = message.getMessage();
+				streaming = (packet[packet.length - 1] & 0xFF) != ShortMessage.END_OF_EXCLUSIVE;
+				if (!streaming) flushHeld();
+				return;
+			}
+			if (streaming && message.getStatus() < 0xF8) {
+				//Recycled messages are reused as soon as the send returns
+				if (message instanceof OutboundMessage) message = new OutboundMessage().set(message.getStatus(), ((ShortMessage)message).getData1(), ((ShortMessage)message).getData2());
+				held.add(new HeldMessage(message, timestamp));
+				return;
+			}
+			write(message, timestamp);
+		}
+
+		/**
+		 * Writes a message to the receiver. Must hold the lock.
+		*/
+		private void write(MidiMessage message, long timestamp) {
+			// Receiver.send()'s timestamp is in microseconds relative to when the
+			// device was opened (starting at 0), NOT wall-clock. Per the javadoc,
+			// -1 means "send immediately / no timestamp". When sendTimestamps is
+			// true we pass the device's current microsecond position so the
+			// message carries a valid timestamp. When false we pass -1.
+			if (state != null && !state.update(message)) return;
+			notes.update(message);
+			if (timestamp == OutboundQueue.NOW) timestamp = sendTimestamps ? device.getMicrosecondPosition() : -1;
+			try {
+				receiver.send(message, timestamp);
+			} catch(IllegalStateException e) {
+				Reconnector reconnector = MidiBus.this.reconnector;
+				if (reconnector == null) throw e;
+				//The receiver was closed under us, the device is gone
+				reconnector.lost(this);
+			}
+		}
+
+		/**
+		 * Sends the messages held back during a SysEx stream, in order. Must hold the lock.
+		*/
+		private void flushHeld() {
+			while (!held.isEmpty() && !lost) {
+				HeldMessage message = held.poll();
+				write(message.message, message.timestamp);
+			}
+			held.clear();
+		}
+
+		/**
+		 * Ends a partly sent SysEx message, so the device doesn't wait for the rest of it, and sends what was held back meanwhile. Must hold the lock.
+		*/
+		private void endStream() {
+			if (!streaming) return;
+			streaming = false;
+			try {
+				write(SysexTransfer.packet(new byte[] { (byte)ShortMessage.END_OF_EXCLUSIVE }), OutboundQueue.NOW);
+			} catch(InvalidMidiDataException e) {
+				//A lone 0xF7 packet is valid
+			}
+			flushHeld();
+		}
+
+		/**
+		 * Passes every message of a batch to the receiver, holding the lock until the whole batch has been sent, or queues them all at once. The short messages must have been validated.
+		*/
+		void send(MidiBatch batch, boolean recycle) {
+			while (true) {
+				OutboundQueue queue = this.queue;
+				if (queue != null && queue.offer(batch)) return;
+				if (!awaitSwap()) break;
+			}
+
+			synchronized (this) {
+				if (closed || lost) return;
+
+				if (streaming) {
+					//Held back one by one until the SysEx stream is finished, realtime messages still go out
+					for (int i = 0;i < batch.size;i++) {
+						int event = batch.events[i];
+						send(event == -1 ? batch.messages[i] : new OutboundMessage().set(event & 0xFF, (event >> 8) & 0xFF, event >>> 16), OutboundQueue.NOW);
+					}
+					return;
+				}
+
+				OutboundMessage outbound = recycle ? OutboundMessage.acquire() : null;
+				try {
+					for (int i = 0;i < batch.size;i++) {
+						int event = batch.events[i];
+						MidiMessage message;
+						if (event == -1) {
+							message = batch.messages[i];
+							if (state != null && !state.update(message)) continue;
+							notes.update(message);
+						} else {
+							if (state != null && !state.update(event & 0xFF, (event >> 8) & 0xFF, event >>> 16)) continue;
+							notes.update(event & 0xFF, (event >> 8) & 0xFF, event >>> 16);
+							message = (recycle ? outbound : new OutboundMessage()).set(event & 0xFF, (event >> 8) & 0xFF, event >>> 16);
+						}
+						try {
+							receiver.send(message, sendTimestamps ? device.getMicrosecondPosition() : -1);
+						} catch(IllegalStateException e) {
+							Reconnector reconnector = MidiBus.this.reconnector;
+							if (reconnector == null) throw e;
+							reconnector.lost(this);
+							return;
+						}
+					}
+				} finally {
+					if (outbound != null) outbound.release();
+				}
+			}
+		}
+
+		/**
+		 * Starts writing through a queue and a thread of this output's own.
+		*/
+		void startQueue(int capacity, OverflowPolicy policy) {
+			OutboundQueue queue = new OutboundQueue(MidiBus.this, this, info.getName(), capacity, policy);
+			queue.rateLimit(rate, burst);
+			swapQueue(queue, true);
+		}
+
+		/**
+		 * Sets the bandwidth this output's writer paces it to, 0 for no limit.
+		*/
+		void rateLimit(int rate, int burst) {
+			this.rate = rate;
+			this.burst = burst;
+			OutboundQueue queue = this.queue;
+			if (queue != null) queue.rateLimit(rate, burst);
+		}
+
+		/**
+		 * Goes back to writing on the senders' threads.
+		 *
+		 * @param drain true to write everything already queued first, false to discard it.
+		*/
+		void stopQueue(boolean drain) {
+			swapQueue(null, drain);
+		}
+
+		/**
+		 * Stops the current queue, if any, and only then switches to the next one. Senders which find the current queue stopped wait for it to be written out, so no message overtakes the ones still queued.
+		 *
+		 * @param next the new queue, or null to write on the senders' threads.
+		 * @param drain true to write everything already queued first, false to discard it.
+		*/
+		void swapQueue(OutboundQueue next, boolean drain) {
+			synchronized (swap_lock) {
+				swapping = true;
+			}
+			try {
+				OutboundQueue stopped = queue;
+				if (stopped != null) stopped.shutdown(drain);
+				queue = next;
+			} finally {
+				synchronized (swap_lock) {
+					swapping = false;
+					swap_lock.notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Sends a NoteOff for every note sounding on this output.
+		*/
+		void allNotesOff() {
+			int[] sounding;
+			synchronized (this) {
+				if (notes.count == 0) return;
+				sounding = notes.sounding();
+			}
+			for (int note : sounding) send(new OutboundMessage().set(ShortMessage.NOTE_OFF | note >> 7, note & 0x7F, 0));
+		}
+
+		/**
+		 * Releases the sounding notes and closes the receiver, once any message being passed to it has been sent, then gives the device back. Whatever is still queued is discarded.
+		*/
+		public void close() {
+			stopQueue(false);
+			synchronized (this) {
+				endStream();
+			}
+			allNotesOff();
+			synchronized (this) {
+				closed = true;
+				receiver.close();
+			}
+			release();
+		}
+
+		/**
+		 * Starts or stops remembering what was sent, to suppress redundant messages.
+		*/
+		synchronized void suppressRedundant(boolean suppress) {
+			if (suppress && state == null) state = new OutputState();
+			else if (!suppress) state = null;
+		}
+
+		synchronized void resync() {
+			if (state != null) state.reset();
+		}
+
+		synchronized long suppressed() {
+			return state == null ? 0 : state.suppressed;
+		}
+
+		OutputStats stats() {
+			OutboundQueue queue = this.queue;
+			if (queue == null) return new OutputStats(info.getName(), 0, 0, 0, 0, 0, 0, 0);
+			return queue.stats(info.getName());
 		}
 		
 		public boolean equals(Object container) {
@@ -118,6 +118,38 @@ public class Note {
 		this.bus_name = bus_name;
 	}
 
+	/**
+	 * Returns a new Note with the same fields as this one. Use this to keep a Note received from a MidiBus with {@link MidiBus#recycleEventObjects(boolean)} enabled beyond the callback it was passed to.
+	 *
+	 * @return a copy of this Note
+	*/
+	public Note copy() {
+		return new Note(channel, pitch, velocity, (int)ticks, timestamp, bus_name);
+	}
+
+	/**
+	 * Overwrites all the fields of this Note, used to recycle Note objects.
+	 * 
+	 * @param channel the channel of the Note
+	 * @param pitch the pitch of the Note
+	 * @param velocity the velocity of the Note
+	 * @param timestamp the timestamp of the Note
+	 * @param bus_name the name of MidiBus associated with the Note 
+	 * @return this Note
+	*/
+	Note set(int channel, int pitch, int velocity, long timestamp, String bus_name) {
+		this.channel = channel;
+		this.pitch = pitch;
+		this.velocity = velocity;
+
+		this.ticks = 0;
+
+		this.timestamp = timestamp;
+		this.bus_name = bus_name;
+
+		return this;
+	}
+
 	/**
 	 * Set channel of the Note
 	 * 
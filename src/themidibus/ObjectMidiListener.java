@@ -21,6 +21,8 @@ package themidibus;
 
 /**
  * A ObjectMidiListener can be notified of incomming NoteOn, NoteOff and ControllerChange events via {@link Note} and {@link ControlChange} objects, usually by a MidiBus object which it is connected to. Typically it would analyse and react to incomming messages in some useful way.
+ * <p>
+ * If the MidiBus has {@link MidiBus#recycleEventObjects(boolean)} enabled, the objects passed to these methods are reused for later messages and must not be kept once the method returns; keep {@link Note#copy()} or {@link ControlChange#copy()} instead.
  *
  * @version 010
  * @author Severin Smith, Marc Koderer
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import javax.sound.midi.ShortMessage;
+
+/**
+ * An OutboundMessage is a ShortMessage which MidiBus fills in directly from status and data bytes it has already validated, instead of going through ShortMessage.setMessage() and its checked exceptions. With {@link MidiBus#recycleOutboundMessages(boolean)} enabled each sending thread reuses the same instance, so sending short messages doesn't allocate.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#recycleOutboundMessages(boolean)
+*/
+class OutboundMessage extends ShortMessage {
+
+	static final ThreadLocal<OutboundMessage> recycled = ThreadLocal.withInitial(OutboundMessage::new);
+
+	/** Set while the recycled instance is being sent, so a reentrant send (e.g. from a callback on a loopback device) uses a new one instead. */
+	boolean busy;
+
+	/**
+	 * Constructs a new OutboundMessage.
+	*/
+	OutboundMessage() {
+		super(new byte[3]);
+	}
+
+	/**
+	 * Returns the calling thread's recycled OutboundMessage, or a new one if it is already being sent. Must be given back with {@link #release()}.
+	 *
+	 * @return an OutboundMessage which isn't being sent.
+	*/
+	static OutboundMessage acquire() {
+		OutboundMessage message = recycled.get();
+		if (message.busy) message = new OutboundMessage();
+		message.busy = true;
+		return message;
+	}
+
+	/**
+	 * Marks this message as no longer being sent.
+	*/
+	void release() {
+		busy = false;
+	}
+
+	/**
+	 * Overwrites this message. The bytes must have been checked with {@link #validate(int, int, int)}.
+	 *
+	 * @param status the status byte.
+	 * @param data1 the first data byte, ignored if the message has none.
+	 * @param data2 the second data byte, ignored if the message has less than two.
+	 * @return this message.
+	*/
+	OutboundMessage set(int status, int data1, int data2) {
+		length = InboundMessage.length(status);
+		data[0] = (byte)status;
+		data[1] = (byte)(length > 1 ? data1 : 0);
+		data[2] = (byte)(length > 2 ? data2 : 0);
+		return this;
+	}
+
+	/**
+	 * Checks a short message the same way ShortMessage.setMessage(int, int, int) does, without throwing.
+	 *
+	 * @param status the status byte.
+	 * @param data1 the first data byte.
+	 * @param data2 the second data byte.
+	 * @return null if the message is valid, otherwise the reason it isn't.
+	*/
+	static String validate(int status, int data1, int data2) {
+		if (status < 0x80 || status > 0xFF || status == 0xF0 || status == 0xF4 || status == 0xF5) return "Invalid status byte";
+		int length = InboundMessage.length(status);
+		if (length > 1 && (data1 < 0 || data1 > 127)) return "data1 out of range";
+		if (length > 2 && (data2 < 0 || data2 > 127)) return "data2 out of range";
+		return null;
+	}
+
+}
@@ -0,0 +1,373 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An OutboundQueue is a bounded ring buffer of messages waiting to be written to one output, with a writer thread of its own. Any number of threads may queue messages, so a stalled output only backs up its own queue instead of blocking the senders and the other outputs.
+ * <p>
+ * The ShortMessages created by MidiBus are stored as primitives, since they may be recycled as soon as the send returns, and the writer rebuilds them. Other messages are stored by reference. When the queue is full the {@link OverflowPolicy} decides whether the sender waits, the oldest message is discarded or the new message is discarded.
+ * <p>
+ * With a rate limit the writer paces the output with a token bucket modelling the wire's bandwidth, and the queue is split in three lanes which each hold up to the capacity: realtime messages are written first, then note offs, then everything else. Note ons stay in the bulk lane, in order with the program changes, controller changes and other channel messages queued before them, and a note off waits in the bulk lane too while the note on it ends is still queued there, so it never overtakes it. While a controller change, pitch bend or channel pressure is waiting in the bulk lane, a newer one for the same controller and channel replaces its value instead of being queued behind it.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#asyncOutput(int, OverflowPolicy)
+ * @see MidiBus#rateLimit(String, int, int)
+*/
+class OutboundQueue implements Runnable {
+
+	/** Timestamp of a message which gets the output's current timestamp when it is written. */
+	static final long NOW = Long.MIN_VALUE;
+
+	static final int REALTIME = 0;
+	static final int NOTE_OFFS = 1;
+	static final int BULK = 2;
+
+	final MidiBus bus;
+	final Receiver output;
+	final int capacity;
+	final OverflowPolicy policy;
+
+	//Per lane rings. Short messages packed as status | data1 << 8 | data2 << 16, or -1 where the entry is in messages
+	final int[][] events;
+	final MidiMessage[][] messages;
+	final long[][] timestamps;
+	final long[][] enqueued;
+	final long[] heads;
+	final long[] tails;
+
+	//Position in the bulk lane of the last message queued for each coalescing slot
+	final long[] slot_positions;
+
+	//Position in the bulk lane of the last note on queued for each channel and note
+	final long[] note_on_positions;
+
+	//Bytes per second, 0 when the output isn't rate limited, and the bytes which may be sent in a burst
+	int rate;
+	int burst;
+	//When the bytes written so far will have gone down the wire, in System.nanoTime() time
+	long wire_free;
+
+	long written;
+	long dropped;
+	long thinned;
+	long total_latency;
+	long max_latency;
+
+	Thread thread;
+	boolean running;
+
+	/**
+	 * Constructs a new OutboundQueue and starts its writer thread.
+	 *
+	 * @param bus the MidiBus the output belongs to.
+	 * @param output where the writer passes the messages, with their timestamp or {@link #NOW}.
+	 * @param name the name of the output.
+	 * @param capacity the number of messages the queue, or each of its lanes, can hold.
+	 * @param policy what to do when the queue is full.
+	*/
+	OutboundQueue(MidiBus bus, Receiver output, String name, int capacity, OverflowPolicy policy) {
+		this.bus = bus;
+		this.output = output;
+		this.capacity = Math.max(capacity, 1);
+		this.policy = policy;
+
+		events = new int[3][this.capacity];
+		messages = new MidiMessage[3][this.capacity];
+		timestamps = new long[3][this.capacity];
+		enqueued = new long[3][this.capacity];
+		heads = new long[3];
+		tails = new long[3];
+
+		slot_positions = new long[InboundQueue.CHANNEL_PRESSURE_SLOTS + 16];
+		Arrays.fill(slot_positions, -1);
+		note_on_positions = new long[16 * 128];
+		Arrays.fill(note_on_positions, -1);
+
+		running = true;
+		thread = new Thread(this, "MidiBus Writer ["+bus.getBusName()+" -> "+name+"]");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Sets the bandwidth the writer paces the output to.
+	 *
+	 * @param rate the bytes per second, 0 to write as fast as the output accepts.
+	 * @param burst the bytes which may be written at once before pacing starts.
+	*/
+	synchronized void rateLimit(int rate, int burst) {
+		this.rate = Math.max(rate, 0);
+		this.burst = Math.max(burst, 0);
+		wire_free = System.nanoTime();
+	}
+
+	/**
+	 * Queues a message for the output.
+	 *
+	 * @param message the message.
+	 * @param timestamp the timestamp to pass to the output, or {@link #NOW}.
+	 * @return false if the queue was stopped and the caller must write the message itself, true otherwise, even if the message was dropped.
+	*/
+	synchronized boolean offer(MidiMessage message, long timestamp) {
+		if (message instanceof OutboundMessage) {
+			OutboundMessage short_message = (OutboundMessage)message;
+			return enqueue(short_message.getStatus() | short_message.getData1() << 8 | short_message.getData2() << 16, null, timestamp);
+		}
+		return enqueue(-1, message, timestamp);
+	}
+
+	/**
+	 * Queues every message of a batch for the output. The short messages must have been validated.
+	 *
+	 * @param batch the messages.
+	 * @return false if the queue was stopped before any message was queued and the caller must write the batch itself, true otherwise.
+	*/
+	synchronized boolean offer(MidiBatch batch) {
+		if (!running) return false;
+		for (int i = 0;i < batch.size;i++) {
+			if (!enqueue(batch.events[i], batch.messages[i], NOW)) dropped++;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the lane of a message: realtime, note offs or bulk. A note on with a velocity of 0 is a note off.
+	*/
+	static int lane(int event, MidiMessage message) {
+		int status = event != -1 ? event & 0xFF : message.getStatus();
+		if (status >= 0xF8) return REALTIME;
+		if ((status & 0xF0) == ShortMessage.NOTE_OFF) return NOTE_OFFS;
+		if ((status & 0xF0) == ShortMessage.NOTE_ON && data2(event, message) == 0) return NOTE_OFFS;
+		return BULK;
+	}
+
+	/**
+	 * Returns the index of a note message's channel and note in note_on_positions.
+	*/
+	static int note(int event, MidiMessage message) {
+		if (event != -1) return (event & 0x0F) << 7 | (event >> 8) & 0x7F;
+		return (message.getStatus() & 0x0F) << 7 | ((ShortMessage)message).getData1() & 0x7F;
+	}
+
+	static int data2(int event, MidiMessage message) {
+		if (event != -1) return event >>> 16;
+		return message instanceof ShortMessage ? ((ShortMessage)message).getData2() : -1;
+	}
+
+	/**
+	 * Returns the coalescing slot of a message which may be thinned, or -1. Controllers whose meaning depends on earlier messages, like bank select and data entry, are never thinned.
+	*/
+	static int thinningSlot(int event) {
+		if (event == -1) return -1;
+		int status = event & 0xFF;
+		int data1 = (event >> 8) & 0xFF;
+		if ((status & 0xF0) == 0xB0) {
+			if (data1 == 0 || data1 == 6 || data1 == 32 || data1 == 38 || (data1 >= 96 && data1 <= 101) || data1 >= 120) return -1;
+		}
+		return InboundQueue.slot(status, data1);
+	}
+
+	/**
+	 * Writes an entry in its lane, thinning superseded values and applying the overflow policy. Must hold the lock.
+	 *
+	 * @return false if the queue was stopped, true if the message was queued, thinned or dropped.
+	*/
+	private boolean enqueue(int event, MidiMessage message, long timestamp) {
+		if (!running) return false;
+
+		//Without a rate limit everything shares one lane, so the messages keep their order
+		int lane = rate > 0 ? lane(event, message) : BULK;
+		int slot = rate > 0 ? thinningSlot(event) : -1;
+		int note = -1;
+		if (rate > 0 && (event != -1 || message instanceof ShortMessage)) {
+			int status = event != -1 ? event & 0xFF : message.getStatus();
+			if ((status & 0xE0) == 0x80) note = note(event, message);
+		}
+
+		//A note off waits behind the note on it ends
+		if (lane == NOTE_OFFS && note != -1 && note_on_positions[note] >= heads[BULK]) lane = BULK;
+
+		if (slot != -1 && slot_positions[slot] >= heads[BULK]) {
+			//The previous value is still waiting, overwrite it
+			int index = (int)(slot_positions[slot] % capacity);
+			events[BULK][index] = event;
+			timestamps[BULK][index] = timestamp;
+			thinned++;
+			return true;
+		}
+
+		while (tails[lane] - heads[lane] == capacity) {
+			//Stopped while waiting for room, the caller writes it once the queue is written out
+			if (!running) return false;
+
+			if (policy == OverflowPolicy.DROP_NEWEST) {
+				dropped++;
+				return true;
+			} else if (policy == OverflowPolicy.DROP_OLDEST) {
+				messages[lane][(int)(heads[lane] % capacity)] = null;
+				heads[lane]++;
+				dropped++;
+			} else {
+				try {
+					wait();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					dropped++;
+					return true;
+				}
+			}
+		}
+
+		int index = (int)(tails[lane] % capacity);
+		events[lane][index] = event;
+		messages[lane][index] = message;
+		timestamps[lane][index] = timestamp;
+		enqueued[lane][index] = System.nanoTime();
+		if (slot != -1) slot_positions[slot] = tails[lane];
+		if (note != -1 && lane == BULK) note_on_positions[note] = tails[lane];
+		tails[lane]++;
+
+		if (depth() == 1) notifyAll();
+		return true;
+	}
+
+	/**
+	 * Returns the number of queued messages. Must hold the lock.
+	*/
+	int depth() {
+		return (int)(tails[REALTIME] - heads[REALTIME] + tails[NOTE_OFFS] - heads[NOTE_OFFS] + tails[BULK] - heads[BULK]);
+	}
+
+	/**
+	 * Returns a snapshot of this queue's counters.
+	 *
+	 * @param name the name of the output.
+	*/
+	synchronized OutputStats stats(String name) {
+		return new OutputStats(name, capacity, depth(), written, dropped, thinned, written == 0 ? 0 : total_latency / written, max_latency);
+	}
+
+	/**
+	 * Stops the writer thread.
+	 *
+	 * @param drain true to write everything already queued first, false to discard it.
+	*/
+	void shutdown(boolean drain) {
+		synchronized (this) {
+			running = false;
+			if (!drain) {
+				dropped += depth();
+				for (int lane = REALTIME;lane <= BULK;lane++) {
+					Arrays.fill(messages[lane], null);
+					heads[lane] = tails[lane];
+				}
+			}
+			notifyAll();
+		}
+		LockSupport.unpark(thread);
+		if (Thread.currentThread() == thread) return;
+		try {
+			thread.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void run() {
+		OutboundMessage recycled = new OutboundMessage();
+
+		while (true) {
+			int event;
+			MidiMessage message;
+			long timestamp;
+			long enqueued_at;
+			long pace;
+
+			synchronized (this) {
+				while (depth() == 0 && running) {
+					try {
+						wait();
+					} catch(InterruptedException e) {
+						//Only shutdown() stops the writer
+					}
+				}
+				if (depth() == 0) return;
+
+				//Wait for the wire outside the lock, then pick whatever is most urgent by then
+				long now = System.nanoTime();
+				pace = rate > 0 ? wire_free - now - burst * 1000000000L / rate : 0;
+				if (pace <= 0) {
+					int lane = REALTIME;
+					while (tails[lane] == heads[lane]) lane++;
+
+					int index = (int)(heads[lane] % capacity);
+					event = events[lane][index];
+					message = messages[lane][index];
+					timestamp = timestamps[lane][index];
+					enqueued_at = enqueued[lane][index];
+					messages[lane][index] = null;
+					heads[lane]++;
+
+					//Senders waiting on a full lane
+					if (tails[lane] - heads[lane] == capacity - 1) notifyAll();
+
+					if (rate > 0) {
+						int length = event != -1 ? InboundMessage.length(event & 0xFF) : message.getLength();
+						wire_free = Math.max(wire_free, now) + length * 1000000000L / rate;
+					}
+				} else {
+					event = 0;
+					message = null;
+					timestamp = 0;
+					enqueued_at = 0;
+				}
+			}
+
+			if (pace > 0) {
+				LockSupport.parkNanos(this, pace);
+				continue;
+			}
+
+			if (event != -1) message = (bus.recycleOutboundMessages ? recycled : new OutboundMessage()).set(event & 0xFF, (event >> 8) & 0xFF, event >>> 16);
+
+			try {
+				output.send(message, timestamp);
+			} catch(Throwable e) {
+				System.err.println("\nThe MidiBus Warning: Unexpected exception thrown by an output during asynchronous output");
+				e.printStackTrace();
+			}
+
+			long latency = System.nanoTime() - enqueued_at;
+			synchronized (this) {
+				written++;
+				total_latency += latency;
+				if (latency > max_latency) max_latency = latency;
+			}
+		}
+	}
+
+}
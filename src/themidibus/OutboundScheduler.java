@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An OutboundScheduler holds the messages a MidiBus was asked to send in the future, in a binary heap ordered by deadline, and sends them from its own thread when they are due. Messages with the same deadline are sent in the order they were scheduled.
+ * <p>
+ * The thread parks until shortly before the next deadline, then spins for the rest of the wait, since parking alone typically wakes up tens to hundreds of microseconds late. The lateness of every message it sends is recorded, see {@link SchedulerStats}.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#sendAt(MidiMessage, long)
+*/
+class OutboundScheduler implements Runnable {
+
+	/** How long before a deadline the thread stops parking and starts spinning. */
+	static final long SPIN_NANOS = 200000L;
+	/** How long the thread parks when nothing is scheduled, new messages wake it up earlier. */
+	static final long IDLE_NANOS = 100000000L;
+
+	final MidiBus bus;
+
+	long[] deadlines;
+	long[] sequences;
+	MidiMessage[] messages;
+	//The outputs which schedule messages themselves and were already handed the message, or null
+	Receiver[][] handed;
+	int size;
+	long sequence;
+
+	long sent;
+	long total_lateness;
+	long min_lateness;
+	long max_lateness;
+
+	Thread thread;
+	volatile boolean running;
+
+	/**
+	 * Constructs a new OutboundScheduler and starts its thread.
+	 *
+	 * @param bus the MidiBus the messages are sent through.
+	*/
+	OutboundScheduler(MidiBus bus) {
+		this.bus = bus;
+
+		deadlines = new long[64];
+		sequences = new long[64];
+		messages = new MidiMessage[64];
+		handed = new Receiver[64][];
+		resetStats();
+
+		running = true;
+		thread = new Thread(this, "MidiBus Scheduler ["+bus.getBusName()+"]");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Schedules a message, waking up the thread if it is now the first one due.
+	 *
+	 * @param message the message.
+	 * @param deadline when to send it, in System.nanoTime() time.
+	 * @param handed the outputs which were already handed the message with a timestamp, or null.
+	*/
+	synchronized void schedule(MidiMessage message, long deadline, Receiver[] handed) {
+		if (size == deadlines.length) {
+			deadlines = Arrays.copyOf(deadlines, size * 2);
+			sequences = Arrays.copyOf(sequences, size * 2);
+			messages = Arrays.copyOf(messages, size * 2);
+			this.handed = Arrays.copyOf(this.handed, size * 2);
+		}
+
+		int i = size++;
+		long seq = sequence++;
+		//Sift up
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(deadline, seq, parent)) break;
+			move(parent, i);
+			i = parent;
+		}
+		set(i, deadline, seq, message, handed);
+
+		if (i == 0) LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Discards every scheduled message.
+	 *
+	 * @return the number of discarded messages.
+	*/
+	synchronized int clear() {
+		int cleared = size;
+		Arrays.fill(messages, 0, size, null);
+		Arrays.fill(handed, 0, size, null);
+		size = 0;
+		return cleared;
+	}
+
+	/**
+	 * Returns the number of messages waiting to be sent.
+	*/
+	synchronized int pending() {
+		return size;
+	}
+
+	/**
+	 * Returns a snapshot of the lateness statistics.
+	*/
+	synchronized SchedulerStats stats() {
+		return new SchedulerStats(sent, size, sent == 0 ? 0 : min_lateness, sent == 0 ? 0 : total_lateness / sent, sent == 0 ? 0 : max_lateness);
+	}
+
+	/**
+	 * Forgets the messages sent so far in the statistics.
+	*/
+	synchronized void resetStats() {
+		sent = 0;
+		total_lateness = 0;
+		min_lateness = Long.MAX_VALUE;
+		max_lateness = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Stops the thread, discarding whatever is still scheduled.
+	*/
+	void shutdown() {
+		running = false;
+		clear();
+		LockSupport.unpark(thread);
+		if (Thread.currentThread() == thread) return;
+		try {
+			thread.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void run() {
+		while (running) {
+			long deadline;
+			long wait;
+			synchronized (this) {
+				deadline = size == 0 ? 0 : deadlines[0];
+				wait = size == 0 ? IDLE_NANOS : deadline - System.nanoTime();
+			}
+
+			if (wait > SPIN_NANOS) {
+				LockSupport.parkNanos(this, wait - SPIN_NANOS);
+				//Something earlier may have been scheduled meanwhile
+				continue;
+			}
+			while (deadline - System.nanoTime() > 0) Thread.onSpinWait();
+
+			fire();
+		}
+	}
+
+	/**
+	 * Sends every message which is due.
+	*/
+	void fire() {
+		while (true) {
+			MidiMessage message;
+			Receiver[] handed;
+			long deadline;
+			synchronized (this) {
+				if (size == 0 || deadlines[0] - System.nanoTime() > 0) return;
+				deadline = deadlines[0];
+				message = messages[0];
+				handed = this.handed[0];
+				removeFirst();
+			}
+
+			try {
+				bus.sendScheduled(message, handed);
+			} catch(Throwable e) {
+				System.err.println("\nThe MidiBus Warning: Unexpected exception thrown while sending a scheduled message");
+				e.printStackTrace();
+			}
+
+			long lateness = System.nanoTime() - deadline;
+			synchronized (this) {
+				sent++;
+				total_lateness += lateness;
+				if (lateness < min_lateness) min_lateness = lateness;
+				if (lateness > max_lateness) max_lateness = lateness;
+			}
+		}
+	}
+
+	/**
+	 * Removes the root of the heap.
+	*/
+	void removeFirst() {
+		int last = --size;
+		long deadline = deadlines[last];
+		long seq = sequences[last];
+		MidiMessage message = messages[last];
+		Receiver[] handed = this.handed[last];
+		messages[last] = null;
+		this.handed[last] = null;
+		if (last == 0) return;
+
+		//Sift the last entry down from the root
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= last) break;
+			if (child + 1 < last && before(deadlines[child + 1], sequences[child + 1], child)) child++;
+			if (!before(deadlines[child], sequences[child], deadline, seq)) break;
+			move(child, i);
+			i = child;
+		}
+		set(i, deadline, seq, message, handed);
+	}
+
+	boolean before(long deadline, long seq, int i) {
+		return before(deadline, seq, deadlines[i], sequences[i]);
+	}
+
+	static boolean before(long deadline, long seq, long other_deadline, long other_seq) {
+		long diff = deadline - other_deadline;
+		return diff < 0 || (diff == 0 && seq < other_seq);
+	}
+
+	void move(int from, int to) {
+		set(to, deadlines[from], sequences[from], messages[from], handed[from]);
+	}
+
+	void set(int i, long deadline, long seq, MidiMessage message, Receiver[] handed) {
+		deadlines[i] = deadline;
+		sequences[i] = seq;
+		messages[i] = message;
+		this.handed[i] = handed;
+	}
+
+}
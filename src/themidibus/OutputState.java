@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import java.util.Arrays;
+
+/**
+ * An OutputState remembers the state a MidiBus last put an output's channels in: controller values, programs, pitch bends, channel pressures and how many NoteOns each note has received since it was last off. It is used to skip messages which wouldn't change anything on the device.
+ * <p>
+ * Only messages which set an absolute value are skipped. NoteOns are always sent since they retrigger the note, and a NoteOff is only skipped once the note got a NoteOff for every NoteOn, since a synth which stacks voices needs one per NoteOn. Controllers whose meaning depends on what was sent before (data entry and increments, RPN/NRPN selection, channel mode messages) are never skipped. Anything the cache can't follow, e.g. a SysEx or a System Reset, makes it forget everything.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#suppressRedundant(boolean)
+*/
+class OutputState {
+
+	static final int UNKNOWN = -1;
+	static final int NOTE_OFF = 0;
+
+	final int[] controllers = new int[16*128];
+	final int[] programs = new int[16];
+	final int[] pitch_bends = new int[16];
+	final int[] pressures = new int[16];
+	//NoteOns not yet matched by a NoteOff, NOTE_OFF when the note is off and UNKNOWN when it isn't known
+	final int[] notes = new int[16*128];
+
+	long suppressed;
+
+	/**
+	 * Constructs a new OutputState which knows nothing about the output.
+	*/
+	OutputState() {
+		reset();
+	}
+
+	/**
+	 * Forgets everything, so the next message of every kind is sent.
+	*/
+	void reset() {
+		Arrays.fill(controllers, UNKNOWN);
+		Arrays.fill(programs, UNKNOWN);
+		Arrays.fill(pitch_bends, UNKNOWN);
+		Arrays.fill(pressures, UNKNOWN);
+		Arrays.fill(notes, UNKNOWN);
+	}
+
+	/**
+	 * Records a message about to be sent to the output.
+	 *
+	 * @param message the message.
+	 * @return true if the message must be sent, false if it wouldn't change the state of the output.
+	*/
+	boolean update(MidiMessage message) {
+		if (message instanceof ShortMessage) {
+			ShortMessage short_message = (ShortMessage)message;
+			return update(short_message.getStatus(), short_message.getData1(), short_message.getData2());
+		}
+		if (message instanceof SysexMessage) reset();
+		return true;
+	}
+
+	/**
+	 * Records a short message about to be sent to the output.
+	 *
+	 * @param status the status byte.
+	 * @param data1 the first data byte.
+	 * @param data2 the second data byte.
+	 * @return true if the message must be sent, false if it wouldn't change the state of the output.
+	*/
+	boolean update(int status, int data1, int data2) {
+		int channel = status & 0x0F;
+
+		switch (status & 0xF0) {
+			case 0x80:
+				return noteOff(channel, data1);
+			case 0x90:
+				if (data2 == 0) return noteOff(channel, data1);
+				noteOn(channel, data1);
+				return true;
+			case 0xB0:
+				return controller(channel, data1, data2);
+			case 0xC0:
+				return set(programs, channel, data1);
+			case 0xD0:
+				return set(pressures, channel, data1);
+			case 0xE0:
+				return set(pitch_bends, channel, data1 | data2 << 7);
+			default:
+				if (status == 0xFF) reset();
+				return true;
+		}
+	}
+
+	void noteOn(int channel, int pitch) {
+		int slot = channel << 7 | pitch;
+		notes[slot] = notes[slot] == UNKNOWN ? 1 : notes[slot] + 1;
+	}
+
+	boolean noteOff(int channel, int pitch) {
+		int slot = channel << 7 | pitch;
+		if (notes[slot] == NOTE_OFF) {
+			suppressed++;
+			return false;
+		}
+		//One NoteOff per stacked NoteOn, a spare one only costs bandwidth while a missing one leaves a voice hanging
+		notes[slot] = notes[slot] == UNKNOWN ? NOTE_OFF : notes[slot] - 1;
+		return true;
+	}
+
+	boolean controller(int channel, int number, int value) {
+		switch (number) {
+			case 0: case 32:
+				//Bank select, the same program must be sent again for the new bank to apply
+				if (!set(controllers, channel << 7 | number, value)) return false;
+				programs[channel] = UNKNOWN;
+				return true;
+			case 6: case 38: case 96: case 97:
+				//Data entry and increments apply to whichever parameter is selected
+				return true;
+			case 98: case 99: case 100: case 101:
+				//Parameter selection
+				return set(controllers, channel << 7 | number, value);
+			case 120: case 123: case 124: case 125: case 126: case 127:
+				//All sound off, all notes off and the omni/poly modes silence the channel
+				Arrays.fill(notes, channel << 7, (channel + 1) << 7, NOTE_OFF);
+				return true;
+			case 121:
+				//Reset all controllers
+				Arrays.fill(controllers, channel << 7, (channel + 1) << 7, UNKNOWN);
+				pitch_bends[channel] = UNKNOWN;
+				pressures[channel] = UNKNOWN;
+				return true;
+			case 122:
+				return true;
+			default:
+				return set(controllers, channel << 7 | number, value);
+		}
+	}
+
+	boolean set(int[] values, int index, int value) {
+		if (values[index] == value) {
+			suppressed++;
+			return false;
+		}
+		values[index] = value;
+		return true;
+	}
+
+}
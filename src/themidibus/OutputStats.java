@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+/**
+ * An OutputStats is a snapshot of the queue of an output of a MidiBus with {@link MidiBus#asyncOutput(int, OverflowPolicy) asynchronous output} enabled. Latency is the time between a message being queued and the output's Receiver returning from send(), in nanoseconds.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#outputStats()
+*/
+
+public class OutputStats {
+
+	/** The name of the output. */
+	public final String name;
+	/** The number of messages the queue can hold, 0 if the output is written to synchronously. */
+	public final int capacity;
+	/** The number of messages waiting in the queue. */
+	public final int depth;
+	/** The number of messages written to the output. */
+	public final long written;
+	/** The number of messages dropped because the queue was full or the output was removed. */
+	public final long dropped;
+	/** The number of controller, pitch bend and channel pressure values replaced by a newer one while waiting for a rate limited output. */
+	public final long thinned;
+	/** The average latency, in nanoseconds. */
+	public final long meanLatency;
+	/** The largest latency, in nanoseconds. */
+	public final long maxLatency;
+
+	/**
+	 * Constructs an OutputStats object
+	 *
+	 * @param name the name of the output.
+	 * @param capacity the number of messages the queue can hold.
+	 * @param depth the number of messages waiting in the queue.
+	 * @param written the number of messages written to the output.
+	 * @param dropped the number of messages dropped.
+	 * @param thinned the number of values replaced by a newer one.
+	 * @param meanLatency the average latency, in nanoseconds.
+	 * @param maxLatency the largest latency, in nanoseconds.
+	*/
+	public OutputStats(String name, int capacity, int depth, long written, long dropped, long thinned, long meanLatency, long maxLatency) {
+		this.name = name;
+		this.capacity = capacity;
+		this.depth = depth;
+		this.written = written;
+		this.dropped = dropped;
+		this.thinned = thinned;
+		this.meanLatency = meanLatency;
+		this.maxLatency = maxLatency;
+	}
+
+	/**
+	 * Returns a string representation of these statistics.
+	 *
+	 * @return a string representation.
+	*/
+	public String toString() {
+		return "[" + name + ", depth:" + depth + "/" + capacity + ", written:" + written + ", dropped:" + dropped + ", thinned:" + thinned + ", latency mean:" + meanLatency + "ns, max:" + maxLatency + "ns]";
+	}
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+/**
+ * An OverflowPolicy decides what a MidiBus does when one of its bounded message queues is full.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#asyncDispatch(int, OverflowPolicy)
+*/
+
+public enum OverflowPolicy {
+
+	/** Wait for the consumer to make room. No message is lost, but the producing thread is stalled. */
+	BLOCK,
+
+	/** Discard the oldest queued message to make room for the new one. */
+	DROP_OLDEST,
+
+	/** Discard the new message and keep the queue as it is. */
+	DROP_NEWEST
+
+}
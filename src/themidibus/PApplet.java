@@ -23,6 +23,8 @@ import javax.sound.midi.MidiMessage;
 /**
  * PApplet is your processing application or sketch. In it you can implement the following methods which will be called whenerever a MidiBus object attached to the PApplet, recieves a new incomming MIDI message of the appropriate type.
  * <p>
+ * By default these methods are called from the MIDI subsystem's threads, concurrently with draw(). Call {@link MidiBus#frameDispatch(boolean)} to have them all called from the animation thread right before draw() instead.
+ * <p>
  * <i><b style="color:red;">Note:</b> This page is a dummy page for documentation of the MidiBus' extention of the regular PApplet's functionality, for the full documentation of PApplet please visits the <a target="_blank" href="http://dev.processing.org/reference/core/javadoc/processing/core/PApplet.html">Processing javadocs</a></i>
  *
  * @version 010
@@ -66,6 +68,8 @@ public class PApplet {
 
 	/**
 	 * Is passed a ControlChange object representing controlChange event
+	 * <p>
+	 * If the MidiBus has {@link MidiBus#recycleEventObjects(boolean)} enabled the ControlChange object is reused for later messages, keep {@link ControlChange#copy()} if you need it after this method returns.
 	 * 
 	 * @param change the ControlChange object
 	 * @see #controllerChange(int channel, int pitch, int velocity)
@@ -125,6 +129,8 @@ public class PApplet {
 
 	/**
 	 * Is passed a Note object representing noteOff event
+	 * <p>
+	 * If the MidiBus has {@link MidiBus#recycleEventObjects(boolean)} enabled the Note object is reused for later messages, keep {@link Note#copy()} if you need it after this method returns.
 	 * 
 	 * @param note the Note object
 	 * @see #noteOff(int channel, int pitch, int velocity)
@@ -162,6 +168,8 @@ public class PApplet {
 
 	/**
 	 * Is passed a Note object representing noteOn event
+	 * <p>
+	 * If the MidiBus has {@link MidiBus#recycleEventObjects(boolean)} enabled the Note object is reused for later messages, keep {@link Note#copy()} if you need it after this method returns.
 	 * 
 	 * @param note the Note object
 	 * @see #noteOn(int channel, int pitch, int velocity)
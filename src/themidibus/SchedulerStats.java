@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+/**
+ * A SchedulerStats is a snapshot of how accurately a MidiBus sent the messages scheduled with {@link MidiBus#sendAt(javax.sound.midi.MidiMessage, long)} and {@link MidiBus#sendAfter(javax.sound.midi.MidiMessage, long)}. Lateness is the time between a message's deadline and the moment the MidiBus finished handing it to its outputs, in nanoseconds.
+ * <p>
+ * Messages passed to outputs which schedule them themselves (see {@link MidiBus#deviceScheduling(boolean)}) only count once the MidiBus handed them to the remaining outputs.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#schedulerStats()
+*/
+
+public class SchedulerStats {
+
+	/** The number of scheduled messages sent. */
+	public final long sent;
+	/** The number of scheduled messages still waiting to be sent. */
+	public final long pending;
+	/** The smallest lateness, in nanoseconds. */
+	public final long minLateness;
+	/** The average lateness, in nanoseconds. */
+	public final long meanLateness;
+	/** The largest lateness, in nanoseconds. */
+	public final long maxLateness;
+
+	/**
+	 * Constructs a SchedulerStats object
+	 *
+	 * @param sent the number of scheduled messages sent.
+	 * @param pending the number of scheduled messages still waiting to be sent.
+	 * @param minLateness the smallest lateness, in nanoseconds.
+	 * @param meanLateness the average lateness, in nanoseconds.
+	 * @param maxLateness the largest lateness, in nanoseconds.
+	*/
+	public SchedulerStats(long sent, long pending, long minLateness, long meanLateness, long maxLateness) {
+		this.sent = sent;
+		this.pending = pending;
+		this.minLateness = minLateness;
+		this.meanLateness = meanLateness;
+		this.maxLateness = maxLateness;
+	}
+
+	/**
+	 * Returns a string representation of these statistics.
+	 *
+	 * @return a string representation.
+	*/
+	public String toString() {
+		return "[sent:" + sent + ", pending:" + pending + ", lateness min:" + minLateness + "ns, mean:" + meanLateness + "ns, max:" + maxLateness + "ns]";
+	}
+
+}
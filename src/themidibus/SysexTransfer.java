@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2009 Severin Smith
+ *
+ * This file is part of a library called The MidiBus (themidibus) - http://www.smallbutdigital.com/themidibus.php.
+ *
+ * The MidiBus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The MidiBus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the MidiBus. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package themidibus;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.SysexMessage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A SysexTransfer is a SysEx message being streamed by {@link MidiBus#streamSysex(byte[], int, float, int)}. The message is sent in packets: the first one starts with 0xF0, the following ones are continuation packets starting with 0xF7 and the last one ends with the message's closing 0xF7. The packets are paced so large dumps don't overrun the devices' buffers.
+ * <p>
+ * The transfer is a CompletableFuture which completes once the last packet was sent, or exceptionally if sending failed. {@link #bytesSent()} and {@link #progress()} can be polled meanwhile. Cancelling the transfer stops it after the current packet and sends a lone 0xF7 to end the message.
+ *
+ * @version 010
+ * @author Severin Smith
+ * @see MidiBus#streamSysex(byte[], int, float, int)
+*/
+
+public class SysexTransfer extends CompletableFuture<Void> implements Runnable {
+
+	final MidiBus bus;
+	final byte[] data;
+	final int chunk_size;
+	final float bytes_per_ms;
+	final int gap_ms;
+
+	volatile int sent;
+
+	/**
+	 * Constructs a SysexTransfer.
+	 *
+	 * @param bus the MidiBus the packets are sent through.
+	 * @param data the whole SysEx message, from 0xF0 to 0xF7.
+	 * @param chunk_size the number of message bytes per packet.
+	 * @param bytes_per_ms the rate to send at, 0 for no limit.
+	 * @param gap_ms the minimum time between two packets, in milliseconds.
+	*/
+	SysexTransfer(MidiBus bus, byte[] data, int chunk_size, float bytes_per_ms, int gap_ms) {
+		this.bus = bus;
+		this.data = data;
+		this.chunk_size = Math.max(chunk_size, 1);
+		this.bytes_per_ms = bytes_per_ms;
+		this.gap_ms = Math.max(gap_ms, 0);
+	}
+
+	/**
+	 * Returns the number of bytes of the message sent so far.
+	 *
+	 * @return the number of bytes sent.
+	*/
+	public int bytesSent() {
+		return sent;
+	}
+
+	/**
+	 * Returns the length of the message, including the 0xF0 and 0xF7 bytes.
+	 *
+	 * @return the number of bytes to send.
+	*/
+	public int totalBytes() {
+		return data.length;
+	}
+
+	/**
+	 * Returns how much of the message was sent so far.
+	 *
+	 * @return the fraction of the message sent, from 0 to 1.
+	*/
+	public float progress() {
+		return (float)sent / data.length;
+	}
+
+	/**
+	 * Sends the packets, from the MidiBus's SysEx thread.
+	*/
+	public void run() {
+		if (isDone()) return;
+
+		int offset = 0;
+		try {
+			long next = System.nanoTime();
+
+			while (offset < data.length) {
+				if (isCancelled() || Thread.currentThread().isInterrupted()) {
+					//Terminate the partial message so the devices don't wait for the rest of it
+					if (offset > 0) bus.sendMessage(packet(new byte[] { (byte)0xF7 }));
+					cancel(false);
+					return;
+				}
+
+				long wait = next - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(this, wait);
+					continue;
+				}
+
+				int length = Math.min(chunk_size, data.length - offset);
+				byte[] packet;
+				if (offset == 0) {
+					packet = new byte[length];
+					System.arraycopy(data, 0, packet, 0, length);
+				} else {
+					packet = new byte[length + 1];
+					packet[0] = (byte)0xF7;
+					System.arraycopy(data, offset, packet, 1, length);
+				}
+				bus.sendMessage(packet(packet));
+				offset += length;
+				sent = offset;
+
+				long pace = bytes_per_ms > 0 ? (long)(length * 1000000L / bytes_per_ms) : 0;
+				next = System.nanoTime() + Math.max(pace, gap_ms * 1000000L);
+			}
+
+			complete(null);
+		} catch(Throwable e) {
+			//Terminate the partial message, the outputs hold back everything else until it ends
+			if (offset > 0 && offset < data.length) {
+				try {
+					bus.sendMessage(packet(new byte[] { (byte)0xF7 }));
+				} catch(Throwable ignored) {
+					//The output which failed is probably failing again
+				}
+			}
+			completeExceptionally(e);
+		}
+	}
+
+	static SysexMessage packet(byte[] packet) throws InvalidMidiDataException {
+		SysexMessage message = new Packet();
+		message.setMessage(packet, packet.length);
+		return message;
+	}
+
+	/**
+	 * A packet of a streamed SysEx message. The outputs let packets through while they hold back the other messages sent during the stream.
+	*/
+	static class Packet extends SysexMessage {
+	}
+
+}
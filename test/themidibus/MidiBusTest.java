@@ -19,9 +19,11 @@
 
 package themidibus;
 
+import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiMessage;
 import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.Receiver;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.SysexMessage;
@@ -34,6 +36,7 @@ import java.io.PrintStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -76,6 +79,29 @@ public class MidiBusTest {
 		runLayer("Layer 8 (bypassCoreMidi4J escape)",   MidiBusTest::layer8_bypassFlag);
 		runLayer("Layer 9 (Apple-native MIDI direction)",  MidiBusTest::layer9_appleNativeDirectionality);
 		runLayer("Layer 10 (throwErrors flag)",            MidiBusTest::layer10_throwErrors);
+		runLayer("Layer 11 (inbound decode)",              MidiBusTest::layer11_inboundDecode);
+		runLayer("Layer 12 (recycled event objects)",      MidiBusTest::layer12_recycledEventObjects);
+		runLayer("Layer 13 (async dispatch)",              MidiBusTest::layer13_asyncDispatch);
+		runLayer("Layer 14 (frame dispatch)",              MidiBusTest::layer14_frameDispatch);
+		runLayer("Layer 15 (controller coalescing)",       MidiBusTest::layer15_coalescing);
+		runLayer("Layer 16 (subscription masks)",          MidiBusTest::layer16_subscriptionMasks);
+		runLayer("Layer 17 (snapshot arrays)",             MidiBusTest::layer17_snapshotArrays);
+		runLayer("Layer 18 (concurrent senders)",          MidiBusTest::layer18_concurrentSenders);
+		runLayer("Layer 19 (allocation-free sends)",       MidiBusTest::layer19_outboundMessages);
+		runLayer("Layer 20 (batched sends)",               MidiBusTest::layer20_batchedSends);
+		runLayer("Layer 21 (scheduled sends)",             MidiBusTest::layer21_scheduledSends);
+		runLayer("Layer 22 (asynchronous output)",         MidiBusTest::layer22_asyncOutput);
+		runLayer("Layer 23 (redundant suppression)",       MidiBusTest::layer23_redundantSuppression);
+		runLayer("Layer 24 (output rate limiting)",        MidiBusTest::layer24_rateLimiting);
+		runLayer("Layer 25 (SysEx streaming)",             MidiBusTest::layer25_sysexStreaming);
+		runLayer("Layer 26 (active notes)",                MidiBusTest::layer26_activeNotes);
+		runLayer("Layer 27 (parallel output)",             MidiBusTest::layer27_parallelOutput);
+		runLayer("Layer 28 (device catalog)",              MidiBusTest::layer28_deviceCatalog);
+		runLayer("Layer 29 (hot-plug watcher)",            MidiBusTest::layer29_deviceWatcher);
+		runLayer("Layer 30 (automatic reconnect)",         MidiBusTest::layer30_autoReconnect);
+		runLayer("Layer 31 (asynchronous device opening)", MidiBusTest::layer31_asyncOpen);
+		runLayer("Layer 32 (shared device registry)",      MidiBusTest::layer32_deviceRegistry);
+		runLayer("Layer 33 (shared input transmitter)",    MidiBusTest::layer33_inputDemux);
 
 		System.out.println();
 		System.out.println("=== Summary ===");
@@ -311,6 +337,12 @@ public class MidiBusTest {
 		assertEq(8,  cc3.channel(), "ControlChange setChannel round-trip");
 		assertEq(20, cc3.number(),  "ControlChange setNumber round-trip");
 		assertEq(90, cc3.value(),   "ControlChange setValue round-trip");
+
+		// copy()
+		assertEq(n2, n2.copy(), "Note.copy() equals the original");
+		assertTrue(n2 != n2.copy(), "Note.copy() is a new object");
+		assertEq(cc2, cc2.copy(), "ControlChange.copy() equals the original");
+		assertTrue(cc2 != cc2.copy(), "ControlChange.copy() is a new object");
 	}
 
 	/* ========================================================= */
@@ -388,6 +420,30 @@ public class MidiBusTest {
 		MidiBus narrowBus = new MidiBus(narrow, "narrow_bus");
 		narrowBus.notifyParent(shortMsg(ShortMessage.NOTE_ON, 0, 64, 127), 0L);
 		assertEq(1, narrow.count, "Narrow parent: noteOn(int,int,int) fires with no error");
+
+		// -- Public callbacks of a package-private parent in another package are bound too --
+		Object hidden = themidibus.sketch.SketchParents.packagePrivateParent();
+		MidiBus hiddenBus = new MidiBus(hidden, "hidden_bus");
+		hiddenBus.notifyParent(shortMsg(ShortMessage.NOTE_ON, 0, 64, 127), 0L);
+		assertEq(1, themidibus.sketch.SketchParents.noteOnCount(hidden), "Package-private parent: noteOn(int,int,int) fires");
+
+		// -- Non-void callbacks are bound too, throwing callbacks are disabled --
+		PrintStream originalErr = System.err;
+		ThrowingParent throwing = new ThrowingParent();
+		MidiBus throwingBus = new MidiBus(throwing, "throwing_bus");
+		try {
+			System.setErr(new PrintStream(new ByteArrayOutputStream()));
+			throwingBus.notifyParent(shortMsg(ShortMessage.NOTE_ON, 0, 64, 127), 0L);
+			throwingBus.notifyParent(shortMsg(ShortMessage.NOTE_ON, 0, 64, 127), 0L);
+		} finally {
+			System.setErr(originalErr);
+		}
+		assertEq(1, throwing.noteOnCount, "Throwing noteOn(int,int,int) is disabled after the first exception");
+		throwingBus.notifyParent(shortMsg(ShortMessage.NOTE_OFF, 0, 64, 0), 0L);
+		assertEq(1, throwing.noteOffCount, "Throwing parent: noteOff(int,int,int) still fires");
+		throwingBus.notifyParent(shortMsg(ShortMessage.CONTROL_CHANGE, 1, 2, 3), 0L);
+		assertEq(1, throwing.ccCount, "Non-void controllerChange(int,int,int) fires");
+		assertEq(3, throwing.lastCcValue, "Non-void controllerChange(int,int,int) captured value");
 	}
 
 	/* ========================================================= */
@@ -447,6 +503,23 @@ public class MidiBusTest {
 		assertEq(1, raw.count,      "Listener SysEx: RawMidiListener fires");
 		assertEq(1, standard.count, "Listener SysEx: StandardMidiListener fires");
 		assertArrayEq(sysex, raw.lastData, "Listener SysEx: raw bytes captured");
+
+		// -- Other channel messages: only raw + standard --
+		simple.reset(); object.reset(); raw.reset(); standard.reset();
+		bus.notifyListeners(shortMsg(ShortMessage.PITCH_BEND, 0, 0, 64), 0L);
+		assertEq(0, simple.noteOn + simple.noteOff + simple.cc, "Listener PITCH_BEND: SimpleMidiListener silent");
+		assertEq(0, object.noteOn + object.noteOff + object.cc, "Listener PITCH_BEND: ObjectMidiListener silent");
+		assertEq(1, raw.count,      "Listener PITCH_BEND: RawMidiListener fires");
+		assertEq(1, standard.count, "Listener PITCH_BEND: StandardMidiListener fires");
+
+		// -- Dispatch table follows add/remove --
+		assertTrue(!bus.addMidiListener(simple), "Listener re-add is refused");
+		assertTrue(bus.removeMidiListener(raw), "Listener remove succeeds");
+		assertTrue(!bus.removeMidiListener(raw), "Listener second remove refused");
+		simple.reset(); raw.reset();
+		bus.notifyListeners(shortMsg(ShortMessage.NOTE_ON, 0, 60, 100), 0L);
+		assertEq(1, simple.noteOn, "Listener table: remaining listener still fires");
+		assertEq(0, raw.count,     "Listener table: removed listener no longer fires");
 	}
 
 	/* ========================================================= */
@@ -1008,6 +1081,1692 @@ public class MidiBusTest {
 		bus.close();
 	}
 
+	/* ========================================================= */
+	/* Layer 11 - decode-once inbound path                        */
+	/* ========================================================= */
+
+	static void layer11_inboundDecode() throws Exception {
+		TestParent parent = new TestParent();
+		MidiBus bus = new MidiBus(parent, "decode_bus");
+		CountingRawListener raw = new CountingRawListener();
+		CountingStandardListener standard = new CountingStandardListener();
+		bus.addMidiListener(raw);
+		bus.addMidiListener(standard);
+
+		// -- NOTE_ON velocity 0 is presented as NOTE_OFF on any channel, without touching the original --
+		ShortMessage vel0 = shortMsg(ShortMessage.NOTE_ON, 3, 60, 0);
+		InboundMessage inbound = new InboundMessage().set(vel0, 5L);
+		bus.notifyListeners(inbound);
+		bus.notifyParent(inbound);
+		assertEq(ShortMessage.NOTE_ON, vel0.getCommand(), "NOTE_ON-vel0: caller's message is not mutated");
+		assertEq(1, parent.noteOffBasicCount, "NOTE_ON-vel0: parent noteOff fires");
+		assertEq(0, parent.noteOnBasicCount,  "NOTE_ON-vel0: parent noteOn silent");
+		assertEq(3, parent.lastNoteOffChannel, "NOTE_ON-vel0: channel preserved");
+		assertArrayEq(new byte[] { (byte)0x83, 60, 0 }, raw.lastData, "NOTE_ON-vel0: raw listener sees NOTE_OFF bytes");
+		assertTrue(standard.lastMessage instanceof ShortMessage && ((ShortMessage)standard.lastMessage).getCommand() == ShortMessage.NOTE_OFF,
+				"NOTE_ON-vel0: standard listener sees a NOTE_OFF message");
+		assertTrue(raw.lastData == parent.lastRawMidiData, "Raw bytes are materialised once and shared");
+
+		// -- Unmodified messages are passed through as-is --
+		ShortMessage cc = shortMsg(ShortMessage.CONTROL_CHANGE, 1, 7, 64);
+		bus.notifyListeners(inbound.set(cc, 0L));
+		assertTrue(standard.lastMessage == cc, "Standard listener receives the original message");
+
+		// -- Built from primitives --
+		inbound.set(0xC2, 12, 0, 0L);
+		assertArrayEq(new byte[] { (byte)0xC2, 12 }, inbound.data(), "Program change materialises 2 bytes");
+		inbound.set(0xF8, 0, 0, 0L);
+		assertArrayEq(new byte[] { (byte)0xF8 }, inbound.data(), "Timing clock materialises 1 byte");
+
+		// -- Steady state NOTE/CC delivery to primitive consumers does not allocate --
+		PrimitiveParent primitiveParent = new PrimitiveParent();
+		MidiBus primitiveBus = new MidiBus(primitiveParent, "primitive_bus");
+		CountingSimpleListener simple = new CountingSimpleListener();
+		primitiveBus.addMidiListener(simple);
+		ShortMessage[] messages = { shortMsg(ShortMessage.NOTE_ON, 0, 60, 100), shortMsg(ShortMessage.NOTE_OFF, 0, 60, 0), shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, 2) };
+		long allocated = measureAllocation(() -> {
+			for (int i = 0; i < 30000; i++) {
+				inbound.set(messages[i % 3], i);
+				primitiveBus.notifyListeners(inbound);
+				primitiveBus.notifyParent(inbound);
+			}
+		});
+		System.out.println("    Allocated " + allocated + " bytes for 30000 inbound messages");
+		assertEq(80000, primitiveParent.count, "Primitive parent callbacks all fired");
+		assertTrue(allocated < 30000, "Inbound NOTE/CC dispatch allocates less than one byte per message");
+	}
+
+	/* ========================================================= */
+	/* Layer 12 - recycled Note / ControlChange objects           */
+	/* ========================================================= */
+
+	static void layer12_recycledEventObjects() throws Exception {
+		TestParent parent = new TestParent();
+		MidiBus bus = new MidiBus(parent, "recycle_bus");
+		CapturingObjectListener listener = new CapturingObjectListener();
+		bus.addMidiListener(listener);
+
+		// -- Default: fresh objects per message --
+		assertTrue(!bus.recycleEventObjects(), "recycleEventObjects defaults to false");
+		InboundMessage inbound = new InboundMessage();
+		bus.notifyParent(inbound.set(shortMsg(ShortMessage.NOTE_ON, 0, 60, 100), 0L));
+		Note first = parent.lastNoteOnObject;
+		bus.notifyParent(inbound.set(shortMsg(ShortMessage.NOTE_ON, 0, 61, 100), 0L));
+		assertTrue(first != parent.lastNoteOnObject, "Default: a new Note per message");
+
+		// -- Recycled: same objects, fields reset for every delivery --
+		bus.recycleEventObjects(true);
+		assertTrue(bus.recycleEventObjects(), "recycleEventObjects getter reflects enable");
+		bus.notifyParent(inbound.set(shortMsg(ShortMessage.NOTE_ON, 0, 60, 100), 1L));
+		first = parent.lastNoteOnObject;
+		Note kept = first.copy();
+		bus.notifyParent(inbound.set(shortMsg(ShortMessage.NOTE_ON, 2, 62, 90), 2L));
+		assertTrue(first == parent.lastNoteOnObject, "Recycled: parent gets the same Note");
+		assertEq(62, first.pitch(), "Recycled: Note fields are overwritten");
+		assertEq("recycle_bus", first.bus_name, "Recycled: parent Note carries bus_name");
+		assertEq(60, kept.pitch(), "Recycled: copy() keeps the old values");
+
+		bus.notifyListeners(inbound.set(shortMsg(ShortMessage.CONTROL_CHANGE, 1, 7, 10), 0L));
+		ControlChange change = listener.lastChange;
+		change.setValue(127);
+		bus.notifyListeners(inbound.set(shortMsg(ShortMessage.CONTROL_CHANGE, 1, 7, 11), 0L));
+		assertTrue(change == listener.lastChange, "Recycled: listener gets the same ControlChange");
+		assertEq(11, listener.lastChange.value(), "Recycled: listener mutation is reset by the next message");
+
+		// -- Steady state delivery of objects no longer allocates --
+		ShortMessage[] messages = { shortMsg(ShortMessage.NOTE_ON, 0, 60, 100), shortMsg(ShortMessage.NOTE_OFF, 0, 60, 0), shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, 2) };
+		ObjectOnlyParent objectParent = new ObjectOnlyParent();
+		MidiBus objectBus = new MidiBus(objectParent, "object_bus");
+		objectBus.addMidiListener(new CountingObjectListener());
+		objectBus.recycleEventObjects(true);
+		long allocated = measureAllocation(() -> {
+			for (int i = 0; i < 30000; i++) {
+				inbound.set(messages[i % 3], i);
+				objectBus.notifyListeners(inbound);
+				objectBus.notifyParent(inbound);
+			}
+		});
+		System.out.println("    Allocated " + allocated + " bytes for 30000 inbound messages with recycled objects");
+		assertEq(60000, objectParent.count, "Object parent callbacks all fired");
+		assertTrue(allocated < 30000, "Recycled object dispatch allocates less than one byte per message");
+	}
+
+	/* ========================================================= */
+	/* Layer 13 - asynchronous inbound dispatch                   */
+	/* ========================================================= */
+
+	static void layer13_asyncDispatch() throws Exception {
+		MidiBus bus = new MidiBus(new PrimitiveParent(), "async_bus");
+		GatedRawListener listener = new GatedRawListener();
+		bus.addMidiListener(listener);
+		FakeDevice device = new FakeDevice("Fake Async In");
+		assertTrue(bus.addInput(device), "Fake input added");
+
+		// -- Default: delivered on the sending thread --
+		assertTrue(!bus.asyncDispatch(), "asyncDispatch defaults to false");
+		device.transmit(shortMsg(ShortMessage.NOTE_ON, 0, 60, 100));
+		assertTrue(listener.lastThread == Thread.currentThread(), "Sync: delivered on the sending thread");
+
+		// -- Async: delivered in order on the dispatcher thread --
+		bus.asyncDispatch(true);
+		assertTrue(bus.asyncDispatch(), "asyncDispatch getter reflects enable");
+		listener.reset();
+		for (int i = 0; i < 100; i++) device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, i));
+		assertTrue(listener.awaitCount(100), "Async: all messages delivered");
+		assertTrue(listener.lastThread != Thread.currentThread(), "Async: delivered on the dispatcher thread");
+		assertTrue(listener.inOrder, "Async: per-input order preserved");
+
+		// -- DROP_NEWEST: a full queue discards incoming messages --
+		bus.asyncDispatch(4, OverflowPolicy.DROP_NEWEST);
+		listener.reset();
+		listener.gate = new CountDownLatch(1);
+		device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, 0));
+		assertTrue(listener.entered.await(2, TimeUnit.SECONDS), "DROP_NEWEST: dispatcher busy with the first message");
+		for (int i = 1; i <= 10; i++) device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, i));
+		listener.gate.countDown();
+		assertTrue(listener.awaitCount(5), "DROP_NEWEST: queued messages delivered");
+		assertEq(6L, bus.droppedMessages(), "DROP_NEWEST: overflow counted");
+		assertEq(4, listener.lastValue, "DROP_NEWEST: the oldest messages survive");
+
+		// -- DROP_OLDEST: a full queue discards the oldest messages --
+		bus.asyncDispatch(4, OverflowPolicy.DROP_OLDEST);
+		listener.reset();
+		listener.gate = new CountDownLatch(1);
+		device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, 0));
+		assertTrue(listener.entered.await(2, TimeUnit.SECONDS), "DROP_OLDEST: dispatcher busy with the first message");
+		for (int i = 1; i <= 10; i++) device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, i));
+		listener.gate.countDown();
+		assertTrue(listener.awaitCount(5), "DROP_OLDEST: queued messages delivered");
+		assertEq(12L, bus.droppedMessages(), "DROP_OLDEST: overflow counted");
+		assertEq(7, listener.firstValueAfter0, "DROP_OLDEST: the newest messages survive");
+		assertEq(10, listener.lastValue, "DROP_OLDEST: last message delivered");
+
+		// -- Disabling goes back to synchronous delivery --
+		bus.asyncDispatch(false);
+		assertTrue(!bus.asyncDispatch(), "asyncDispatch getter reflects disable");
+		device.transmit(shortMsg(ShortMessage.NOTE_ON, 0, 60, 100));
+		assertTrue(listener.lastThread == Thread.currentThread(), "Disabled: delivered on the sending thread");
+
+		bus.asyncDispatch(true);
+		assertTrue(bus.removeInput("Fake Async In"), "Fake input removed while async");
+		bus.close();
+		assertTrue(!bus.asyncDispatch(), "close() stops the dispatcher");
+	}
+
+	/* ========================================================= */
+	/* Layer 14 - frame synchronised delivery through pre()       */
+	/* ========================================================= */
+
+	static void layer14_frameDispatch() throws Exception {
+		FrameParent parent = new FrameParent();
+		MidiBus bus = new MidiBus(parent, "frame_bus");
+		FakeDevice device = new FakeDevice("Fake Frame In");
+		bus.addInput(device);
+
+		assertTrue(!bus.frameDispatch(), "frameDispatch defaults to false");
+		bus.frameDispatch(8, 3);
+		assertTrue(bus.frameDispatch(), "frameDispatch getter reflects enable");
+		assertTrue(!bus.asyncDispatch(), "Frame dispatch is not asynchronous dispatch");
+		assertTrue(parent.registered == bus, "pre() registered with the parent");
+
+		// -- Nothing is delivered until pre(), then at most budget messages per frame --
+		for (int i = 0; i < 5; i++) device.transmit(shortMsg(ShortMessage.NOTE_ON, 0, 60 + i, 100));
+		assertEq(0, parent.count, "Nothing delivered between frames");
+		bus.pre();
+		assertEq(3, parent.count, "First frame delivers the budget");
+		assertTrue(parent.lastThread == Thread.currentThread(), "Delivered on the thread calling pre()");
+		bus.pre();
+		assertEq(5, parent.count, "Second frame delivers the rest");
+		assertEq(64, parent.lastPitch, "Delivered in order");
+		bus.pre();
+		assertEq(5, parent.count, "Empty frame delivers nothing");
+
+		// -- A full queue drops the oldest messages instead of blocking the MIDI thread --
+		for (int i = 0; i < 10; i++) device.transmit(shortMsg(ShortMessage.NOTE_ON, 0, i, 100));
+		assertEq(2L, bus.droppedMessages(), "Overflow counted");
+		bus.pre(); bus.pre(); bus.pre();
+		assertEq(13, parent.count, "Queued messages delivered over frames");
+		assertEq(9, parent.lastPitch, "The newest message survives");
+
+		// -- Replacing the parent moves the registration --
+		FrameParent other = new FrameParent();
+		bus.registerParent(other);
+		assertTrue(parent.registered == null, "Old parent unregistered");
+		assertTrue(other.registered == bus, "New parent registered");
+
+		// -- Switching to async dispatch, then disabling frame dispatch, leaves async on --
+		bus.asyncDispatch(true);
+		assertTrue(!bus.frameDispatch() && other.registered == null, "Async dispatch replaces frame dispatch");
+		bus.frameDispatch(false);
+		assertTrue(bus.asyncDispatch(), "frameDispatch(false) leaves async dispatch alone");
+
+		bus.frameDispatch(true);
+		bus.frameDispatch(false);
+		assertTrue(!bus.frameDispatch() && other.registered == null, "frameDispatch(false) unregisters pre()");
+		device.transmit(shortMsg(ShortMessage.NOTE_ON, 0, 60, 100));
+		assertEq(1, other.count, "Disabled: delivered immediately");
+		bus.close();
+	}
+
+	/* ========================================================= */
+	/* Layer 15 - latest-value-wins controller coalescing         */
+	/* ========================================================= */
+
+	static void layer15_coalescing() throws Exception {
+		MidiBus bus = new MidiBus(null, "coalesce_bus");
+		List<byte[]> delivered = new ArrayList<>();
+		bus.addMidiListener((RawMidiListener)data -> delivered.add(data.clone()));
+		FakeDevice device = new FakeDevice("Fake Coalesce In");
+		bus.addInput(device);
+		bus.frameDispatch(64, 64);
+
+		assertTrue(!bus.coalesceControllers(), "coalesceControllers defaults to false");
+		for (int i = 0; i < 10; i++) device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, i));
+		bus.pre();
+		assertEq(10, delivered.size(), "Disabled: every controller change delivered");
+
+		// -- Enabled: one message per controller and channel, with the latest value, notes untouched --
+		bus.coalesceControllers(true);
+		assertTrue(bus.coalesceControllers(), "coalesceControllers getter reflects enable");
+		delivered.clear();
+		device.transmit(shortMsg(ShortMessage.NOTE_ON, 0, 60, 100));
+		for (int i = 0; i < 50; i++) {
+			device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, i));
+			device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 2, 100 - i));
+			device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 1, 1, i + 1));
+			device.transmit(shortMsg(ShortMessage.PITCH_BEND, 0, i, 64));
+			device.transmit(shortMsg(ShortMessage.CHANNEL_PRESSURE, 0, i, 0));
+		}
+		device.transmit(shortMsg(ShortMessage.NOTE_OFF, 0, 60, 0));
+		device.transmit(shortMsg(ShortMessage.NOTE_ON, 0, 61, 100));
+		bus.pre();
+		assertEq(8, delivered.size(), "250 controller messages coalesced into 5");
+		assertArrayEq(new byte[] { (byte)0x90, 60, 100 }, delivered.get(0), "Note before the sweep first");
+		assertArrayEq(new byte[] { (byte)0xB0, 1, 49 }, delivered.get(1), "CC 1 channel 0 latest value");
+		assertArrayEq(new byte[] { (byte)0xB0, 2, 51 }, delivered.get(2), "CC 2 channel 0 latest value");
+		assertArrayEq(new byte[] { (byte)0xB1, 1, 50 }, delivered.get(3), "CC 1 channel 1 latest value");
+		assertArrayEq(new byte[] { (byte)0xE0, 49, 64 }, delivered.get(4), "Pitch bend latest value");
+		assertArrayEq(new byte[] { (byte)0xD0, 49 }, delivered.get(5), "Channel pressure latest value");
+		assertArrayEq(new byte[] { (byte)0x80, 60, 0 }, delivered.get(6), "Note off after the sweep in order");
+		assertArrayEq(new byte[] { (byte)0x90, 61, 100 }, delivered.get(7), "Note on after the sweep in order");
+
+		// -- A controller delivered in one frame is queued again in the next --
+		delivered.clear();
+		device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, 7));
+		bus.pre();
+		device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, 8));
+		bus.pre();
+		assertEq(2, delivered.size(), "One delivery per frame per controller");
+		assertEq(8, (int)delivered.get(1)[2], "Second frame delivers the new value");
+
+		// -- A dropped marker doesn't leave its controller stuck --
+		bus.frameDispatch(2, 64);
+		delivered.clear();
+		device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, 1));
+		device.transmit(shortMsg(ShortMessage.NOTE_ON, 0, 60, 100));
+		device.transmit(shortMsg(ShortMessage.NOTE_ON, 0, 61, 100));
+		device.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, 2));
+		bus.pre();
+		assertEq(2, delivered.size(), "Oldest marker dropped on overflow");
+		assertArrayEq(new byte[] { (byte)0xB0, 1, 2 }, delivered.get(1), "Controller queued again after its marker was dropped");
+		bus.close();
+	}
+
+	/* ========================================================= */
+	/* Layer 16 - per-listener subscription masks                 */
+	/* ========================================================= */
+
+	static void layer16_subscriptionMasks() throws Exception {
+		MidiBus bus = new MidiBus(null, "mask_bus");
+		CountingSimpleListener channel9 = new CountingSimpleListener();
+		CountingRawListener notesOnly = new CountingRawListener();
+		CountingRawListener everything = new CountingRawListener();
+		CountingSimpleListener faders = new CountingSimpleListener();
+		assertTrue(bus.addMidiListener(channel9, 1 << 9, MidiBus.ALL_TYPES), "Channel filtered listener added");
+		assertTrue(bus.addMidiListener(notesOnly, MidiBus.ALL_CHANNELS, MidiBus.TYPE_NOTE_ON | MidiBus.TYPE_NOTE_OFF), "Type filtered listener added");
+		assertTrue(bus.addMidiListener(everything), "Unfiltered listener added");
+		assertTrue(bus.addMidiListener(faders, MidiBus.ALL_CHANNELS, MidiBus.TYPE_CONTROL_CHANGE, 20, 27), "Range filtered listener added");
+		assertTrue(!bus.addMidiListener(channel9, MidiBus.ALL_CHANNELS, MidiBus.ALL_TYPES), "Listener not added twice");
+
+		for (int channel = 0; channel < 16; channel++) {
+			bus.notifyListeners(shortMsg(ShortMessage.NOTE_ON, channel, 60, 100), 0L);
+			bus.notifyListeners(shortMsg(ShortMessage.CONTROL_CHANGE, channel, 21, 1), 0L);
+			bus.notifyListeners(shortMsg(ShortMessage.CONTROL_CHANGE, channel, 40, 1), 0L);
+			bus.notifyListeners(shortMsg(ShortMessage.PITCH_BEND, channel, 0, 64), 0L);
+		}
+		bus.notifyListeners(new ShortMessage(ShortMessage.TIMING_CLOCK), 0L);
+
+		assertEq(1, channel9.noteOn, "Channel mask: one note on");
+		assertEq(2, channel9.cc, "Channel mask: two controller changes");
+		assertEq(9, channel9.lastChannel, "Channel mask: only channel 9");
+		assertEq(16, notesOnly.count, "Type mask: only the notes");
+		assertEq(65, everything.count, "No mask: every message");
+		assertEq(16, faders.cc, "Range: only controllers 20 to 27");
+		assertEq(21, faders.lastD1, "Range: controller in range");
+
+		// -- Filters follow the listener through clone() and go away with removeMidiListener() --
+		MidiBus clone = bus.clone();
+		notesOnly.reset();
+		clone.notifyListeners(shortMsg(ShortMessage.PITCH_BEND, 0, 0, 64), 0L);
+		assertEq(0, notesOnly.count, "Clone keeps the type mask");
+		assertTrue(bus.removeMidiListener(notesOnly), "Filtered listener removed");
+		assertTrue(bus.addMidiListener(notesOnly), "Re-added without a filter");
+		bus.notifyListeners(shortMsg(ShortMessage.PITCH_BEND, 0, 0, 64), 0L);
+		assertEq(1, notesOnly.count, "Filter dropped on removal");
+	}
+
+	/* ========================================================= */
+	/* Layer 17 - copy-on-write device and listener snapshots     */
+	/* ========================================================= */
+
+	static void layer17_snapshotArrays() throws Exception {
+		MidiBus bus = new MidiBus(null, "snapshot_bus");
+		FakeDevice device = new FakeDevice("Fake Snapshot In");
+		CountingRawListener steady = new CountingRawListener();
+		bus.addMidiListener(steady);
+		bus.addInput(device);
+
+		// -- Listeners and inputs churn while a MIDI thread delivers messages --
+		AtomicBoolean running = new AtomicBoolean(true);
+		List<Throwable> errors = java.util.Collections.synchronizedList(new ArrayList<>());
+		ShortMessage message = shortMsg(ShortMessage.NOTE_ON, 0, 60, 100);
+		Thread midi = new Thread(() -> {
+			try {
+				while (running.get()) device.transmit(message);
+			} catch (Throwable t) { errors.add(t); }
+		});
+		midi.start();
+		for (int i = 0; i < 2000; i++) {
+			CountingRawListener churn = new CountingRawListener();
+			bus.addMidiListener(churn);
+			bus.removeMidiListener(churn);
+			bus.attachedInputs();
+			bus.toString();
+		}
+		FakeDevice other = new FakeDevice("Fake Snapshot Other");
+		for (int i = 0; i < 200; i++) {
+			bus.addInput(other);
+			bus.removeInput("Fake Snapshot Other");
+		}
+		running.set(false);
+		midi.join();
+		assertEq(0, errors.size(), "No errors while devices and listeners churn");
+		assertTrue(steady.count > 0, "Messages kept flowing during churn");
+		assertTrue(Arrays.equals(new String[] { "Fake Snapshot In" }, bus.attachedInputs()), "Churned input removed");
+
+		// -- Index based removal on the snapshot arrays --
+		assertTrue(!bus.removeInput(5), "Out of range index not removed");
+		assertTrue(bus.removeInput(0), "Index 0 removed");
+		assertEq(0, bus.attachedInputs().length, "No inputs left");
+
+		// -- equals/hashCode compare the snapshots element-wise --
+		MidiBus clone = bus.clone();
+		assertTrue(bus.equals(clone), "Clone equals original");
+		assertEq(bus.hashCode(), clone.hashCode(), "Clone hashCode matches");
+	}
+
+	/* ========================================================= */
+	/* Layer 18 - concurrent senders without a bus-wide monitor   */
+	/* ========================================================= */
+
+	static void layer18_concurrentSenders() throws Exception {
+		MidiBus bus = new MidiBus(null, "send_bus");
+		FakeDevice first = new FakeDevice("Fake Send A");
+		FakeDevice second = new FakeDevice("Fake Send B");
+		first.record = false;
+		second.record = false;
+		assertTrue(bus.addOutput(first) && bus.addOutput(second), "Fake outputs added");
+
+		// -- Multi-threaded producer throughput --
+		int threads = 4;
+		int perThread = 50000;
+		ShortMessage message = shortMsg(ShortMessage.NOTE_ON, 0, 60, 100);
+		for (int round = 0; round < 2; round++) {
+			first.count.set(0);
+			second.count.set(0);
+			CountDownLatch start = new CountDownLatch(1);
+			List<Thread> producers = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				Thread producer = new Thread(() -> {
+					try { start.await(); } catch (InterruptedException e) { return; }
+					for (int i = 0; i < perThread; i++) bus.sendMessage(message);
+				});
+				producer.start();
+				producers.add(producer);
+			}
+			long begin = System.nanoTime();
+			start.countDown();
+			for (Thread producer : producers) producer.join();
+			long elapsed = System.nanoTime() - begin;
+			if (round == 1) System.out.println("    " + threads + " producers sent " + (threads * perThread) + " messages to 2 outputs in " + (elapsed / 1000000) + " ms (" + (long)(threads * perThread * 1e9 / elapsed) + " msg/s)");
+		}
+		assertEq((long)threads * perThread, first.count.get(), "Every message reached output A");
+		assertEq((long)threads * perThread, second.count.get(), "Every message reached output B");
+
+		// -- A sender stuck in a slow output doesn't lock the bus --
+		first.hold = new CountDownLatch(1);
+		first.entered = new CountDownLatch(1);
+		Thread stuck = new Thread(() -> bus.sendMessage(message));
+		stuck.start();
+		assertTrue(first.entered.await(2, TimeUnit.SECONDS), "Sender is stuck in output A");
+		long begin = System.nanoTime();
+		FakeDevice third = new FakeDevice("Fake Send C");
+		assertTrue(bus.addOutput(third), "Output added while a sender is stuck");
+		assertTrue(bus.removeOutput("Fake Send C"), "Output removed while a sender is stuck");
+		assertTrue(System.nanoTime() - begin < 1000000000L, "Adding and removing outputs didn't wait for the stuck sender");
+		first.hold.countDown();
+		first.hold = null;
+		stuck.join();
+
+		// -- A removed output no longer receives messages --
+		bus.removeOutput("Fake Send B");
+		long before = second.count.get();
+		bus.sendMessage(message);
+		assertEq(before, second.count.get(), "Removed output receives nothing");
+	}
+
+	/* ========================================================= */
+	/* Layer 19 - allocation-free outbound short messages         */
+	/* ========================================================= */
+
+	static void layer19_outboundMessages() throws Exception {
+		MidiBus bus = new MidiBus(null, "outbound_bus");
+		FakeDevice device = new FakeDevice("Fake Outbound");
+		assertTrue(bus.addOutput(device), "Fake output added");
+
+		// -- Every short message API encodes the same bytes as ShortMessage.setMessage() --
+		assertTrue(!bus.recycleOutboundMessages(), "recycleOutboundMessages defaults to false");
+		bus.sendNoteOn(1, 60, 100);
+		bus.sendNoteOff(2, 61, 0);
+		bus.sendControllerChange(3, 7, 127);
+		bus.sendMessage(0xE0, 0, 64);
+		bus.sendMessage(ShortMessage.PROGRAM_CHANGE, 4, 5, 99);
+		bus.sendMessage(0xF8);
+		bus.sendMessage(new byte[] { (byte)0xD5, 33 });
+		bus.sendNoteOn(20, 200, -1);
+		byte[][] expected = {
+			{ (byte)0x91, 60, 100 },
+			{ (byte)0x82, 61, 0 },
+			{ (byte)0xB3, 7, 127 },
+			{ (byte)0xE0, 0, 64 },
+			{ (byte)0xC4, 5 },
+			{ (byte)0xF8 },
+			{ (byte)0xD5, 33 },
+			{ (byte)0x9F, 127, 0 },
+		};
+		assertEq(expected.length, device.received.size(), "Every short message was sent");
+		for (int i = 0; i < expected.length && i < device.received.size(); i++) {
+			assertArrayEq(expected[i], device.received.get(i).getMessage(), "Short message " + i + " bytes");
+		}
+		assertTrue(device.received.get(0) != device.received.get(1), "Default: a new ShortMessage per send");
+
+		// -- Invalid data is rejected without sending --
+		device.received.clear();
+		bus.sendMessage(0x90, 128, 0);
+		bus.sendMessage(0x90);
+		bus.sendMessage(0x70, 0, 0);
+		bus.sendMessage(0xF0, 0, 0, 0);
+		bus.sendMessage(0x90, 16, 0, 0);
+		assertEq(0, device.received.size(), "Invalid short messages are not sent");
+		bus.throwErrors(true);
+		try {
+			bus.sendMessage(0x90, 60, -1);
+			assertTrue(false, "Invalid data2 throws with throwErrors");
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause() instanceof InvalidMidiDataException, "Cause is InvalidMidiDataException");
+		}
+		bus.throwErrors(false);
+
+		// -- Recycled: each thread reuses its own message --
+		bus.recycleOutboundMessages(true);
+		assertTrue(bus.recycleOutboundMessages(), "recycleOutboundMessages getter reflects enable");
+		bus.sendNoteOn(0, 60, 100);
+		bus.sendNoteOn(0, 61, 100);
+		assertTrue(device.received.get(0) == device.received.get(1), "Recycled: the same ShortMessage is sent again");
+		assertArrayEq(new byte[] { (byte)0x90, 61, 100 }, device.received.get(1).getMessage(), "Recycled: message holds the latest bytes");
+
+		// -- Steady state sends don't allocate --
+		device.record = false;
+		long allocated = measureAllocation(() -> {
+			for (int i = 0; i < 30000; i++) {
+				bus.sendNoteOn(i & 15, i & 127, 100);
+				bus.sendNoteOff(i & 15, i & 127, 0);
+				bus.sendControllerChange(i & 15, 1, i & 127);
+				bus.sendMessage(0xE0 | (i & 15), 0, i & 127);
+			}
+		});
+		System.out.println("    Allocated " + allocated + " bytes for 120000 recycled outbound messages");
+		assertEq(0L, allocated, "Recycled short message sends don't allocate");
+
+		int sends = 1000000;
+		long begin = System.nanoTime();
+		for (int i = 0; i < sends; i++) bus.sendNoteOn(i & 15, i & 127, 100);
+		long elapsed = System.nanoTime() - begin;
+		System.out.println("    Sent " + sends + " recycled NoteOns in " + (elapsed / 1000000) + " ms (" + (long)(sends * 1e9 / elapsed) + " msg/s)");
+	}
+
+	/* ========================================================= */
+	/* Layer 20 - batched sends                                   */
+	/* ========================================================= */
+
+	static void layer20_batchedSends() throws Exception {
+		MidiBus bus = new MidiBus(null, "batch_bus");
+		FakeDevice first = new FakeDevice("Fake Batch A");
+		FakeDevice second = new FakeDevice("Fake Batch B");
+		assertTrue(bus.addOutput(first) && bus.addOutput(second), "Fake outputs added");
+
+		// -- Every output receives the whole batch in order --
+		MidiBatch batch = new MidiBatch(2);
+		batch.noteOn(0, 60, 100).noteOff(1, 61, 0).controllerChange(2, 7, 300).add(0xC3, 5, 0);
+		batch.add(sysexMsg(new byte[] { (byte)0xF0, 0x7D, 0x01, (byte)0xF7 }));
+		assertEq(5, batch.size(), "Batch grew past its initial capacity");
+		String[] failed = bus.sendBatch(batch);
+		assertEq(0, failed.length, "No output failed");
+		byte[][] expected = {
+			{ (byte)0x90, 60, 100 },
+			{ (byte)0x81, 61, 0 },
+			{ (byte)0xB2, 7, 127 },
+			{ (byte)0xC3, 5 },
+			{ (byte)0xF0, 0x7D, 0x01, (byte)0xF7 },
+		};
+		for (FakeDevice device : new FakeDevice[] { first, second }) {
+			assertEq(expected.length, device.received.size(), device.info.getName() + " received the whole batch");
+			for (int i = 0; i < expected.length && i < device.received.size(); i++) {
+				assertArrayEq(expected[i], device.received.get(i).getMessage(), device.info.getName() + " message " + i);
+			}
+		}
+
+		// -- An invalid message stops the whole batch --
+		first.received.clear();
+		second.received.clear();
+		batch.clear();
+		assertEq(0, batch.size(), "Cleared batch is empty");
+		batch.noteOn(0, 60, 100).add(0x90, 60, -1);
+		assertEq(0, bus.sendBatch(batch).length, "Invalid batch reports no failed output");
+		assertEq(0, first.received.size() + second.received.size(), "Nothing of an invalid batch is sent");
+		bus.throwErrors(true);
+		try {
+			bus.sendBatch(batch);
+			assertTrue(false, "Invalid batch throws with throwErrors");
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause() instanceof InvalidMidiDataException, "Cause is InvalidMidiDataException");
+		}
+		bus.throwErrors(false);
+
+		// -- A failing output is reported and doesn't stop the others --
+		batch.clear();
+		batch.noteOn(0, 60, 100).noteOn(0, 61, 100);
+		first.fail = true;
+		failed = bus.sendBatch(batch);
+		assertTrue(Arrays.equals(new String[] { "Fake Batch A" }, failed), "Failed output reported");
+		assertEq(2, second.received.size(), "Other output received the batch");
+		first.fail = false;
+
+		// -- Concurrent batches aren't interleaved on an output --
+		second.received.clear();
+		MidiBatch low = new MidiBatch();
+		MidiBatch high = new MidiBatch();
+		for (int i = 0; i < 64; i++) {
+			low.noteOn(0, i, 1);
+			high.noteOn(1, i, 1);
+		}
+		Thread other = new Thread(() -> { for (int i = 0; i < 200; i++) bus.sendBatch(high); });
+		other.start();
+		for (int i = 0; i < 200; i++) bus.sendBatch(low);
+		other.join();
+		boolean contiguous = second.received.size() == 400 * 64;
+		for (int i = 0; contiguous && i < second.received.size(); i += 64) {
+			int status = second.received.get(i).getStatus();
+			for (int j = 0; j < 64; j++) {
+				ShortMessage message = (ShortMessage)second.received.get(i + j);
+				if (message.getStatus() != status || message.getData1() != j) contiguous = false;
+			}
+		}
+		assertTrue(contiguous, "Each batch arrives contiguously");
+
+		// -- Steady state batches don't allocate with recycled messages --
+		bus.recycleOutboundMessages(true);
+		first.record = false;
+		second.record = false;
+		long allocated = measureAllocation(() -> {
+			for (int i = 0; i < 1000; i++) {
+				low.clear();
+				for (int j = 0; j < 64; j++) low.noteOn(0, j, i & 127);
+				bus.sendBatch(low);
+			}
+		});
+		System.out.println("    Allocated " + allocated + " bytes for 1000 recycled batches of 64 messages");
+		assertEq(0L, allocated, "Recycled batch sends don't allocate");
+	}
+
+	/* ========================================================= */
+	/* Layer 21 - scheduled sends                                 */
+	/* ========================================================= */
+
+	static void layer21_scheduledSends() throws Exception {
+		MidiBus bus = new MidiBus(null, "scheduled_bus");
+		FakeDevice device = new FakeDevice("Fake Scheduled");
+		assertTrue(bus.addOutput(device), "Fake output added");
+		assertEq(0L, bus.schedulerStats().sent, "No stats before anything was scheduled");
+
+		// -- Messages are sent in deadline order, FIFO for equal deadlines --
+		long now = System.nanoTime();
+		long ms = 1000000L;
+		bus.sendAt(shortMsg(ShortMessage.NOTE_ON, 0, 3, 100), now + 60 * ms);
+		bus.sendAt(shortMsg(ShortMessage.NOTE_ON, 0, 1, 100), now + 20 * ms);
+		bus.sendAt(shortMsg(ShortMessage.NOTE_ON, 0, 2, 100), now + 40 * ms);
+		bus.sendAfter(shortMsg(ShortMessage.NOTE_ON, 0, 4, 100), 40 * ms);
+		assertEq(0, device.received.size(), "Nothing sent before its deadline");
+		assertEq(4L, bus.schedulerStats().pending, "Four messages pending");
+		long deadline = System.currentTimeMillis() + 2000;
+		while (device.received.size() < 4 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+		int[] order = new int[device.received.size()];
+		for (int i = 0; i < order.length; i++) order[i] = ((ShortMessage)device.received.get(i)).getData1();
+		assertTrue(Arrays.equals(new int[] { 1, 2, 4, 3 }, order), "Sent in deadline order: " + Arrays.toString(order));
+		assertTrue(System.nanoTime() - now >= 60 * ms, "Last message wasn't sent early");
+
+		// -- Pending messages can be cancelled --
+		bus.sendAfter(shortMsg(ShortMessage.NOTE_ON, 0, 5, 100), 1000 * ms);
+		bus.sendAfter(shortMsg(ShortMessage.NOTE_ON, 0, 6, 100), 1000 * ms);
+		assertEq(2, bus.cancelScheduled(), "Two pending messages cancelled");
+		assertEq(0L, bus.schedulerStats().pending, "Nothing pending after cancel");
+
+		// -- Jitter of a steady 1 ms stream --
+		device.record = false;
+		bus.resetSchedulerStats();
+		ShortMessage tick = shortMsg(ShortMessage.NOTE_ON, 0, 60, 100);
+		long start = System.nanoTime() + 5 * ms;
+		for (int i = 0; i < 500; i++) bus.sendAt(tick, start + i * ms);
+		Thread.sleep(600);
+		SchedulerStats stats = bus.schedulerStats();
+		System.out.println("    Scheduler lateness over 500 messages at 1 ms: " + stats);
+		assertEq(500L, stats.sent, "Every scheduled message was sent");
+		assertTrue(stats.minLateness >= 0, "No message was sent early");
+		assertTrue(stats.meanLateness < 2 * ms, "Mean lateness below 2 ms");
+
+		// -- Outputs with timestamps get the message up front with a future timestamp --
+		FakeDevice timed = new FakeDevice("Fake Timed");
+		timed.position = 5000;
+		assertTrue(bus.addOutput(timed), "Timed output added");
+		device.record = true;
+		device.received.clear();
+		bus.deviceScheduling(true);
+		assertTrue(bus.deviceScheduling(), "deviceScheduling getter reflects enable");
+		bus.sendAfter(shortMsg(ShortMessage.NOTE_ON, 0, 7, 100), 50 * ms);
+		assertEq(1, timed.received.size(), "Timed output received the message immediately");
+		long timestamp = timed.timestamps.get(0);
+		assertTrue(timestamp > 5000 + 40000 && timestamp <= 5000 + 50000, "Timestamp is 50 ms ahead: " + timestamp);
+		assertEq(0, device.received.size(), "Other output is still waiting");
+		Thread.sleep(150);
+		assertEq(1, device.received.size(), "Other output received the message when due");
+		assertEq(1, timed.received.size(), "Timed output didn't receive it twice");
+
+		// -- A timed output added before the message is due still gets it when due --
+		bus.sendAfter(shortMsg(ShortMessage.NOTE_ON, 0, 8, 100), 50 * ms);
+		FakeDevice late = new FakeDevice("Fake Late Timed");
+		late.position = 5000;
+		assertTrue(bus.addOutput(late), "Timed output added after scheduling");
+		assertEq(0, late.received.size(), "Late output not handed the message up front");
+		Thread.sleep(150);
+		assertEq(1, late.received.size(), "Late output received the message when due");
+		assertEq(2, timed.received.size(), "Timed output still received it once");
+
+		// -- close() stops the scheduler thread --
+		bus.close();
+		boolean alive = false;
+		for (Thread t : Thread.getAllStackTraces().keySet()) if (t.getName().equals("MidiBus Scheduler [scheduled_bus]")) alive |= t.isAlive();
+		assertTrue(!alive, "Scheduler thread stopped");
+	}
+
+	/* ========================================================= */
+	/* Layer 22 - asynchronous output                             */
+	/* ========================================================= */
+
+	static void layer22_asyncOutput() throws Exception {
+		MidiBus bus = new MidiBus(null, "async_out_bus");
+		FakeDevice slow = new FakeDevice("Fake Slow Out");
+		FakeDevice fast = new FakeDevice("Fake Fast Out");
+		assertTrue(bus.addOutput(slow), "Slow output added");
+
+		// -- Messages are queued and written in order by each output's writer --
+		assertTrue(!bus.asyncOutput(), "asyncOutput defaults to false");
+		assertEq(0, bus.outputStats()[0].capacity, "Synchronous output has no queue");
+		bus.asyncOutput(4, OverflowPolicy.DROP_OLDEST);
+		assertTrue(bus.asyncOutput(), "asyncOutput getter reflects enable");
+		assertTrue(bus.addOutput(fast), "Output added after enabling gets a queue too");
+		bus.recycleOutboundMessages(true);
+		for (int i = 0; i < 3; i++) bus.sendNoteOn(0, i, 100);
+		waitFor(() -> slow.count.get() == 3 && fast.count.get() == 3, 2000);
+		for (int i = 0; i < 3; i++) {
+			assertArrayEq(new byte[] { (byte)0x90, (byte)i, 100 }, fast.bytes.get(i), "Recycled message " + i + " was copied into the queue");
+		}
+
+		// -- A stalled output only backs up its own queue --
+		slow.hold = new CountDownLatch(1);
+		slow.entered = new CountDownLatch(1);
+		bus.sendNoteOn(0, 10, 100);
+		assertTrue(slow.entered.await(2, TimeUnit.SECONDS), "Slow output is stalled");
+		long begin = System.nanoTime();
+		for (int i = 11; i < 20; i++) {
+			long sent = fast.count.get();
+			bus.sendNoteOn(0, i, 100);
+			//Let the fast output keep up, so only the stalled one drops messages
+			waitFor(() -> fast.count.get() > sent, 1000);
+		}
+		assertTrue(System.nanoTime() - begin < 1000000000L, "Senders didn't wait for the stalled output");
+		assertEq(13L, fast.count.get(), "Fast output received everything while the other is stalled");
+		OutputStats stats = bus.outputStats()[0];
+		assertEq("Fake Slow Out", stats.name, "Stats are per output");
+		assertEq(4, stats.depth, "Stalled queue is full");
+		assertEq(5L, stats.dropped, "Oldest messages were dropped");
+		slow.hold.countDown();
+		slow.hold = null;
+		waitFor(() -> slow.count.get() == 8, 2000);
+		int[] pitches = new int[slow.bytes.size() - 3];
+		for (int i = 0; i < pitches.length; i++) pitches[i] = slow.bytes.get(i + 3)[1];
+		assertTrue(Arrays.equals(new int[] { 10, 16, 17, 18, 19 }, pitches), "Stalled output got the message in flight and the latest ones: " + Arrays.toString(pitches));
+		stats = bus.outputStats()[0];
+		System.out.println("    " + stats);
+		assertTrue(stats.maxLatency > 0, "Latency was measured");
+
+		// -- Batches are queued whole --
+		MidiBatch batch = new MidiBatch();
+		batch.noteOn(1, 1, 1).noteOn(1, 2, 1).noteOn(1, 3, 1);
+		fast.bytes.clear();
+		assertEq(0, bus.sendBatch(batch).length, "Queued batch reports no failure");
+		waitFor(() -> fast.bytes.size() == 3 && slow.count.get() == 11, 2000);
+		assertEq(3, fast.bytes.size(), "Queued batch was written");
+
+		// -- Disabling writes what is queued first --
+		slow.hold = new CountDownLatch(1);
+		slow.entered = new CountDownLatch(1);
+		bus.sendNoteOn(0, 30, 100);
+		slow.entered.await(2, TimeUnit.SECONDS);
+		bus.sendNoteOn(0, 31, 100);
+		CountDownLatch hold = slow.hold;
+		slow.hold = null;
+		new Thread(() -> { try { Thread.sleep(50); } catch (InterruptedException e) { } hold.countDown(); }).start();
+		long before = slow.count.get();
+		bus.asyncOutput(false);
+		assertEq(before + 1, slow.count.get(), "Queued message written before asyncOutput(false) returned");
+		assertTrue(!bus.asyncOutput(), "asyncOutput disabled");
+
+		// -- Reconfiguring while another thread sends keeps the order --
+		bus.removeOutput("Fake Slow Out");
+		fast.bytes.clear();
+		fast.delay_nanos = 20000;
+		bus.asyncOutput(64, OverflowPolicy.BLOCK);
+		Thread sender = new Thread(() -> {
+			for (int i = 0; i < 3000; i++) bus.sendControllerChange(0, i >> 7, i & 127);
+		});
+		sender.start();
+		for (int i = 0; sender.isAlive(); i++) {
+			if (i % 3 == 2) bus.asyncOutput(false);
+			else bus.asyncOutput(16 << (i % 3), OverflowPolicy.BLOCK);
+			Thread.sleep(5);
+		}
+		sender.join();
+		bus.asyncOutput(false);
+		fast.delay_nanos = 0;
+		boolean ordered = fast.bytes.size() == 3000;
+		for (int i = 0; ordered && i < 3000; i++) ordered = (fast.bytes.get(i)[1] << 7 | fast.bytes.get(i)[2]) == i;
+		assertTrue(ordered, "Messages arrived in order across queue swaps (" + fast.bytes.size() + " received)");
+
+		// -- close() stops the writer threads --
+		bus.asyncOutput(true);
+		bus.close();
+		boolean alive = false;
+		for (Thread t : Thread.getAllStackTraces().keySet()) if (t.getName().startsWith("MidiBus Writer [async_out_bus")) alive |= t.isAlive();
+		assertTrue(!alive, "Writer threads stopped");
+	}
+
+	/** Polls until the condition holds or the timeout in milliseconds expires. */
+	static void waitFor(java.util.function.BooleanSupplier condition, long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) Thread.sleep(2);
+	}
+
+	/* ========================================================= */
+	/* Layer 23 - redundant outbound state suppression            */
+	/* ========================================================= */
+
+	static void layer23_redundantSuppression() throws Exception {
+		MidiBus bus = new MidiBus(null, "suppress_bus");
+		FakeDevice device = new FakeDevice("Fake Surface");
+		assertTrue(bus.addOutput(device), "Fake output added");
+
+		// -- Default: every message is sent --
+		assertTrue(!bus.suppressRedundant(), "suppressRedundant defaults to false");
+		bus.sendControllerChange(0, 7, 100);
+		bus.sendControllerChange(0, 7, 100);
+		assertEq(2L, device.count.get(), "Default: repeated controller sent twice");
+
+		// -- Repeated state is skipped, changes go through --
+		bus.suppressRedundant(true);
+		assertTrue(bus.suppressRedundant(), "suppressRedundant getter reflects enable");
+		device.count.set(0);
+		for (int frame = 0; frame < 10; frame++) {
+			bus.sendControllerChange(0, 7, 100);
+			bus.sendControllerChange(1, 7, 100);
+			bus.sendMessage(ShortMessage.PROGRAM_CHANGE, 0, 5, 0);
+			bus.sendMessage(ShortMessage.PITCH_BEND, 0, 0, 64);
+			bus.sendNoteOff(0, 60, 0);
+		}
+		assertEq(5L, device.count.get(), "Ten frames of the same state sent once");
+		assertEq(45L, bus.suppressedMessages(), "Suppressed messages counted");
+		bus.sendControllerChange(0, 7, 101);
+		assertEq(6L, device.count.get(), "Changed controller sent");
+
+		// -- NoteOns always go through and turn the note back on --
+		bus.sendNoteOn(0, 60, 100);
+		bus.sendNoteOn(0, 60, 100);
+		bus.sendNoteOff(0, 60, 0);
+		bus.sendNoteOff(0, 60, 0);
+		assertEq(10L, device.count.get(), "NoteOns retrigger, each gets its NoteOff");
+		bus.sendNoteOff(0, 60, 0);
+		assertEq(10L, device.count.get(), "NoteOff beyond the stacked NoteOns skipped");
+
+		// -- Stacked NoteOns each get their NoteOff --
+		device.count.set(0);
+		bus.sendNoteOn(0, 62, 100);
+		bus.sendNoteOn(0, 62, 100);
+		bus.sendNoteOn(0, 62, 100);
+		bus.sendNoteOff(0, 62, 0);
+		bus.sendNoteOn(0, 62, 0);
+		bus.sendNoteOff(0, 62, 0);
+		bus.sendNoteOff(0, 62, 0);
+		assertEq(6L, device.count.get(), "Three NoteOns, three NoteOffs, the fourth skipped");
+		bus.sendNoteOn(0, 64, 100);
+		bus.sendNoteOn(0, 64, 100);
+		bus.sendControllerChange(0, 123, 0);
+		bus.sendNoteOff(0, 64, 0);
+		assertEq(9L, device.count.get(), "All notes off releases stacked NoteOns");
+
+		// -- Messages the cache can't follow --
+		device.count.set(0);
+		bus.sendControllerChange(0, 6, 10);
+		bus.sendControllerChange(0, 6, 10);
+		bus.sendControllerChange(0, 121, 0);
+		bus.sendControllerChange(0, 121, 0);
+		bus.sendControllerChange(0, 7, 101);
+		assertEq(5L, device.count.get(), "Data entry and reset all controllers always sent, reset controllers resent");
+		device.count.set(0);
+		bus.sendControllerChange(0, 0, 1);
+		bus.sendMessage(ShortMessage.PROGRAM_CHANGE, 0, 5, 0);
+		assertEq(2L, device.count.get(), "Program resent after a bank change");
+		device.count.set(0);
+		bus.sendMessage(sysexMsg(new byte[] { (byte)0xF0, 0x7E, 0x7F, 0x09, 0x01, (byte)0xF7 }));
+		bus.sendControllerChange(0, 7, 101);
+		assertEq(2L, device.count.get(), "SysEx makes the cache forget");
+
+		// -- Batches are filtered too --
+		device.count.set(0);
+		MidiBatch batch = new MidiBatch();
+		for (int i = 0; i < 64; i++) batch.controllerChange(0, 20 + (i & 7), 1);
+		bus.sendBatch(batch);
+		assertEq(8L, device.count.get(), "Batch only sends the controllers which change");
+
+		// -- resync() forces a full resend --
+		device.count.set(0);
+		bus.sendControllerChange(0, 7, 101);
+		assertEq(0L, device.count.get(), "Still suppressed before resync");
+		bus.resync();
+		bus.sendControllerChange(0, 7, 101);
+		assertEq(1L, device.count.get(), "Sent again after resync");
+	}
+
+	/* ========================================================= */
+	/* Layer 24 - output rate limiting                            */
+	/* ========================================================= */
+
+	static void layer24_rateLimiting() throws Exception {
+		MidiBus bus = new MidiBus(null, "din_bus");
+		FakeDevice din = new FakeDevice("Fake DIN");
+		assertTrue(bus.addOutput(din), "Fake output added");
+		assertTrue(!bus.rateLimit("No Such Output", MidiBus.DIN_BYTES_PER_SECOND), "Unknown output not limited");
+
+		// -- The writer paces the output to its bandwidth --
+		assertTrue(bus.rateLimit("Fake DIN", 3000, 0), "Rate limit set");
+		assertTrue(bus.asyncOutput(), "Rate limiting enabled asynchronous output");
+		long begin = System.nanoTime();
+		for (int i = 0; i < 300; i++) bus.sendNoteOn(0, i & 127, 100);
+		waitFor(() -> din.count.get() == 300, 3000);
+		long elapsed = (System.nanoTime() - begin) / 1000000;
+		System.out.println("    900 bytes at 3000 bytes/s took " + elapsed + " ms");
+		assertEq(300L, din.count.get(), "Every note was written");
+		assertTrue(elapsed >= 250 && elapsed < 1000, "Notes were paced to the bandwidth");
+
+		// -- Realtime first, then note offs, then the rest --
+		din.bytes.clear();
+		bus.rateLimit("Fake DIN", 300, 0);
+		din.hold = new CountDownLatch(1);
+		din.entered = new CountDownLatch(1);
+		bus.sendMessage(sysexMsg(new byte[] { (byte)0xF0, 0x7D, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte)0xF7 }));
+		assertTrue(din.entered.await(2, TimeUnit.SECONDS), "Writer is busy with the SysEx");
+		bus.sendControllerChange(0, 20, 1);
+		bus.sendControllerChange(0, 21, 1);
+		bus.sendNoteOn(0, 60, 100);
+		bus.sendNoteOff(0, 60, 0);
+		bus.sendNoteOn(0, 62, 0);
+		bus.sendMessage(0xF8);
+		din.hold.countDown();
+		din.hold = null;
+		waitFor(() -> din.bytes.size() == 7, 3000);
+		int[] order = new int[din.bytes.size()];
+		for (int i = 0; i < order.length; i++) order[i] = din.bytes.get(i)[0] & 0xFF;
+		assertTrue(Arrays.equals(new int[] { 0xF0, 0xF8, 0x90, 0xB0, 0xB0, 0x90, 0x80 }, order), "Written by priority: " + Arrays.toString(order));
+		assertEq(62, din.bytes.get(2)[1] & 0xFF, "Velocity 0 note on jumped ahead as a note off");
+		assertEq(60, din.bytes.get(5)[1] & 0xFF, "Note on kept its place");
+
+		// -- A note on keeps its order with the program change before it --
+		din.bytes.clear();
+		din.hold = new CountDownLatch(1);
+		din.entered = new CountDownLatch(1);
+		bus.sendMessage(sysexMsg(new byte[] { (byte)0xF0, 0x7D, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte)0xF7 }));
+		assertTrue(din.entered.await(2, TimeUnit.SECONDS), "Writer is busy with the SysEx");
+		bus.sendMessage(0xC1, 40);
+		bus.sendNoteOn(1, 64, 100);
+		bus.sendNoteOff(1, 64, 0);
+		din.hold.countDown();
+		din.hold = null;
+		waitFor(() -> din.bytes.size() == 4, 3000);
+		order = new int[din.bytes.size()];
+		for (int i = 0; i < order.length; i++) order[i] = din.bytes.get(i)[0] & 0xFF;
+		assertTrue(Arrays.equals(new int[] { 0xF0, 0xC1, 0x91, 0x81 }, order), "Program change, note on, note off: " + Arrays.toString(order));
+
+		// -- Superseded controller values are thinned while backed up --
+		din.bytes.clear();
+		bus.sendMessage(sysexMsg(new byte[] { (byte)0xF0, 0x7D, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte)0xF7 }));
+		for (int i = 0; i < 100; i++) bus.sendControllerChange(0, 7, i);
+		for (int i = 0; i < 100; i++) bus.sendControllerChange(0, 6, i & 1);
+		waitFor(() -> bus.outputStats()[0].depth == 0, 5000);
+		OutputStats stats = bus.outputStats()[0];
+		System.out.println("    " + stats);
+		assertEq(99L, stats.thinned, "Superseded volume values thinned");
+		int volumes = 0;
+		int data_entries = 0;
+		int last_volume = -1;
+		for (byte[] message : din.bytes) {
+			if ((message[0] & 0xF0) != 0xB0) continue;
+			if (message[1] == 7) {
+				volumes++;
+				last_volume = message[2];
+			} else if (message[1] == 6) {
+				data_entries++;
+			}
+		}
+		assertEq(1, volumes, "Only one volume value written");
+		assertEq(99, last_volume, "Latest volume value written");
+		assertEq(100, data_entries, "Data entry is never thinned");
+
+		bus.close();
+	}
+
+	/* ========================================================= */
+	/* Layer 25 - chunked SysEx streaming                         */
+	/* ========================================================= */
+
+	static void layer25_sysexStreaming() throws Exception {
+		MidiBus bus = new MidiBus(null, "sysex_bus");
+		FakeDevice device = new FakeDevice("Fake Sampler");
+		assertTrue(bus.addOutput(device), "Fake output added");
+
+		byte[] dump = new byte[1000];
+		dump[0] = (byte)0xF0;
+		for (int i = 1; i < dump.length - 1; i++) dump[i] = (byte)(i & 0x7F);
+		dump[dump.length - 1] = (byte)0xF7;
+
+		// -- The dump is split into a start packet and continuation packets --
+		SysexTransfer transfer = bus.streamSysex(dump, 100, 50, 0);
+		transfer.get(2, TimeUnit.SECONDS);
+		assertEq(10, device.bytes.size(), "Dump sent as 10 packets");
+		assertEq(0xF0, device.bytes.get(0)[0] & 0xFF, "First packet starts with 0xF0");
+		ByteArrayOutputStream joined = new ByteArrayOutputStream();
+		boolean continuations = true;
+		for (int i = 0; i < device.bytes.size(); i++) {
+			byte[] packet = device.bytes.get(i);
+			if (i > 0) continuations &= (packet[0] & 0xFF) == 0xF7;
+			joined.write(packet, i == 0 ? 0 : 1, i == 0 ? packet.length : packet.length - 1);
+		}
+		assertTrue(continuations, "Following packets are continuations starting with 0xF7");
+		assertArrayEq(dump, joined.toByteArray(), "Packets join back into the dump");
+		assertEq(1000, transfer.bytesSent(), "All bytes reported sent");
+		assertTrue(transfer.progress() == 1f, "Progress reaches 1");
+
+		// -- Packets are paced off the caller's thread --
+		device.bytes.clear();
+		long begin = System.nanoTime();
+		transfer = bus.streamSysex(dump, 200, 0, 20);
+		assertTrue(System.nanoTime() - begin < 20000000L, "streamSysex returns without waiting");
+		transfer.get(2, TimeUnit.SECONDS);
+		assertTrue(System.nanoTime() - begin >= 80000000L, "Packets were 20 ms apart");
+		assertEq(5, device.bytes.size(), "Dump sent as 5 packets");
+
+		// -- Transfers don't interleave --
+		device.bytes.clear();
+		byte[] other = new byte[] { (byte)0xF0, 0x7D, 0x01, 0x02, 0x03, (byte)0xF7 };
+		SysexTransfer first = bus.streamSysex(dump, 250, 0, 5);
+		SysexTransfer second = bus.streamSysex(other, 2, 0, 0);
+		second.get(2, TimeUnit.SECONDS);
+		assertTrue(first.isDone(), "First transfer finished before the second");
+		assertEq(4 + 3, device.bytes.size(), "Both transfers sent");
+		assertEq(0x7D, device.bytes.get(4)[1] & 0xFF, "Second transfer starts after the first one's last packet");
+
+		// -- Cancelling ends the partial message --
+		device.bytes.clear();
+		transfer = bus.streamSysex(dump, 100, 0, 50);
+		waitFor(() -> device.bytes.size() >= 1, 1000);
+		transfer.cancel(false);
+		waitFor(() -> device.bytes.size() > 0 && device.bytes.get(device.bytes.size() - 1).length == 1, 1000);
+		assertTrue(transfer.isCancelled(), "Transfer cancelled");
+		assertTrue(device.bytes.size() < 10, "Cancelled transfer stopped early");
+		assertArrayEq(new byte[] { (byte)0xF7 }, device.bytes.get(device.bytes.size() - 1), "Partial message terminated with 0xF7");
+
+		// -- Other messages wait for the end of the dump, realtime messages don't --
+		device.bytes.clear();
+		transfer = bus.streamSysex(dump, 250, 0, 50);
+		waitFor(() -> device.bytes.size() >= 1, 1000);
+		bus.sendControllerChange(0, 7, 100);
+		bus.sendBatch(new MidiBatch().noteOn(0, 60, 100));
+		bus.sendMessage(0xF8);
+		assertEq(0xF8, device.bytes.get(device.bytes.size() - 1)[0] & 0xFF, "Clock sent between two packets");
+		transfer.get(2, TimeUnit.SECONDS);
+		int[] order = new int[device.bytes.size()];
+		for (int i = 0; i < order.length; i++) order[i] = device.bytes.get(i)[0] & 0xFF;
+		assertEq(7, order.length, "Dump, clock and held back messages sent");
+		assertEq(0xB0, order[5], "Controller change sent after the last packet");
+		assertEq(0x90, order[6], "Batched note sent after the controller change");
+		assertEq(0xF7, device.bytes.get(4)[device.bytes.get(4).length - 1] & 0xFF, "Last packet before the held back messages");
+
+		// -- Removing an output during a dump ends the partial message --
+		FakeDevice removed = new FakeDevice("Fake Removed Sampler");
+		assertTrue(bus.addOutput(removed), "Second output added");
+		transfer = bus.streamSysex(dump, 100, 0, 50);
+		waitFor(() -> removed.bytes.size() >= 1, 1000);
+		bus.sendNoteOn(0, 62, 100);
+		bus.removeOutput("Fake Removed Sampler");
+		int sent = removed.bytes.size();
+		assertArrayEq(new byte[] { (byte)0xF7 }, removed.bytes.get(sent - 3), "Partial message terminated with 0xF7");
+		assertEq(0x90, removed.bytes.get(sent - 2)[0] & 0xFF, "Held back note sent once the message ended");
+		assertEq(0x80, removed.bytes.get(sent - 1)[0] & 0xFF, "Then released");
+		transfer.cancel(false);
+
+		// -- Invalid data fails the future --
+		transfer = bus.streamSysex(new byte[] { 0x7D, 0x01 });
+		assertTrue(transfer.isCompletedExceptionally(), "Non SysEx data fails the transfer");
+
+		bus.close();
+	}
+
+	/* ========================================================= */
+	/* Layer 26 - active note tracking                            */
+	/* ========================================================= */
+
+	static void layer26_activeNotes() throws Exception {
+		MidiBus bus = new MidiBus(null, "notes_bus");
+		FakeDevice synth = new FakeDevice("Fake Synth");
+		FakeDevice other = new FakeDevice("Fake Other Synth");
+		assertTrue(bus.addOutput(synth) && bus.addOutput(other), "Fake outputs added");
+
+		// -- Only the sounding notes are released, whichever method sent them --
+		bus.sendNoteOn(0, 60, 100);
+		bus.sendNoteOn(0, 64, 100);
+		bus.sendMessage(ShortMessage.NOTE_ON, 9, 36, 127);
+		bus.sendMessage(new byte[] { (byte)0x9F, 127, 1 });
+		bus.sendBatch(new MidiBatch().noteOn(3, 40, 90).noteOn(3, 41, 90));
+		bus.sendNoteOff(0, 64, 0);
+		bus.sendNoteOn(3, 41, 0);
+		bus.sendNoteOn(5, 50, 100);
+		bus.sendControllerChange(5, 123, 0);
+		synth.bytes.clear();
+		bus.allNotesOff();
+		byte[][] expected = {
+			{ (byte)0x80, 60, 0 },
+			{ (byte)0x83, 40, 0 },
+			{ (byte)0x89, 36, 0 },
+			{ (byte)0x8F, 127, 0 },
+		};
+		assertEq(expected.length, synth.bytes.size(), "One NoteOff per sounding note");
+		for (int i = 0; i < expected.length && i < synth.bytes.size(); i++) {
+			assertArrayEq(expected[i], synth.bytes.get(i), "NoteOff " + i);
+		}
+		synth.bytes.clear();
+		bus.allNotesOff();
+		assertEq(0, synth.bytes.size(), "Nothing left sounding");
+
+		// -- Removing an output releases its notes --
+		bus.sendNoteOn(1, 70, 100);
+		other.bytes.clear();
+		bus.removeOutput("Fake Other Synth");
+		assertEq(1, other.bytes.size(), "Removed output got a NoteOff");
+		assertArrayEq(new byte[] { (byte)0x81, 70, 0 }, other.bytes.get(0), "Removed output's note released");
+
+		// -- Closing the bus releases the notes --
+		bus.sendNoteOn(2, 72, 100);
+		synth.bytes.clear();
+		bus.close();
+		assertEq(2, synth.bytes.size(), "Close released the sounding notes");
+		assertArrayEq(new byte[] { (byte)0x81, 70, 0 }, synth.bytes.get(0), "Close released channel 1");
+		assertArrayEq(new byte[] { (byte)0x82, 72, 0 }, synth.bytes.get(1), "Close released channel 2");
+	}
+
+	/* ========================================================= */
+	/* Layer 27 - parallel fan-out to the outputs                 */
+	/* ========================================================= */
+
+	static void layer27_parallelOutput() throws Exception {
+		MidiBus bus = new MidiBus(null, "fan_out_bus");
+		assertTrue(!bus.parallelOutput(), "Parallel output off by default");
+
+		// -- Every output gets every message, in order --
+		FakeDevice[] outputs = new FakeDevice[8];
+		for (int i = 0; i < outputs.length; i++) {
+			outputs[i] = new FakeDevice("Fake Port " + i);
+			bus.addOutput(outputs[i]);
+		}
+		bus.parallelOutput(true);
+		assertTrue(bus.parallelOutput(), "Parallel output enabled");
+		for (int i = 0; i < 100; i++) bus.sendControllerChange(0, 1, i);
+		bus.sendBatch(new MidiBatch().noteOn(0, 60, 100).noteOff(0, 60, 0));
+		boolean complete = true, ordered = true;
+		for (FakeDevice output : outputs) {
+			complete &= output.bytes.size() == 102;
+			for (int i = 0; i < 100 && i < output.bytes.size(); i++) ordered &= output.bytes.get(i)[2] == i;
+		}
+		assertTrue(complete, "Every output received every message before the send returned");
+		assertTrue(ordered, "Each output received the messages in order");
+
+		// -- Failures are still reported per output --
+		outputs[3].fail = true;
+		String[] failed = bus.sendBatch(new MidiBatch().controllerChange(0, 7, 100));
+		assertEq(1, failed.length, "One output failed the batch");
+		assertEq("Fake Port 3", failed.length == 1 ? failed[0] : null, "Failed output named");
+		outputs[3].fail = false;
+		bus.close();
+
+		// -- Benchmark: send latency against the number of outputs --
+		long delay = 200000;
+		double[][] results = new double[3][];
+		int[] counts = { 1, 4, 12 };
+		for (int c = 0; c < counts.length; c++) {
+			MidiBus bench = new MidiBus(null, "fan_out_bench");
+			for (int i = 0; i < counts[c]; i++) {
+				FakeDevice output = new FakeDevice("Fake Slow Port " + i);
+				output.record = false;
+				output.delay_nanos = delay;
+				bench.addOutput(output);
+			}
+			results[c] = new double[] { sendLatency(bench), 0 };
+			bench.parallelOutput(true);
+			results[c][1] = sendLatency(bench);
+			bench.close();
+			System.out.printf("    %2d outputs: sequential %.3f ms, parallel %.3f ms per send%n", counts[c], results[c][0] / 1e6, results[c][1] / 1e6);
+		}
+		assertTrue(results[2][1] < results[2][0] / 2, "Parallel output at least twice as fast with 12 slow outputs");
+	}
+
+	/* ========================================================= */
+	/* Layer 28 - indexed device catalog                          */
+	/* ========================================================= */
+
+	static void layer28_deviceCatalog() throws Exception {
+		FakeDevice both = new FakeDevice("Fake Interface");
+		FakeDevice keyboard = new FakeDevice("Fake Keyboard") {
+			public int getMaxReceivers() { return 0; }
+		};
+		FakeDevice synth = new FakeDevice("Fake Synth") {
+			public int getMaxTransmitters() { return 0; }
+		};
+		FakeDevice twin = new FakeDevice("Fake Synth") {
+			public int getMaxTransmitters() { return 0; }
+		};
+		FakeDevice gone = new FakeDevice("Fake Unplugged");
+		FakeDevice[] all = { both, keyboard, synth, twin, gone };
+		MidiDevice.Info[] infos = new MidiDevice.Info[all.length];
+		for (int i = 0; i < all.length; i++) infos[i] = all[i].info;
+
+		java.util.concurrent.atomic.AtomicInteger probes = new java.util.concurrent.atomic.AtomicInteger();
+		DeviceCatalog catalog = new DeviceCatalog(infos, info -> {
+			probes.incrementAndGet();
+			for (FakeDevice device : all) {
+				if (device.info == info && device != gone) return device;
+			}
+			throw new MidiUnavailableException("Unplugged");
+		});
+
+		// -- Each device is probed exactly once and classified --
+		assertEq(all.length, probes.get(), "One probe per device");
+		assertEq(Arrays.asList(new String[] { "Fake Interface", "Fake Keyboard" }), Arrays.asList(catalog.input_names), "Inputs listed in order");
+		assertEq(Arrays.asList(new String[] { "Fake Interface", "Fake Synth", "Fake Synth" }), Arrays.asList(catalog.output_names), "Outputs listed in order");
+		assertEq(Arrays.asList(new String[] { "Fake Unplugged" }), Arrays.asList(catalog.unavailable_names), "Unavailable device listed");
+		assertEq(0, catalog.max_receivers[1], "Receiver count recorded");
+		assertTrue(!catalog.available[4], "Unplugged device marked unavailable");
+
+		// -- Lookups by name and index don't probe again --
+		assertTrue(catalog.input("Fake Keyboard") == keyboard.info, "Input found by name");
+		assertTrue(catalog.output("Fake Synth") == synth.info, "First output of a name wins");
+		assertTrue(catalog.output("Fake Keyboard") == null, "Input-only device isn't an output");
+		assertTrue(catalog.output(2) == twin.info, "Output found by index");
+		assertTrue(catalog.input(2) == null && catalog.input(-1) == null, "Out of range index");
+		assertEq(all.length, probes.get(), "Lookups didn't probe");
+
+		// -- The static listings come from one scan --
+		MidiBus.findMidiDevices();
+		DeviceCatalog current = MidiBus.catalog;
+		String[] outputs = MidiBus.availableOutputs();
+		MidiBus.availableInputs();
+		MidiBus.unavailableDevices();
+		assertTrue(MidiBus.catalog == current, "Listings reuse the catalog");
+		if (outputs.length > 0) {
+			outputs[0] = null;
+			assertTrue(MidiBus.availableOutputs()[0] != null, "Returned arrays are copies");
+		}
+	}
+
+	/* ========================================================= */
+	/* Layer 29 - device diffing and the hot-plug watcher         */
+	/* ========================================================= */
+
+	static void layer29_deviceWatcher() throws Exception {
+		FakeDevice keyboard = new FakeDevice("Fake Keyboard") {
+			public int getMaxReceivers() { return 0; }
+		};
+		FakeDevice synth = new FakeDevice("Fake Synth") {
+			public int getMaxTransmitters() { return 0; }
+		};
+		FakeDevice pads = new FakeDevice("Fake Pads");
+		List<FakeDevice> plugged = new ArrayList<>(Arrays.asList(keyboard, synth));
+		List<String> probed = new ArrayList<>();
+		DeviceCatalog.Probe probe = info -> {
+			probed.add(info.getName());
+			for (FakeDevice device : plugged) if (device.info == info) return device;
+			throw new MidiUnavailableException("Unplugged");
+		};
+
+		DeviceCatalog first = new DeviceCatalog(new MidiDevice.Info[] { keyboard.info, synth.info }, probe, null);
+		assertEq(0, first.added.length + first.removed.length, "First scan reports no changes");
+
+		// -- Unchanged devices aren't probed again --
+		probed.clear();
+		DeviceCatalog same = new DeviceCatalog(new MidiDevice.Info[] { keyboard.info, synth.info }, probe, first);
+		assertEq(0, probed.size(), "Rescan without changes probed nothing");
+		assertEq(0, same.added.length + same.removed.length, "No changes reported");
+		assertEq(Arrays.asList(first.input_names), Arrays.asList(same.input_names), "Classification kept");
+
+		// -- A new Info object for the same device matches by its description --
+		MidiDevice.Info copy = new MidiDevice.Info("Fake Synth", "themidibus", "fake device", "1") { };
+		DeviceCatalog renewed = new DeviceCatalog(new MidiDevice.Info[] { keyboard.info, copy }, probe, same);
+		assertEq(0, probed.size(), "Same device behind a new Info isn't probed");
+		assertEq(0, renewed.added.length + renewed.removed.length, "Same device behind a new Info isn't a change");
+		assertTrue(renewed.output("Fake Synth") == copy, "Lookups return the new Info");
+
+		// -- Plugging in and unplugging --
+		plugged.add(pads);
+		DeviceCatalog added = new DeviceCatalog(new MidiDevice.Info[] { keyboard.info, copy, pads.info }, probe, renewed);
+		assertEq(Arrays.asList("Fake Pads"), probed, "Only the new device was probed");
+		assertEq(1, added.added.length, "One device added");
+		assertTrue(added.isInput(pads.info) && added.isOutput(pads.info), "Added device classified");
+
+		DeviceCatalog removed = new DeviceCatalog(new MidiDevice.Info[] { copy, pads.info }, probe, added);
+		assertEq(1, removed.removed.length, "One device removed");
+		assertTrue(removed.removed.length == 1 && removed.removed[0].info == keyboard.info
+				&& removed.removed[0].input && !removed.removed[0].output, "Removed device and what it was");
+
+		// -- A listed device becoming unavailable counts as removed, and back as added --
+		plugged.remove(pads);
+		DeviceCatalog dead = new DeviceCatalog(new MidiDevice.Info[] { copy, pads.info }, probe, removed);
+		assertEq(0, dead.removed.length, "Classified devices aren't probed again");
+		DeviceCatalog gone = new DeviceCatalog(new MidiDevice.Info[] { copy }, probe, dead);
+		DeviceCatalog unavailable = new DeviceCatalog(new MidiDevice.Info[] { copy, pads.info }, probe, gone);
+		assertEq(Arrays.asList("Fake Pads"), Arrays.asList(unavailable.unavailable_names), "Unplugged device listed unavailable");
+		plugged.add(pads);
+		DeviceCatalog back = new DeviceCatalog(new MidiDevice.Info[] { copy, pads.info }, probe, unavailable);
+		assertEq(1, back.added.length, "Unavailable device coming back counts as added");
+
+		// -- Listeners hear about the changes, a failing one doesn't stop the others --
+		List<String> events = new ArrayList<>();
+		DeviceListener failing = new DeviceListener() {
+			public void deviceAdded(String name, boolean input, boolean output) { throw new IllegalStateException("Listener failed"); }
+			public void deviceRemoved(String name, boolean input, boolean output) { throw new IllegalStateException("Listener failed"); }
+		};
+		DeviceListener recording = new DeviceListener() {
+			public void deviceAdded(String name, boolean input, boolean output) { events.add("+" + name + (input ? " in" : "") + (output ? " out" : "")); }
+			public void deviceRemoved(String name, boolean input, boolean output) { events.add("-" + name + (input ? " in" : "") + (output ? " out" : "")); }
+		};
+		assertTrue(MidiBus.addDeviceListener(failing) && MidiBus.addDeviceListener(recording), "Device listeners added");
+		assertTrue(!MidiBus.addDeviceListener(recording), "Device listener not added twice");
+		MidiBus.notifyDeviceListeners(added);
+		MidiBus.notifyDeviceListeners(removed);
+		assertEq(Arrays.asList("+Fake Pads in out", "-Fake Keyboard in"), events, "Listener notified of both changes");
+		assertTrue(MidiBus.removeDeviceListener(failing) && MidiBus.removeDeviceListener(recording), "Device listeners removed");
+		events.clear();
+		MidiBus.notifyDeviceListeners(added);
+		assertEq(0, events.size(), "Removed listener not notified");
+
+		// -- The watcher rescans in the background and stops --
+		MidiBus.findMidiDevices();
+		DeviceCatalog before = MidiBus.catalog;
+		MidiBus.watchDevices(20);
+		assertTrue(MidiBus.watchingDevices(), "Watcher running");
+		waitFor(() -> MidiBus.catalog != before, 2000);
+		assertTrue(MidiBus.catalog != before, "Watcher replaced the catalog");
+		assertEq(Arrays.asList(before.input_names), Arrays.asList(MidiBus.catalog.input_names), "Rescan without changes lists the same inputs");
+		MidiBus.stopWatchingDevices();
+		assertTrue(!MidiBus.watchingDevices(), "Watcher stopped");
+		boolean alive = false;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) alive |= thread.getName().equals("MidiBus Device Watcher");
+		assertTrue(!alive, "Watcher thread gone");
+	}
+
+	/* ========================================================= */
+	/* Layer 30 - automatic reconnection of lost devices          */
+	/* ========================================================= */
+
+	static void layer30_autoReconnect() throws Exception {
+		MidiBus bus = new MidiBus(null, "reconnect_bus");
+		FakeDevice synth = new FakeDevice("Fake Synth");
+		FakeDevice keyboard = new FakeDevice("Fake Keyboard");
+		assertTrue(bus.addOutput(synth) && bus.addInput(keyboard), "Fake devices added");
+		List<byte[]> received = java.util.Collections.synchronizedList(new ArrayList<>());
+		bus.addMidiListener((RawMidiListener)data -> received.add(data));
+
+		// -- Off by default: a failing output still throws --
+		assertTrue(!bus.autoReconnect(), "Automatic reconnection off by default");
+		synth.fail = true;
+		boolean threw = false;
+		try {
+			bus.sendNoteOn(0, 60, 100);
+		} catch (IllegalStateException e) {
+			threw = true;
+		}
+		assertTrue(threw, "Failure surfaces without automatic reconnection");
+
+		// -- A failing output is lost, and rebound once the device is back --
+		java.util.Map<String, MidiDevice> plugged = new java.util.concurrent.ConcurrentHashMap<>();
+		java.util.concurrent.atomic.AtomicInteger lookups = new java.util.concurrent.atomic.AtomicInteger();
+		bus.device_locator = (name, input) -> {
+			lookups.incrementAndGet();
+			return plugged.get(name);
+		};
+		bus.autoReconnect(true);
+		assertTrue(bus.autoReconnect(), "Automatic reconnection enabled");
+		bus.sendControllerChange(0, 7, 100);
+		assertEq(Arrays.asList("Fake Synth"), Arrays.asList(bus.lostDevices()), "Failing output lost");
+		bus.sendControllerChange(0, 7, 101);
+		assertEq(0, synth.bytes.size(), "Messages to a lost output dropped");
+
+		// -- Attempts back off while the device is away --
+		Thread.sleep(700);
+		int attempts = lookups.get();
+		assertTrue(attempts >= 2 && attempts <= 4, "Backed off to 100, 200, 400ms (" + attempts + " attempts)");
+
+		FakeDevice replugged = new FakeDevice("Fake Synth");
+		plugged.put("Fake Synth", replugged);
+		bus.reconnector.deviceAdded("Fake Synth", true, true);
+		waitFor(() -> bus.reconnects("Fake Synth") == 1, 2000);
+		assertEq(1L, bus.reconnects("Fake Synth"), "Output reconnected when the device came back");
+		assertEq(0, bus.lostDevices().length, "Nothing lost anymore");
+		bus.sendControllerChange(0, 7, 102);
+		assertEq(1, replugged.bytes.size(), "Output sends to the new device");
+		assertEq(Arrays.asList("Fake Synth"), Arrays.asList(bus.attachedOutputs()), "Output kept its place");
+
+		// -- An input disappearing from the device list is rebound, its listeners carry over --
+		bus.reconnector.deviceRemoved("Fake Keyboard", true, true);
+		assertEq(Arrays.asList("Fake Keyboard"), Arrays.asList(bus.lostDevices()), "Removed input lost");
+		FakeDevice keyboard2 = new FakeDevice("Fake Keyboard");
+		plugged.put("Fake Keyboard", keyboard2);
+		bus.reconnector.deviceAdded("Fake Keyboard", true, true);
+		waitFor(() -> bus.reconnects("Fake Keyboard") == 1, 2000);
+		assertEq(2L, bus.reconnects(), "Both devices reconnected once");
+		keyboard2.transmit(shortMsg(ShortMessage.NOTE_ON, 0, 60, 100));
+		assertEq(1, received.size(), "Listener receives from the rebound input");
+
+		// -- A device which comes back with the same Info is reopened, not the lost instance --
+		FakeDevice module = new FakeDevice("Fake Module");
+		assertTrue(bus.addOutput(module) && bus.addInput(module), "Fake module added");
+		module.fail = true;
+		bus.sendNoteOn(1, 60, 100);
+		bus.reconnector.deviceRemoved("Fake Module", true, true);
+		assertEq(Arrays.asList("Fake Module", "Fake Module"), Arrays.asList(bus.lostDevices()), "Module lost as input and output");
+		assertTrue(!module.isOpen(), "Lost instance closed");
+		assertTrue(DeviceRegistry.entry(module) == null, "Lost instance given back to the registry");
+		FakeDevice module2 = new FakeDevice(module.info);
+		plugged.put("Fake Module", module2);
+		bus.reconnector.deviceAdded("Fake Module", true, true);
+		waitFor(() -> bus.reconnects("Fake Module") == 2, 2000);
+		assertEq(2L, bus.reconnects("Fake Module"), "Module reconnected as input and output");
+		assertTrue(module2.isOpen() && module2.opens.get() == 1, "Returning instance opened");
+		assertEq(1, module2.transmitters.get(), "Input listens to the returning instance");
+		assertEq(2, DeviceRegistry.users(module.info), "Registry counts the input and output once each");
+		bus.sendNoteOn(1, 60, 100);
+		assertEq(1, module2.bytes.size(), "Output sends to the returning instance");
+		bus.removeInput("Fake Module");
+		bus.removeOutput("Fake Module");
+		assertTrue(!module2.isOpen(), "Returning instance closed with its last user");
+
+		// -- A removed device isn't reconnected --
+		bus.reconnector.deviceRemoved("Fake Synth", true, true);
+		bus.removeOutput("Fake Synth");
+		Thread.sleep(300);
+		assertEq(0, bus.attachedOutputs().length, "Removed output stays removed");
+
+		bus.close();
+		assertTrue(!bus.autoReconnect(), "Closing disables automatic reconnection");
+		MidiBus.stopWatchingDevices();
+	}
+
+	/* ========================================================= */
+	/* Layer 31 - opening devices in the background               */
+	/* ========================================================= */
+
+	static void layer31_asyncOpen() throws Exception {
+		MidiBus bus = new MidiBus(null, "open_bus");
+		java.util.Map<String, FakeDevice> installed = new java.util.HashMap<>();
+		String[] names = new String[8];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "Fake Slow Port " + i;
+			FakeDevice device = new FakeDevice(names[i]);
+			device.open_millis = 200;
+			installed.put(names[i], device);
+		}
+		bus.device_locator = (name, input) -> installed.get(name);
+
+		// -- Bulk adds open the devices concurrently and attach them in order --
+		long start = System.nanoTime();
+		String[] failed = bus.addInputs(names);
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		System.out.println("    8 inputs taking 200ms each to open added in " + elapsed + "ms");
+		assertEq(0, failed.length, "All inputs added");
+		assertTrue(elapsed < 800, "Devices opened concurrently");
+		assertEq(Arrays.asList(names), Arrays.asList(bus.attachedInputs()), "Inputs attached in the given order");
+
+		// -- Devices already open aren't opened again --
+		failed = bus.addOutputs(names[0], names[1], "Fake Missing Port");
+		assertEq(Arrays.asList("Fake Missing Port"), Arrays.asList(failed), "Missing output reported");
+		assertEq(1, installed.get(names[0]).opens.get(), "Open device not opened again");
+		assertEq(2, bus.attachedOutputs().length, "Outputs attached");
+
+		// -- A single add returns before the device is open --
+		FakeDevice slow = new FakeDevice("Fake Slower Port");
+		slow.open_millis = 300;
+		installed.put(slow.info.getName(), slow);
+		start = System.nanoTime();
+		java.util.concurrent.CompletableFuture<Boolean> added = bus.addOutputAsync("Fake Slower Port");
+		assertTrue((System.nanoTime() - start) / 1000000 < 100, "addOutputAsync returned right away");
+		assertTrue(added.get(2, TimeUnit.SECONDS), "Output added in the background");
+		assertTrue(Arrays.asList(bus.attachedOutputs()).contains("Fake Slower Port"), "Output attached once open");
+		assertTrue(!bus.addOutputAsync("Fake Slower Port").get(2, TimeUnit.SECONDS), "Attached output not added twice");
+		assertEq(1, slow.opens.get(), "Attached output not opened twice");
+
+		// -- Failures complete the future exceptionally with throwErrors --
+		assertTrue(!bus.addInputAsync("Fake Missing Port").get(2, TimeUnit.SECONDS), "Missing input completes with false");
+		bus.throwErrors(true);
+		try {
+			bus.addInputAsync("Fake Missing Port").get(2, TimeUnit.SECONDS);
+			assertTrue(false, "Missing input completes exceptionally with throwErrors");
+		} catch (java.util.concurrent.ExecutionException e) {
+			assertTrue(e.getCause() instanceof RuntimeException, "Missing input completes exceptionally with throwErrors");
+		} finally {
+			bus.throwErrors(false);
+		}
+
+		// -- A device which fails to open is reported, not opened a second time --
+		FakeDevice locked = new FakeDevice("Fake Locked Port") {
+			public void open() throws MidiUnavailableException {
+				opens.incrementAndGet();
+				throw new MidiUnavailableException("Port in use");
+			}
+		};
+		installed.put(locked.info.getName(), locked);
+		assertEq(Arrays.asList("Fake Locked Port"), Arrays.asList(bus.addOutputs("Fake Locked Port")), "Locked output reported");
+		assertEq(1, locked.opens.get(), "Locked output opened once");
+		bus.throwErrors(true);
+		try {
+			bus.addInputAsync("Fake Locked Port").get(2, TimeUnit.SECONDS);
+			assertTrue(false, "Locked input completes exceptionally with throwErrors");
+		} catch (java.util.concurrent.ExecutionException e) {
+			Throwable cause = e.getCause().getCause();
+			assertTrue(cause instanceof MidiUnavailableException && cause.getMessage().equals("Port in use"), "Original open failure reported");
+		} finally {
+			bus.throwErrors(false);
+		}
+		assertEq(2, locked.opens.get(), "Locked input opened once");
+		assertEq(0, DeviceRegistry.users(locked.info), "Locked device not counted");
+		bus.close();
+	}
+
+	/* ========================================================= */
+	/* Layer 32 - devices shared between buses                    */
+	/* ========================================================= */
+
+	static void layer32_deviceRegistry() throws Exception {
+		MidiBus first = new MidiBus(null, "registry_bus_1");
+		MidiBus second = new MidiBus(null, "registry_bus_2");
+		FakeDevice shared = new FakeDevice("Fake Shared Interface");
+
+		// -- One open however many inputs and outputs use the device --
+		assertTrue(first.addInput(shared) && first.addOutput(shared) && second.addOutput(shared), "Shared device added three times");
+		assertEq(1, shared.opens.get(), "Device opened once");
+		assertEq(3, DeviceRegistry.users(shared.info), "Three users");
+
+		// -- Closing one bus leaves the device to the other --
+		first.close();
+		assertTrue(shared.isOpen(), "Device still open for the other bus");
+		assertEq(1, DeviceRegistry.users(shared.info), "One user left");
+		shared.bytes.clear();
+		second.sendNoteOn(0, 60, 100);
+		assertEq(1, shared.bytes.size(), "Other bus still sends to the device");
+
+		// -- The last user closes it --
+		second.removeOutput("Fake Shared Interface");
+		assertTrue(!shared.isOpen(), "Device closed by its last user");
+		assertEq(0, DeviceRegistry.users(shared.info), "No users left");
+		assertTrue(DeviceRegistry.entry(shared) == null, "Released device forgotten");
+
+		// -- And the next one opens it again --
+		assertTrue(second.addOutput(shared), "Device added again");
+		assertEq(2, shared.opens.get(), "Device reopened");
+		second.close();
+		assertTrue(!shared.isOpen(), "Closing the bus closed the device");
+
+		// -- Devices opened by someone else are left open --
+		FakeDevice opened = new FakeDevice("Fake Opened Elsewhere");
+		opened.open();
+		MidiBus third = new MidiBus(null, "registry_bus_3");
+		assertTrue(third.addOutput(opened), "Device opened elsewhere added");
+		third.close();
+		assertTrue(opened.isOpen(), "Device opened elsewhere left open");
+
+		// -- A device which fails to open isn't counted --
+		FakeDevice broken = new FakeDevice("Fake Broken") {
+			public void open() { throw new IllegalStateException("Open failed"); }
+		};
+		MidiBus fourth = new MidiBus(null, "registry_bus_4");
+		boolean threw = false;
+		try {
+			fourth.addOutput(broken);
+		} catch (IllegalStateException e) {
+			threw = true;
+		}
+		assertTrue(threw && fourth.attachedOutputs().length == 0, "Broken device not added");
+		assertEq(0, DeviceRegistry.users(broken.info), "Broken device not counted");
+		fourth.close();
+
+		// -- Closing every device is an explicit opt-in --
+		MidiBus fifth = new MidiBus(null, "registry_bus_5");
+		FakeDevice in_use = new FakeDevice("Fake Device In Use");
+		assertTrue(fifth.addOutput(in_use), "Device in use added");
+		MidiBus.closeAllMidiDevices();
+		assertTrue(!in_use.isOpen(), "Device in use by a bus closed");
+		fifth.close();
+		assertEq(0, DeviceRegistry.users(in_use.info), "Closed device still given back");
+
+		// -- Concurrent use leaves nothing behind once everyone let go --
+		FakeDevice busy = new FakeDevice("Fake Busy Interface");
+		Thread[] threads = new Thread[4];
+		java.util.concurrent.atomic.AtomicInteger failures = new java.util.concurrent.atomic.AtomicInteger();
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < 500; j++) {
+					try {
+						MidiDevice device = DeviceRegistry.acquire(busy);
+						if (!device.isOpen()) failures.incrementAndGet();
+						DeviceRegistry.release(device);
+					} catch (MidiUnavailableException e) {
+						failures.incrementAndGet();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) thread.join();
+		assertEq(0, failures.get(), "Every user got an open device");
+		assertTrue(DeviceRegistry.entry(busy) == null && !busy.isOpen(), "Device closed and forgotten");
+	}
+
+	/* ========================================================= */
+	/* Layer 33 - one transmitter per input device                */
+	/* ========================================================= */
+
+	static void layer33_inputDemux() throws Exception {
+		FakeDevice keyboard = new FakeDevice("Fake Shared Keyboard");
+		MidiBus[] buses = new MidiBus[5];
+		List<List<byte[]>> received = new ArrayList<>();
+		for (int i = 0; i < buses.length; i++) {
+			buses[i] = new MidiBus(null, "demux_bus_" + i);
+			List<byte[]> bus_received = java.util.Collections.synchronizedList(new ArrayList<>());
+			received.add(bus_received);
+			buses[i].addMidiListener((RawMidiListener)data -> bus_received.add(data));
+			assertTrue(buses[i].addInput(keyboard), "Bus " + i + " listens to the keyboard");
+		}
+
+		// -- One transmitter feeds every bus, from a single decode --
+		assertEq(1, keyboard.transmitters.get(), "One transmitter for five buses");
+		keyboard.transmit(shortMsg(ShortMessage.NOTE_ON, 0, 60, 100));
+		boolean all = true, shared = true;
+		for (List<byte[]> bus_received : received) {
+			all &= bus_received.size() == 1;
+			if (bus_received.size() == 1) shared &= bus_received.get(0) == received.get(0).get(0);
+		}
+		assertTrue(all, "Every bus received the message");
+		assertTrue(shared, "Every bus got the bytes of the same decode");
+
+		// -- Asynchronous and synchronous buses share the transmitter --
+		buses[1].asyncDispatch(true);
+		keyboard.transmit(shortMsg(ShortMessage.CONTROL_CHANGE, 0, 1, 64));
+		waitFor(() -> received.get(1).size() == 2, 2000);
+		assertEq(2, received.get(0).size(), "Synchronous bus received the second message");
+		assertEq(2, received.get(1).size(), "Asynchronous bus received the second message");
+
+		// -- A failing listener on one bus doesn't starve the others --
+		buses[2].addMidiListener((RawMidiListener)data -> { throw new IllegalStateException("Listener failed"); });
+		boolean threw = false;
+		try {
+			keyboard.transmit(shortMsg(ShortMessage.NOTE_OFF, 0, 60, 0));
+		} catch (IllegalStateException e) {
+			threw = true;
+		}
+		assertTrue(threw, "Listener failure still surfaces");
+		assertEq(3, received.get(4).size(), "Later bus still received the message");
+
+		// -- Buses leaving keep the transmitter until the last one --
+		for (int i = 0; i < 4; i++) buses[i].close();
+		assertEq(1, keyboard.transmitters.get(), "Transmitter kept for the last bus");
+		keyboard.transmit(shortMsg(ShortMessage.NOTE_ON, 0, 62, 100));
+		assertEq(4, received.get(4).size(), "Last bus still receives");
+		assertEq(3, received.get(0).size(), "Closed bus doesn't receive");
+		buses[4].removeInput("Fake Shared Keyboard");
+		assertEq(0, keyboard.transmitters.get(), "Transmitter closed with the last input");
+		assertTrue(!keyboard.isOpen(), "Device closed with the last input");
+		buses[4].close();
+	}
+
+	/**
+	 * Returns the mean time sendNoteOn takes on the given bus, in nanoseconds.
+	 */
+	static double sendLatency(MidiBus bus) {
+		for (int i = 0; i < 20; i++) bus.sendNoteOn(0, 60, 100);
+		int sends = 50;
+		long start = System.nanoTime();
+		for (int i = 0; i < sends; i++) bus.sendNoteOn(0, 60 + i % 12, 100);
+		return (System.nanoTime() - start) / (double)sends;
+	}
+
+	/**
+	 * Runs the given code twice to warm it up and returns the number of bytes the current thread allocated during the
+	 * second run, or 0 if the JVM can't measure per-thread allocation.
+	 */
+	static long measureAllocation(Runnable code) {
+		java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return 0;
+		com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean)bean;
+		long id = Thread.currentThread().getId();
+		code.run();
+		long before = sun.getThreadAllocatedBytes(id);
+		code.run();
+		return sun.getThreadAllocatedBytes(id) - before;
+	}
+
 	/* ========================================================= */
 	/* Support classes                                            */
 	/* ========================================================= */
@@ -1144,6 +2903,41 @@ public class MidiBusTest {
 		public void noteOn(int channel, int pitch, int velocity) { count++; }
 	}
 
+	/** Parent which only declares the primitive callbacks. */
+	public static class PrimitiveParent {
+		public int count;
+		public void noteOn(int channel, int pitch, int velocity) { count++; }
+		public void noteOn(int channel, int pitch, int velocity, long timestamp, String bus_name) { count++; }
+		public void noteOff(int channel, int pitch, int velocity) { count++; }
+		public void controllerChange(int channel, int number, int value, long timestamp, String bus_name) { count++; }
+	}
+
+	/** Parent which only declares the object callbacks. */
+	public static class ObjectOnlyParent {
+		public int count;
+		public void noteOn(Note note) { count++; }
+		public void noteOff(Note note) { count++; }
+		public void controllerChange(ControlChange change) { count++; }
+	}
+
+	/** Parent mimicking the PApplet registerMethod() hooks used by frame dispatch. */
+	public static class FrameParent {
+		public int count, lastPitch;
+		public Thread lastThread;
+		public Object registered;
+		public void noteOn(int channel, int pitch, int velocity) { count++; lastPitch = pitch; lastThread = Thread.currentThread(); }
+		public void registerMethod(String name, Object target) { if (name.equals("pre")) registered = target; }
+		public void unregisterMethod(String name, Object target) { if (name.equals("pre") && registered == target) registered = null; }
+	}
+
+	/** Parent whose noteOn always throws, and whose controllerChange returns a value. */
+	public static class ThrowingParent {
+		public int noteOnCount, noteOffCount, ccCount, lastCcValue;
+		public void noteOn(int channel, int pitch, int velocity) { noteOnCount++; throw new IllegalStateException("boom"); }
+		public void noteOff(int channel, int pitch, int velocity) { noteOffCount++; }
+		public int controllerChange(int channel, int number, int value) { ccCount++; lastCcValue = value; return value; }
+	}
+
 	/* -- Listener stubs with counters -- */
 
 	static class CountingSimpleListener implements SimpleMidiListener {
@@ -1163,6 +2957,14 @@ public class MidiBusTest {
 		public void controllerChange(ControlChange c) { cc++; }
 	}
 
+	static class CapturingObjectListener implements ObjectMidiListener {
+		Note lastNote;
+		ControlChange lastChange;
+		public void noteOn(Note n)         { lastNote = n; }
+		public void noteOff(Note n)        { lastNote = n; }
+		public void controllerChange(ControlChange c) { lastChange = c; }
+	}
+
 	static class CountingRawListener implements RawMidiListener {
 		int count;
 		byte[] lastData;
@@ -1176,4 +2978,113 @@ public class MidiBusTest {
 		void reset() { count = 0; lastMessage = null; }
 		public void midiMessage(MidiMessage message, long timeStamp) { count++; lastMessage = message; }
 	}
+
+	/** Raw listener recording the delivery thread, which can hold the dispatcher on its first message. */
+	static class GatedRawListener implements RawMidiListener {
+		volatile int count, lastValue, firstValueAfter0;
+		volatile boolean inOrder;
+		volatile Thread lastThread;
+		volatile CountDownLatch gate, entered;
+		void reset() { count = 0; lastValue = -1; firstValueAfter0 = -1; inOrder = true; gate = null; entered = new CountDownLatch(1); }
+		GatedRawListener() { reset(); }
+		public void rawMidiMessage(byte[] data) {
+			lastThread = Thread.currentThread();
+			int value = data.length > 2 ? data[2] : 0;
+			if (value <= lastValue) inOrder = false;
+			if (count == 1) firstValueAfter0 = value;
+			lastValue = value;
+			entered.countDown();
+			CountDownLatch g = gate;
+			if (g != null) try { g.await(2, TimeUnit.SECONDS); } catch (InterruptedException e) { }
+			gate = null;
+			count++;
+		}
+		boolean awaitCount(int expected) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 2000;
+			while (count < expected && System.currentTimeMillis() < deadline) Thread.sleep(1);
+			return count == expected;
+		}
+	}
+
+	/**
+	 * In-memory MIDI device: transmit() feeds whatever receiver MidiBus attached, received messages are counted and,
+	 * unless record is false, recorded. Setting hold makes the receiver wait on it, signalling entered first.
+	 */
+	static class FakeDevice implements MidiDevice {
+		final MidiDevice.Info info;
+		final List<MidiMessage> received = java.util.Collections.synchronizedList(new ArrayList<>());
+		final java.util.concurrent.atomic.AtomicLong count = new java.util.concurrent.atomic.AtomicLong();
+		volatile boolean record = true;
+		volatile boolean fail;
+		volatile long position = -1;
+		volatile long delay_nanos;
+		volatile long open_millis;
+		final java.util.concurrent.atomic.AtomicInteger opens = new java.util.concurrent.atomic.AtomicInteger();
+		final java.util.concurrent.atomic.AtomicInteger transmitters = new java.util.concurrent.atomic.AtomicInteger();
+		final List<Long> timestamps = java.util.Collections.synchronizedList(new ArrayList<>());
+		final List<byte[]> bytes = java.util.Collections.synchronizedList(new ArrayList<>());
+		volatile CountDownLatch hold, entered;
+		volatile Receiver attached;
+		boolean open;
+
+		FakeDevice(String name) {
+			info = new MidiDevice.Info(name, "themidibus", "fake device", "1") { };
+		}
+
+		FakeDevice(MidiDevice.Info info) {
+			this.info = info;
+		}
+
+		void transmit(MidiMessage message) { attached.send(message, -1); }
+
+		public MidiDevice.Info getDeviceInfo() { return info; }
+		public void open() throws MidiUnavailableException {
+			opens.incrementAndGet();
+			if (open_millis > 0) {
+				try { Thread.sleep(open_millis); } catch (InterruptedException e) { }
+			}
+			open = true;
+		}
+		public void close() { open = false; }
+		public boolean isOpen() { return open; }
+		public long getMicrosecondPosition() { return position; }
+		public int getMaxReceivers() { return -1; }
+		public int getMaxTransmitters() { return -1; }
+		public Receiver getReceiver() {
+			return new Receiver() {
+				public void send(MidiMessage message, long timeStamp) {
+					if (fail) throw new IllegalStateException("Receiver failed");
+					long delay = delay_nanos;
+					if (delay > 0) {
+						long deadline = System.nanoTime() + delay;
+						while (System.nanoTime() < deadline) java.util.concurrent.locks.LockSupport.parkNanos(deadline - System.nanoTime());
+					}
+					count.incrementAndGet();
+					if (record) {
+						received.add(message);
+						timestamps.add(timeStamp);
+						bytes.add(message.getMessage());
+					}
+					CountDownLatch h = hold;
+					if (h != null) {
+						entered.countDown();
+						try { h.await(2, TimeUnit.SECONDS); } catch (InterruptedException e) { }
+					}
+				}
+				public void close() { }
+			};
+		}
+		public List<Receiver> getReceivers() { return new ArrayList<>(); }
+		public Transmitter getTransmitter() {
+			transmitters.incrementAndGet();
+			return new Transmitter() {
+				Receiver receiver;
+				boolean closed;
+				public void setReceiver(Receiver r) { receiver = r; attached = r; }
+				public Receiver getReceiver() { return receiver; }
+				public void close() { if (!closed) transmitters.decrementAndGet(); closed = true; }
+			};
+		}
+		public List<Transmitter> getTransmitters() { return new ArrayList<>(); }
+	}
 }
@@ -0,0 +1,27 @@
+/*
+ * Parents declared outside the themidibus package, the way sketches and
+ * applications declare them, for MidiBusTest to register.
+ *
+ * A package-private class in another package isn't accessible to MidiBus,
+ * even though its callbacks are public.
+ */
+
+package themidibus.sketch;
+
+public class SketchParents {
+
+	public static Object packagePrivateParent() {
+		return new PackagePrivateParent();
+	}
+
+	public static int noteOnCount(Object parent) {
+		return ((PackagePrivateParent)parent).noteOnCount;
+	}
+
+}
+
+/** Package-private parent with a public callback. */
+class PackagePrivateParent {
+	int noteOnCount;
+	public void noteOn(int channel, int pitch, int velocity) { noteOnCount++; }
+}